@@ -0,0 +1,29 @@
+package com.hmall.cart.config;
+
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 批量消费订单创建事件时使用的消息监听容器
+ */
+@Configuration
+public class CartClearConfig {
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory cartClearListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            CartProperties properties) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(properties.getClearBatchSize());
+        factory.setReceiveTimeout(properties.getClearReceiveTimeoutMillis());
+        // 预取数不小于批大小，否则一批永远凑不满
+        factory.setPrefetchCount(properties.getClearBatchSize());
+        return factory;
+    }
+}
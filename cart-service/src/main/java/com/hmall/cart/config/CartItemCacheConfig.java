@@ -0,0 +1,38 @@
+package com.hmall.cart.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmall.api.dto.ItemDTO;
+import com.hmall.cart.constants.CacheConstants;
+import com.hmall.cart.listener.ItemCacheInvalidateListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 购物车展示用的商品本地缓存配置
+ * 商品价格、状态、库存只在本地缓存很短时间，并订阅item-service的商品缓存失效广播
+ */
+@Configuration
+public class CartItemCacheConfig {
+
+    @Bean
+    public Cache<Long, ItemDTO> cartItemLocalCache(CartProperties cartProperties) {
+        return Caffeine.newBuilder()
+                .maximumSize(cartProperties.getItemCacheMaxSize())
+                .expireAfterWrite(cartProperties.getItemCacheTtl())
+                .recordStats()
+                .build();
+    }
+
+    @Bean
+    public RedisMessageListenerContainer cartItemCacheListenerContainer(
+            RedisConnectionFactory factory, ItemCacheInvalidateListener listener) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        container.addMessageListener(listener, new ChannelTopic(CacheConstants.ITEM_CACHE_INVALIDATE_CHANNEL));
+        return container;
+    }
+}
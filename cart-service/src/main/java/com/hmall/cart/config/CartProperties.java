@@ -4,9 +4,52 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+
 @Data
 @Component
 @ConfigurationProperties(prefix = "hm.cart")
 public class CartProperties {
     private Integer maxAmount;
+    /**
+     * 是否以Redis hash存储购物车，变更异步批量落库
+     * 关闭期间数据库的变化不会同步到Redis，重新开启前需删除cart:lines:*
+     */
+    private Boolean redisStoreEnabled = false;
+    /**
+     * Redis购物车的过期时间，每次修改后续期，过期后从数据库重新加载
+     */
+    private Duration redisStoreTtl = Duration.ofDays(7);
+    /**
+     * 购物车变更落库间隔（毫秒），修改后需重启
+     */
+    private Long flushIntervalMillis = 500L;
+    /**
+     * 每批落库的用户数
+     */
+    private Integer flushBatchSize = 200;
+    /**
+     * 一批用户取出后多久未确认落库，视为处理它的节点已宕机，放回待落库集合（毫秒）
+     */
+    private Long flushProcessingTimeoutMillis = 60000L;
+    /**
+     * 单个用户连续落库失败多少次后移入隔离集合，不再自动重试
+     */
+    private Integer flushMaxAttempts = 5;
+    /**
+     * 购物车展示用的商品本地缓存过期时间，商品变更时另有广播清理
+     */
+    private Duration itemCacheTtl = Duration.ofSeconds(30);
+    /**
+     * 商品本地缓存的最大商品数
+     */
+    private Long itemCacheMaxSize = 10000L;
+    /**
+     * 订单创建事件每批最多消费的消息数，一批中所有用户的已下单商品一次删除
+     */
+    private Integer clearBatchSize = 100;
+    /**
+     * 凑批时等待下一条订单创建事件的最长时间（毫秒）
+     */
+    private Long clearReceiveTimeoutMillis = 200L;
 }
@@ -7,10 +7,47 @@ package com.hmall.cart.constants;
 public class CacheConstants {
     // ==================== 购物车缓存相关 ====================
     /**
-     * 用户购物车缓存key前缀
-     * 格式: cart:user:{用户ID}
+     * 用户购物车缓存key前缀，hash结构，每个条目一个字段
+     * 格式: cart:user:lines:{用户ID}，旧的cart:user:{用户ID}是整个列表序列化后的字符串，换用新前缀避免类型冲突
      */
-    public static final String CART_USER_CACHE_KEY_PREFIX = "cart:user:";
+    public static final String CART_USER_CACHE_KEY_PREFIX = "cart:user:lines:";
+    /**
+     * 用户购物车刚被修改且修改时缓存不存在的标记，存在期间回源结果不写入缓存，避免把修改前查到的数据写入缓存
+     * 格式: cart:user:written:{用户ID}
+     */
+    public static final String CART_USER_WRITE_MARK_KEY_PREFIX = "cart:user:written:";
+    /**
+     * Redis购物车存储的hash key前缀，开启hm.cart.redis-store-enabled后购物车以此为准
+     * 格式: cart:lines:{用户ID}，字段 i:{商品ID} 为条目json（不含数量），n:{商品ID} 为数量
+     */
+    public static final String CART_LINES_KEY_PREFIX = "cart:lines:";
+    /**
+     * Redis购物车hash中的加载标记字段，存在即表示已从数据库加载，空购物车也保留该字段
+     */
+    public static final String CART_LINES_LOADED_FIELD = "_";
+    public static final String CART_LINE_FIELD_PREFIX = "i:";
+    public static final String CART_NUM_FIELD_PREFIX = "n:";
+    /**
+     * 购物车有变更、等待落库的用户id集合
+     */
+    public static final String CART_DIRTY_USERS_KEY = "cart:dirty";
+    /**
+     * 已取出、正在落库的用户id，zset，score为取出时间，落库提交后删除，超时未删除的放回cart:dirty
+     */
+    public static final String CART_DIRTY_PROCESSING_KEY = "cart:dirty:processing";
+    /**
+     * 单个用户连续落库失败的次数，hash，字段为用户id
+     */
+    public static final String CART_DIRTY_FAILURES_KEY = "cart:dirty:failures";
+    /**
+     * 连续落库失败达到上限、不再自动重试的用户id集合，需人工排查后放回cart:dirty
+     */
+    public static final String CART_DIRTY_QUARANTINE_KEY = "cart:dirty:quarantine";
+    // ==================== 商品本地缓存相关 ====================
+    /**
+     * 商品缓存失效广播频道，消息体为商品id，与item-service一致
+     */
+    public static final String ITEM_CACHE_INVALIDATE_CHANNEL = "item:cache:invalidate";
     // ==================== 分布式锁相关 ====================
     /**
      * 用户购物车查询分布式锁key前缀
@@ -19,16 +56,17 @@ public class CacheConstants {
     public static final String CART_USER_LOCK_KEY_PREFIX = "lock:cart:user:";
     // ==================== 缓存过期时间 ====================
     /**
-     * 用户购物车缓存过期时间（小时）
+     * 用户购物车缓存过期时间（分钟）
+     * 缓存是局部修改的，过期时间限制了缓存与数据库不一致时的最长持续时间
+     */
+    public static final long CART_CACHE_EXPIRE_MINUTES = 10;
+    /**
+     * 修改标记过期时间（毫秒），大于一次回源查询数据库的时间
      */
-    public static final long CART_CACHE_EXPIRE_HOURS = 2;
+    public static final long CART_USER_WRITE_MARK_MILLIS = 5000;
     /**
      * 空值缓存过期时间（分钟）
      * 用于防止缓存穿透
      */
     public static final long NULL_CACHE_EXPIRE_MINUTES = 5;
-    /**
-     * 分布式锁过期时间（秒）
-     */
-    public static final long LOCK_EXPIRE_SECONDS = 10;
 } 
\ No newline at end of file
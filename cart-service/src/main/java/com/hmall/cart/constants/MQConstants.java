@@ -0,0 +1,10 @@
+package com.hmall.cart.constants;
+
+public class MQConstants {
+    /**
+     * 订单创建事件，与trade-service一致
+     */
+    public static final String TRADE_EXCHANGE_NAME = "trade.topic";
+    public static final String ORDER_CREATE_KEY = "order.create";
+    public static final String CART_CLEAR_QUEUE_NAME = "cart.clear.queue";
+}
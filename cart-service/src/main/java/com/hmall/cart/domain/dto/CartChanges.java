@@ -0,0 +1,49 @@
+package com.hmall.cart.domain.dto;
+
+import com.hmall.cart.domain.po.Cart;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Redis购物车与数据库按条目id对比后需要执行的变更，Redis为准
+ */
+@Getter
+public class CartChanges {
+    private final List<Cart> inserts = new ArrayList<>();
+    private final List<Cart> updates = new ArrayList<>();
+    /**
+     * Redis中已删除的条目id，删除后重新加购的商品是一个新id的条目，旧条目在这里删除
+     */
+    private final List<Long> deletes = new ArrayList<>();
+
+    /**
+     * @param carts    Redis中的购物车，key为用户id，只对比这些用户
+     * @param existing 这些用户在数据库中的条目
+     */
+    public static CartChanges diff(Map<Long, List<Cart>> carts, Collection<Cart> existing, LocalDateTime now) {
+        CartChanges changes = new CartChanges();
+        Map<Long, Cart> remaining = new HashMap<>(existing.size() * 4 / 3 + 1);
+        for (Cart old : existing) {
+            remaining.put(old.getId(), old);
+        }
+        for (List<Cart> lines : carts.values()) {
+            for (Cart line : lines) {
+                Cart old = remaining.remove(line.getId());
+                if (old == null) {
+                    changes.inserts.add(line);
+                } else if (!Objects.equals(old.getNum(), line.getNum())) {
+                    changes.updates.add(new Cart().setId(line.getId()).setNum(line.getNum()).setUpdateTime(now));
+                }
+            }
+        }
+        changes.deletes.addAll(remaining.keySet());
+        return changes;
+    }
+}
@@ -0,0 +1,33 @@
+package com.hmall.cart.listener;
+
+import cn.hutool.core.util.NumberUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.hmall.api.dto.ItemDTO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 监听商品缓存失效广播，商品价格、状态、库存变化后清理本节点的商品本地缓存
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ItemCacheInvalidateListener implements MessageListener {
+
+    private final Cache<Long, ItemDTO> cartItemLocalCache;
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (!NumberUtil.isLong(body)) {
+            log.warn("无法识别的商品缓存失效消息:{}", body);
+            return;
+        }
+        cartItemLocalCache.invalidate(Long.valueOf(body));
+    }
+}
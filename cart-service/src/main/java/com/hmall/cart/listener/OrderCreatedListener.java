@@ -0,0 +1,49 @@
+package com.hmall.cart.listener;
+
+import com.hmall.api.dto.OrderCreatedDTO;
+import com.hmall.cart.constants.MQConstants;
+import com.hmall.cart.service.ICartService;
+import com.hmall.common.utils.CollUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 批量消费订单创建事件，清理购物车中已下单的商品
+ * 一批事件按用户合并后一次删除，删除是幂等的，重复投递不影响结果
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderCreatedListener {
+
+    private final ICartService cartService;
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(name = MQConstants.CART_CLEAR_QUEUE_NAME),
+            exchange = @Exchange(name = MQConstants.TRADE_EXCHANGE_NAME, type = ExchangeTypes.TOPIC),
+            key = MQConstants.ORDER_CREATE_KEY
+    ), containerFactory = "cartClearListenerContainerFactory")
+    public void listenOrderCreated(List<OrderCreatedDTO> events) {
+        Map<Long, Set<Long>> userItemIds = new HashMap<>();
+        for (OrderCreatedDTO event : events) {
+            if (event.getUserId() == null || CollUtils.isEmpty(event.getItemIds())) {
+                continue;
+            }
+            userItemIds.computeIfAbsent(event.getUserId(), k -> new HashSet<>()).addAll(event.getItemIds());
+        }
+        cartService.removeByUserItems(userItemIds);
+        log.debug("批量处理订单创建事件{}条，清理用户购物车{}个", events.size(), userItemIds.size());
+    }
+}
@@ -2,9 +2,13 @@ package com.hmall.cart.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.hmall.cart.domain.po.Cart;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Update;
 
+import java.util.List;
+
 /**
  * <p>
  * 订单详情表 Mapper 接口
@@ -17,4 +21,22 @@ public interface CartMapper extends BaseMapper<Cart> {
 
     @Update("UPDATE cart SET num = num + 1 WHERE user_id = #{userId} AND item_id = #{itemId}")
     void updateNum(@Param("itemId") Long itemId, @Param("userId") Long userId);
+
+    /**
+     * 批量插入已分配id的条目，Redis购物车中新增的条目落库时使用
+     */
+    @Insert("<script>INSERT INTO cart (id, user_id, item_id, num, name, spec, price, image, create_time, update_time) VALUES " +
+            "<foreach collection='carts' item='c' separator=','>" +
+            "(#{c.id}, #{c.userId}, #{c.itemId}, #{c.num}, #{c.name}, #{c.spec}, #{c.price}, #{c.image}, #{c.createTime}, #{c.updateTime})" +
+            "</foreach></script>")
+    void insertBatchWithId(@Param("carts") List<Cart> carts);
+
+    /**
+     * 按(用户id, 商品id)批量删除条目，多个用户的删除合并为一条SQL
+     */
+    @Delete("<script>DELETE FROM cart WHERE (user_id, item_id) IN " +
+            "<foreach collection='carts' item='c' open='(' separator=',' close=')'>" +
+            "(#{c.userId}, #{c.itemId})" +
+            "</foreach></script>")
+    int deleteByUserItems(@Param("carts") List<Cart> carts);
 }
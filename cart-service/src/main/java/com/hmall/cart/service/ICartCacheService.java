@@ -0,0 +1,50 @@
+package com.hmall.cart.service;
+
+import com.hmall.cart.domain.vo.CartVO;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>
+ * 用户购物车缓存
+ * </p>
+ * 每个用户的缓存是一个hash，每个条目一个字段，购物车变更时只修改对应的条目，不再整体删除后重建<br>
+ * 只缓存条目本身，商品最新价格、状态、库存由IItemSnapshotService在读取时拼接<br>
+ * 只在数据库存储购物车时使用，开启Redis购物车存储后直接读取Redis购物车。
+ * 修改时缓存不存在会留下短暂的修改标记，期间回源结果不写入缓存；修改时发现缓存与数据库不一致则删除缓存
+ */
+public interface ICartCacheService {
+
+    /**
+     * @return null表示未命中，返回的条目不含商品最新信息
+     */
+    List<CartVO> get(Long userId);
+
+    /**
+     * 写入整个购物车，已存在或刚被修改过时不写入
+     */
+    void put(Long userId, List<CartVO> vos);
+
+    /**
+     * 新增或覆盖一个条目，缓存不存在时忽略
+     */
+    void putLine(Long userId, CartVO vo);
+
+    /**
+     * 条目数量增加delta，缓存存在但条目不在缓存中时删除缓存
+     */
+    void incrNum(Long userId, Long itemId, int delta);
+
+    /**
+     * 设置条目数量，缓存存在但条目不在缓存中时删除缓存
+     */
+    void setNum(Long userId, Long itemId, Integer num);
+
+    void removeLines(Long userId, Collection<Long> itemIds);
+
+    /**
+     * 删除整个缓存，无法局部修改时使用
+     */
+    void evict(Long userId);
+}
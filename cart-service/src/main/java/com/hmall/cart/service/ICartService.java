@@ -7,6 +7,7 @@ import com.hmall.cart.domain.vo.CartVO;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
@@ -24,6 +25,16 @@ public interface ICartService extends IService<Cart> {
 
     void removeByItemIds(Collection<Long> itemIds);
 
+    /**
+     * 删除多个用户购物车中的指定商品，key为用户id，订单创建后批量清理购物车时使用
+     */
+    void removeByUserItems(Map<Long, ? extends Collection<Long>> userItemIds);
+
     // 查询我的购物车（带缓存）
     List<CartVO> queryMyCartsWithCache();
+
+    /**
+     * 把Redis购物车写回数据库：新增、修改数量、删除，key为用户id
+     */
+    void applyRedisCarts(Map<Long, List<Cart>> carts);
 }
@@ -0,0 +1,73 @@
+package com.hmall.cart.service;
+
+import com.hmall.cart.domain.po.Cart;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Redis购物车存储
+ * </p>
+ * 每个用户的购物车是一个hash，增删改都是一次Lua脚本调用，修改后记录到待落库用户集合，
+ * 由CartFlushTask批量写回数据库
+ */
+public interface ICartStoreService {
+
+    /**
+     * 添加商品，已存在时数量加上line.num，不存在时检查条目数上限
+     *
+     * @return 是否新增了条目
+     */
+    boolean add(Long userId, Cart line);
+
+    /**
+     * @return 按条目id排序的购物车条目
+     */
+    List<Cart> list(Long userId);
+
+    /**
+     * @return 条目不存在时返回false
+     */
+    boolean setNum(Long userId, Long itemId, Integer num);
+
+    /**
+     * @return 删除的条目数
+     */
+    int remove(Long userId, Collection<Long> itemIds);
+
+    /**
+     * 取出一批待落库的用户并移入处理中集合，多个节点同时执行也不会取到同一个用户
+     */
+    List<Long> takeDirtyUsers(int count);
+
+    /**
+     * 落库提交后从处理中集合删除
+     */
+    void ackDirtyUsers(Collection<Long> userIds);
+
+    /**
+     * 落库失败时从处理中集合放回，等待下一次重试
+     */
+    void returnDirtyUsers(Collection<Long> userIds);
+
+    /**
+     * 把取出超过timeoutMillis仍未确认的用户放回，处理它们的节点可能已宕机
+     *
+     * @return 放回的用户数
+     */
+    int reclaimDirtyUsers(long timeoutMillis);
+
+    /**
+     * 记录单个用户的一次落库失败，连续失败达到maxAttempts次时移入隔离集合
+     *
+     * @return 是否已隔离
+     */
+    boolean failDirtyUser(Long userId, int maxAttempts);
+
+    /**
+     * 批量读取用户的购物车，已过期、未加载的用户不返回
+     */
+    Map<Long, List<Cart>> readLines(Collection<Long> userIds);
+}
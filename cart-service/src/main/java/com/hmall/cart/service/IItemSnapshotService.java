@@ -0,0 +1,21 @@
+package com.hmall.cart.service;
+
+import com.hmall.api.dto.ItemDTO;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * <p>
+ * 购物车展示用的商品最新信息
+ * </p>
+ */
+public interface IItemSnapshotService {
+
+    /**
+     * 批量查询商品，优先读本地缓存，只为未命中的商品调用一次item-service
+     *
+     * @return 商品id到商品的映射，不存在的商品不包含在内
+     */
+    Map<Long, ItemDTO> getItems(Collection<Long> itemIds);
+}
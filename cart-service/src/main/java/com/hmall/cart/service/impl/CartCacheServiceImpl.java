@@ -0,0 +1,174 @@
+package com.hmall.cart.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmall.cart.constants.CacheConstants;
+import com.hmall.cart.domain.vo.CartVO;
+import com.hmall.cart.service.ICartCacheService;
+import com.hmall.common.utils.BeanUtils;
+import com.hmall.common.utils.CollUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 用户购物车缓存实现类
+ * </p>
+ * hash结构与Redis购物车存储相同：i:{商品ID} 为条目json（不含数量），n:{商品ID} 为数量，_ 为加载标记，
+ * 空购物车只有加载标记字段。缓存只保存条目本身，商品最新信息在读取时拼接
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CartCacheServiceImpl implements ICartCacheService {
+
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = script("lua/cart_cache_load.lua");
+    private static final DefaultRedisScript<Long> PUT_LINE_SCRIPT = script("lua/cart_cache_put_line.lua");
+    private static final DefaultRedisScript<Long> NUM_SCRIPT = script("lua/cart_cache_num.lua");
+    private static final DefaultRedisScript<Long> REMOVE_SCRIPT = script("lua/cart_cache_remove.lua");
+    private static final String WRITE_MARK_MILLIS = String.valueOf(CacheConstants.CART_USER_WRITE_MARK_MILLIS);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public List<CartVO> get(Long userId) {
+        Map<Object, Object> hash = stringRedisTemplate.opsForHash().entries(key(userId));
+        if (hash.isEmpty()) {
+            return null;
+        }
+        List<CartVO> vos = new ArrayList<>(hash.size() / 2);
+        for (Map.Entry<Object, Object> e : hash.entrySet()) {
+            String field = e.getKey().toString();
+            if (!field.startsWith(CacheConstants.CART_LINE_FIELD_PREFIX)) {
+                continue;
+            }
+            Object num = hash.get(CacheConstants.CART_NUM_FIELD_PREFIX
+                    + field.substring(CacheConstants.CART_LINE_FIELD_PREFIX.length()));
+            if (num == null) {
+                continue;
+            }
+            try {
+                CartVO vo = objectMapper.readValue(e.getValue().toString(), CartVO.class);
+                vo.setNum(Integer.valueOf(num.toString()));
+                vos.add(vo);
+            } catch (JsonProcessingException ex) {
+                // 条目损坏时整体回源
+                log.error("无法解析的购物车缓存，用户:{}，字段:{}", userId, field, ex);
+                evict(userId);
+                return null;
+            }
+        }
+        // 与数据库查询的顺序一致
+        vos.sort(Comparator.comparing(CartVO::getId));
+        return vos;
+    }
+
+    @Override
+    public void put(Long userId, List<CartVO> vos) {
+        long ttl = CollUtils.isEmpty(vos)
+                ? TimeUnit.MINUTES.toSeconds(CacheConstants.NULL_CACHE_EXPIRE_MINUTES)
+                : TimeUnit.MINUTES.toSeconds(CacheConstants.CART_CACHE_EXPIRE_MINUTES);
+        List<String> args = new ArrayList<>(vos.size() * 4 + 2);
+        args.add(String.valueOf(ttl));
+        args.add(CacheConstants.CART_LINES_LOADED_FIELD);
+        for (CartVO vo : vos) {
+            args.add(CacheConstants.CART_LINE_FIELD_PREFIX + vo.getItemId());
+            args.add(toJson(vo));
+            args.add(CacheConstants.CART_NUM_FIELD_PREFIX + vo.getItemId());
+            args.add(String.valueOf(vo.getNum()));
+        }
+        stringRedisTemplate.execute(LOAD_SCRIPT, keys(userId), args.toArray());
+    }
+
+    @Override
+    public void putLine(Long userId, CartVO vo) {
+        stringRedisTemplate.execute(PUT_LINE_SCRIPT, keys(userId),
+                String.valueOf(vo.getItemId()), toJson(vo), String.valueOf(vo.getNum()), WRITE_MARK_MILLIS);
+    }
+
+    @Override
+    public void incrNum(Long userId, Long itemId, int delta) {
+        updateNum(userId, itemId, "incr", delta);
+    }
+
+    @Override
+    public void setNum(Long userId, Long itemId, Integer num) {
+        updateNum(userId, itemId, "set", num);
+    }
+
+    private void updateNum(Long userId, Long itemId, String op, Integer num) {
+        Long result = stringRedisTemplate.execute(NUM_SCRIPT, keys(userId),
+                String.valueOf(itemId), op, String.valueOf(num), WRITE_MARK_MILLIS);
+        if (result != null && result < 0) {
+            log.warn("购物车缓存与数据库不一致，已删除缓存，用户:{}，商品:{}", userId, itemId);
+        }
+    }
+
+    @Override
+    public void removeLines(Long userId, Collection<Long> itemIds) {
+        if (CollUtils.isEmpty(itemIds)) {
+            return;
+        }
+        Object[] args = new Object[itemIds.size() * 2 + 1];
+        int i = 0;
+        args[i++] = WRITE_MARK_MILLIS;
+        for (Long itemId : itemIds) {
+            args[i++] = CacheConstants.CART_LINE_FIELD_PREFIX + itemId;
+            args[i++] = CacheConstants.CART_NUM_FIELD_PREFIX + itemId;
+        }
+        stringRedisTemplate.execute(REMOVE_SCRIPT, keys(userId), args);
+    }
+
+    @Override
+    public void evict(Long userId) {
+        // 先标记再删除，正在回源的请求不会再把修改前的数据写回
+        stringRedisTemplate.opsForValue().set(CacheConstants.CART_USER_WRITE_MARK_KEY_PREFIX + userId, "1",
+                CacheConstants.CART_USER_WRITE_MARK_MILLIS, TimeUnit.MILLISECONDS);
+        stringRedisTemplate.delete(key(userId));
+    }
+
+    /**
+     * 条目json只含条目本身的字段，不含数量和商品最新价格、状态、库存
+     */
+    private String toJson(CartVO vo) {
+        CartVO line = BeanUtils.copyBean(vo, CartVO.class);
+        line.setNum(null);
+        line.setNewPrice(null);
+        line.setStatus(null);
+        line.setStock(null);
+        try {
+            return objectMapper.writeValueAsString(line);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String key(Long userId) {
+        return CacheConstants.CART_USER_CACHE_KEY_PREFIX + userId;
+    }
+
+    private static List<String> keys(Long userId) {
+        return Arrays.asList(key(userId), CacheConstants.CART_USER_WRITE_MARK_KEY_PREFIX + userId);
+    }
+
+    private static DefaultRedisScript<Long> script(String path) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(Long.class);
+        return script;
+    }
+}
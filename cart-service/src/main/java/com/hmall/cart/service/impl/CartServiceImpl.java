@@ -2,35 +2,37 @@ package com.hmall.cart.service.impl;
 
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmall.api.client.ItemClient;
 import com.hmall.api.dto.ItemDTO;
 import com.hmall.cart.config.CartProperties;
 import com.hmall.cart.constants.CacheConstants;
+import com.hmall.cart.domain.dto.CartChanges;
 import com.hmall.cart.domain.dto.CartFormDTO;
 import com.hmall.cart.domain.po.Cart;
 import com.hmall.cart.domain.vo.CartVO;
 import com.hmall.cart.mapper.CartMapper;
+import com.hmall.cart.service.ICartCacheService;
 import com.hmall.cart.service.ICartService;
+import com.hmall.cart.service.ICartStoreService;
+import com.hmall.cart.service.IItemSnapshotService;
 import com.hmall.common.exception.BizIllegalException;
 import com.hmall.common.utils.BeanUtils;
 import com.hmall.common.utils.CollUtils;
+import com.hmall.common.utils.SingleFlightLoader;
 import com.hmall.common.utils.UserContext;
 import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -48,24 +50,34 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements IC
     //
     // private final DiscoveryClient discoveryClient;
 
-    private final ItemClient itemClient;
+    private final IItemSnapshotService itemSnapshotService;
     private final CartProperties cartProperties;
-    
-    // 需要@Qualifier的字段，手动注入
-    @Autowired
-    @Qualifier("customRedisTemplate")
-    private RedisTemplate<String, Object> redisTemplate;
+    private final SingleFlightLoader singleFlightLoader;
+    private final ICartStoreService cartStoreService;
+    private final ICartCacheService cartCacheService;
 
     @Override
     public void addItem2Cart(CartFormDTO cartFormDTO) {
         // 1.获取登录用户
         Long userId = UserContext.getUser();
 
+        if (redisStore()) {
+            // Redis购物车：判断存在、检查数量上限、新增或加一在一次Lua脚本中完成
+            LocalDateTime now = LocalDateTime.now();
+            Cart line = BeanUtils.copyBean(cartFormDTO, Cart.class)
+                    .setId(IdWorker.getId())
+                    .setNum(1)
+                    .setCreateTime(now)
+                    .setUpdateTime(now);
+            cartStoreService.add(userId, line);
+            return;
+        }
+
         // 2.判断是否已经存在
         if(checkItemExists(cartFormDTO.getItemId(), userId)){
             // 2.1.存在，则更新数量
             baseMapper.updateNum(cartFormDTO.getItemId(), userId);
-            clearCartCache(userId);
+            cartCacheService.incrNum(userId, cartFormDTO.getItemId(), 1);
             return;
         }
         // 2.2.不存在，判断是否超过购物车数量
@@ -74,82 +86,80 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements IC
         // 3.新增购物车条目
         // 3.1.转换PO
         Cart cart = BeanUtils.copyBean(cartFormDTO, Cart.class);
-        // 3.2.保存当前用户
-        cart.setUserId(userId);
+        // 3.2.保存当前用户，数量和时间与数据库默认值一致，写入缓存时不必再查一次
+        LocalDateTime now = LocalDateTime.now();
+        cart.setUserId(userId).setNum(1).setCreateTime(now).setUpdateTime(now);
         // 3.3.保存到数据库
         save(cart);
-        clearCartCache(userId);
+        putCartCacheLine(userId, cart);
     }
 
     @Override
     public List<CartVO> queryMyCartsWithCache() {
+        if (redisStore()) {
+            // Redis购物车本身就在Redis中，直接读取，不再维护第二份缓存
+            return queryMyCarts();
+        }
         Long userId = UserContext.getUser();
-        String key = CacheConstants.CART_USER_CACHE_KEY_PREFIX + userId;
-        Object cache = redisTemplate.opsForValue().get(key);
-        if (cache != null) {
-            if (cache instanceof List) {
-                return (List<CartVO>) cache;
-            } else if ("NULL".equals(cache)) {
+        // 1.缓存中只有条目本身
+        List<CartVO> vos = cartCacheService.get(userId);
+        if (vos == null) {
+            // 缓存击穿保护：合并本节点的并发回源，节点间通过分布式锁互斥
+            List<CartVO> loaded = singleFlightLoader.load(CacheConstants.CART_USER_CACHE_KEY_PREFIX + userId,
+                    CacheConstants.CART_USER_LOCK_KEY_PREFIX + userId,
+                    () -> cartCacheService.get(userId), () -> loadCartsToCache(userId));
+            if (CollUtils.isEmpty(loaded)) {
                 return CollUtils.emptyList();
             }
+            // 合并的请求共享同一个结果，复制后再写入商品信息
+            vos = BeanUtils.copyList(loaded, CartVO.class);
         }
-        // 缓存击穿保护：加分布式锁
-        String lockKey = CacheConstants.CART_USER_LOCK_KEY_PREFIX + userId;
-        boolean lock = Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, "1", CacheConstants.LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS));
-        if (lock) {
-            try {
-                cache = redisTemplate.opsForValue().get(key);
-                if (cache != null) {
-                    if (cache instanceof List) {
-                        return (List<CartVO>) cache;
-                    } else if ("NULL".equals(cache)) {
-                        return CollUtils.emptyList();
-                    }
-                }
-                List<CartVO> vos = queryMyCarts();
-                if (CollUtils.isEmpty(vos)) {
-                    redisTemplate.opsForValue().set(key, "NULL", CacheConstants.NULL_CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES);
-                    return CollUtils.emptyList();
-                } else {
-                    redisTemplate.opsForValue().set(key, vos, CacheConstants.CART_CACHE_EXPIRE_HOURS, TimeUnit.HOURS);
-                    return vos;
-                }
-            } finally {
-                redisTemplate.delete(lockKey);
-            }
-        } else {
-            try { Thread.sleep(50); } catch (InterruptedException ignored) {}
-            return queryMyCartsWithCache();
-        }
+        // 2.读取时拼接商品最新信息，通常由本地缓存命中
+        handleCartItems(vos);
+        return vos;
+    }
+
+    private List<CartVO> loadCartsToCache(Long userId) {
+        List<CartVO> vos = queryCartLines(userId);
+        cartCacheService.put(userId, vos);
+        return vos;
     }
 
     /**
-     * 清理用户购物车缓存
-     * @param userId 用户ID
+     * 新增的条目直接写入缓存，商品信息在读取时拼接
      */
-    private void clearCartCache(Long userId) {
-        String key = CacheConstants.CART_USER_CACHE_KEY_PREFIX + userId;
-        redisTemplate.delete(key);
+    private void putCartCacheLine(Long userId, Cart cart) {
+        cartCacheService.putLine(userId, BeanUtils.copyBean(cart, CartVO.class));
     }
 
     @Override
     public List<CartVO> queryMyCarts() {
         // 1.查询我的购物车列表
-        List<Cart> carts = lambdaQuery().eq(Cart::getUserId,  UserContext.getUser()).list();
-        if (CollUtils.isEmpty(carts)) {
+        List<CartVO> vos = queryCartLines(UserContext.getUser());
+        if (CollUtils.isEmpty(vos)) {
             return CollUtils.emptyList();
         }
 
-        // 2.转换VO
-        List<CartVO> vos = BeanUtils.copyList(carts, CartVO.class);
-
-        // 3.处理VO中的商品信息
+        // 2.处理VO中的商品信息
         handleCartItems(vos);
 
-        // 4.返回
+        // 3.返回
         return vos;
     }
 
+    /**
+     * 查询购物车条目，不含商品最新信息
+     */
+    private List<CartVO> queryCartLines(Long userId) {
+        List<Cart> carts = redisStore()
+                ? cartStoreService.list(userId)
+                : lambdaQuery().eq(Cart::getUserId, userId).list();
+        if (CollUtils.isEmpty(carts)) {
+            return CollUtils.emptyList();
+        }
+        return BeanUtils.copyList(carts, CartVO.class);
+    }
+
     private void handleCartItems(List<CartVO> vos) {
         // 1.获取商品id
         Set<Long> itemIds = vos.stream().map(CartVO::getItemId).collect(Collectors.toSet());
@@ -178,13 +188,12 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements IC
         }
         List<ItemDTO> items = response.getBody();
         */
-        List<ItemDTO> items = itemClient.queryItemByIds(itemIds);
-        if (CollUtils.isEmpty(items)) {
+        // 本地缓存未命中的商品才远程查询
+        Map<Long, ItemDTO> itemMap = itemSnapshotService.getItems(itemIds);
+        if (itemMap.isEmpty()) {
             return;
         }
-        // 3.转为 id 到 item的map
-        Map<Long, ItemDTO> itemMap = items.stream().collect(Collectors.toMap(ItemDTO::getId, Function.identity()));
-        // 4.写入vo
+        // 3.写入vo
         for (CartVO v : vos) {
             ItemDTO item = itemMap.get(v.getItemId());
             if (item == null) {
@@ -199,6 +208,10 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements IC
     @Override
     @Transactional
     public void removeByItemIds(Collection<Long> itemIds) {
+        if (redisStore()) {
+            cartStoreService.remove(UserContext.getUser(), itemIds);
+            return;
+        }
         // 1.构建删除条件，userId和itemId
         QueryWrapper<Cart> queryWrapper = new QueryWrapper<Cart>();
         queryWrapper.lambda()
@@ -206,29 +219,116 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements IC
                 .in(Cart::getItemId, itemIds);
         // 2.删除
         remove(queryWrapper);
-        clearCartCache(UserContext.getUser());
+        cartCacheService.removeLines(UserContext.getUser(), itemIds);
     }
 
-    // 重写updateById和removeById，清理缓存
+    @Override
+    public void removeByUserItems(Map<Long, ? extends Collection<Long>> userItemIds) {
+        if (userItemIds.isEmpty()) {
+            return;
+        }
+        if (redisStore()) {
+            // Redis购物车按用户删除，由落库任务同步到数据库
+            userItemIds.forEach(cartStoreService::remove);
+            return;
+        }
+        // 1.所有用户的条目按批大小分段，每段一条DELETE
+        List<Cart> lines = new ArrayList<>();
+        userItemIds.forEach((userId, itemIds) -> {
+            for (Long itemId : itemIds) {
+                lines.add(new Cart().setUserId(userId).setItemId(itemId));
+            }
+        });
+        int batchSize = cartProperties.getFlushBatchSize();
+        for (int i = 0; i < lines.size(); i += batchSize) {
+            baseMapper.deleteByUserItems(lines.subList(i, Math.min(i + batchSize, lines.size())));
+        }
+        // 2.删除缓存中的条目
+        userItemIds.forEach(cartCacheService::removeLines);
+    }
+
+    // 重写updateById和removeById，同步修改缓存中的条目
     @Override
     public boolean updateById(Cart cart) {
+        if (redisStore()) {
+            Long userId = UserContext.getUser();
+            Cart line = findLine(userId, cart.getId());
+            return line != null && cart.getNum() != null
+                    && cartStoreService.setNum(userId, line.getItemId(), cart.getNum());
+        }
+        // 请求中通常只有id和数量，需要查出所属用户和商品
+        Cart old = cart.getUserId() == null || cart.getItemId() == null ? getById(cart.getId()) : cart;
         boolean result = super.updateById(cart);
-        if (result && cart.getUserId() != null) {
-            clearCartCache(cart.getUserId());
+        if (!result || old == null) {
+            return result;
+        }
+        if (cart.getName() == null && cart.getSpec() == null && cart.getPrice() == null && cart.getImage() == null) {
+            if (cart.getNum() != null) {
+                cartCacheService.setNum(old.getUserId(), old.getItemId(), cart.getNum());
+            }
+        } else {
+            // 修改了数量以外的字段，整体回源
+            cartCacheService.evict(old.getUserId());
         }
         return result;
     }
 
     @Override
     public boolean removeById(Serializable id) {
+        if (redisStore()) {
+            Long userId = UserContext.getUser();
+            Cart line = findLine(userId, id);
+            return line != null
+                    && cartStoreService.remove(userId, CollUtils.singletonList(line.getItemId())) > 0;
+        }
         Cart cart = getById(id);
         boolean result = super.removeById(id);
         if (result && cart != null && cart.getUserId() != null) {
-            clearCartCache(cart.getUserId());
+            cartCacheService.removeLines(cart.getUserId(), CollUtils.singletonList(cart.getItemId()));
         }
         return result;
     }
 
+    @Override
+    @Transactional
+    public void applyRedisCarts(Map<Long, List<Cart>> carts) {
+        if (carts.isEmpty()) {
+            return;
+        }
+        // 1.按条目id对比Redis和数据库，Redis为准
+        CartChanges changes = CartChanges.diff(carts,
+                lambdaQuery().in(Cart::getUserId, carts.keySet()).list(), LocalDateTime.now());
+        // 2.先删除再插入，删除后重新加购的同一商品不会与旧条目同时存在
+        if (!changes.getDeletes().isEmpty()) {
+            baseMapper.deleteBatchIds(changes.getDeletes());
+        }
+        if (!changes.getUpdates().isEmpty()) {
+            updateBatchById(changes.getUpdates());
+        }
+        if (!changes.getInserts().isEmpty()) {
+            baseMapper.insertBatchWithId(changes.getInserts());
+        }
+    }
+
+    private boolean redisStore() {
+        return Boolean.TRUE.equals(cartProperties.getRedisStoreEnabled());
+    }
+
+    /**
+     * 在用户的Redis购物车中按条目id查找，购物车条目很少，直接遍历
+     */
+    private Cart findLine(Long userId, Serializable id) {
+        if (id == null) {
+            return null;
+        }
+        for (Cart line : cartStoreService.list(userId)) {
+            if (line.getId().toString().equals(id.toString())) {
+                return line;
+            }
+        }
+        return null;
+    }
+
     private void checkCartsFull(Long userId) {
         int count = lambdaQuery().eq(Cart::getUserId, userId).count();
         if (count >= cartProperties.getMaxAmount()) {
@@ -0,0 +1,263 @@
+package com.hmall.cart.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmall.cart.config.CartProperties;
+import com.hmall.cart.constants.CacheConstants;
+import com.hmall.cart.domain.po.Cart;
+import com.hmall.cart.mapper.CartMapper;
+import com.hmall.cart.service.ICartStoreService;
+import com.hmall.common.exception.BizIllegalException;
+import com.hmall.common.utils.BeanUtils;
+import com.hmall.common.utils.CollUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * Redis购物车存储实现类
+ * </p>
+ * 条目json不含数量，数量单独存一个字段，Lua脚本只需HINCRBY，不必解析json
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CartStoreServiceImpl implements ICartStoreService {
+
+    private static final DefaultRedisScript<Long> ADD_SCRIPT = script("lua/cart_add.lua");
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = script("lua/cart_load.lua");
+    private static final DefaultRedisScript<Long> SET_NUM_SCRIPT = script("lua/cart_set_num.lua");
+    private static final DefaultRedisScript<Long> REMOVE_SCRIPT = script("lua/cart_remove.lua");
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> DIRTY_TAKE_SCRIPT = script("lua/cart_dirty_take.lua", List.class);
+    private static final DefaultRedisScript<Long> DIRTY_RETURN_SCRIPT = script("lua/cart_dirty_return.lua");
+    private static final DefaultRedisScript<Long> DIRTY_RECLAIM_SCRIPT = script("lua/cart_dirty_reclaim.lua");
+    private static final DefaultRedisScript<Long> DIRTY_FAIL_SCRIPT = script("lua/cart_dirty_fail.lua");
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final CartMapper cartMapper;
+    private final CartProperties cartProperties;
+
+    @Override
+    public boolean add(Long userId, Cart line) {
+        List<String> keys = Arrays.asList(key(userId), CacheConstants.CART_DIRTY_USERS_KEY);
+        Object[] args = {String.valueOf(line.getItemId()), toJson(line), String.valueOf(line.getNum()),
+                String.valueOf(cartProperties.getMaxAmount()), String.valueOf(userId), ttlSeconds()};
+        Long result = stringRedisTemplate.execute(ADD_SCRIPT, keys, args);
+        if (result != null && result < 0) {
+            // 购物车还没加载，加载后重试一次
+            load(userId);
+            result = stringRedisTemplate.execute(ADD_SCRIPT, keys, args);
+        }
+        if (result == null || (result != 0 && result != 2)) {
+            throw new BizIllegalException(
+                    StrUtil.format("用户购物车课程不能超过{}", cartProperties.getMaxAmount()));
+        }
+        return result == 2;
+    }
+
+    @Override
+    public List<Cart> list(Long userId) {
+        Map<Object, Object> hash = stringRedisTemplate.opsForHash().entries(key(userId));
+        if (hash.isEmpty()) {
+            load(userId);
+            hash = stringRedisTemplate.opsForHash().entries(key(userId));
+        }
+        return parse(userId, hash);
+    }
+
+    @Override
+    public boolean setNum(Long userId, Long itemId, Integer num) {
+        ensureLoaded(userId);
+        Long result = stringRedisTemplate.execute(SET_NUM_SCRIPT,
+                Arrays.asList(key(userId), CacheConstants.CART_DIRTY_USERS_KEY),
+                String.valueOf(itemId), String.valueOf(num), String.valueOf(userId), ttlSeconds());
+        return result != null && result > 0;
+    }
+
+    @Override
+    public int remove(Long userId, Collection<Long> itemIds) {
+        if (CollUtils.isEmpty(itemIds)) {
+            return 0;
+        }
+        ensureLoaded(userId);
+        List<String> args = new ArrayList<>(itemIds.size() + 2);
+        args.add(String.valueOf(userId));
+        args.add(ttlSeconds());
+        for (Long itemId : itemIds) {
+            args.add(String.valueOf(itemId));
+        }
+        Long result = stringRedisTemplate.execute(REMOVE_SCRIPT,
+                Arrays.asList(key(userId), CacheConstants.CART_DIRTY_USERS_KEY), args.toArray());
+        return result == null ? 0 : result.intValue();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Long> takeDirtyUsers(int count) {
+        List<Object> members = stringRedisTemplate.execute(DIRTY_TAKE_SCRIPT,
+                Arrays.asList(CacheConstants.CART_DIRTY_USERS_KEY, CacheConstants.CART_DIRTY_PROCESSING_KEY),
+                String.valueOf(count), String.valueOf(System.currentTimeMillis()));
+        if (CollUtils.isEmpty(members)) {
+            return CollUtils.emptyList();
+        }
+        return members.stream().map(m -> Long.valueOf(m.toString())).collect(Collectors.toList());
+    }
+
+    @Override
+    public void ackDirtyUsers(Collection<Long> userIds) {
+        if (CollUtils.isEmpty(userIds)) {
+            return;
+        }
+        String[] members = userIds.stream().map(String::valueOf).toArray(String[]::new);
+        stringRedisTemplate.opsForZSet().remove(CacheConstants.CART_DIRTY_PROCESSING_KEY, (Object[]) members);
+        stringRedisTemplate.opsForHash().delete(CacheConstants.CART_DIRTY_FAILURES_KEY, (Object[]) members);
+        stringRedisTemplate.opsForSet().remove(CacheConstants.CART_DIRTY_QUARANTINE_KEY, (Object[]) members);
+    }
+
+    @Override
+    public void returnDirtyUsers(Collection<Long> userIds) {
+        if (CollUtils.isEmpty(userIds)) {
+            return;
+        }
+        stringRedisTemplate.execute(DIRTY_RETURN_SCRIPT,
+                Arrays.asList(CacheConstants.CART_DIRTY_PROCESSING_KEY, CacheConstants.CART_DIRTY_USERS_KEY),
+                userIds.stream().map(String::valueOf).toArray());
+    }
+
+    @Override
+    public int reclaimDirtyUsers(long timeoutMillis) {
+        Long result = stringRedisTemplate.execute(DIRTY_RECLAIM_SCRIPT,
+                Arrays.asList(CacheConstants.CART_DIRTY_PROCESSING_KEY, CacheConstants.CART_DIRTY_USERS_KEY),
+                String.valueOf(System.currentTimeMillis() - timeoutMillis));
+        return result == null ? 0 : result.intValue();
+    }
+
+    @Override
+    public boolean failDirtyUser(Long userId, int maxAttempts) {
+        Long result = stringRedisTemplate.execute(DIRTY_FAIL_SCRIPT,
+                Arrays.asList(CacheConstants.CART_DIRTY_PROCESSING_KEY, CacheConstants.CART_DIRTY_USERS_KEY,
+                        CacheConstants.CART_DIRTY_FAILURES_KEY, CacheConstants.CART_DIRTY_QUARANTINE_KEY),
+                String.valueOf(userId), String.valueOf(maxAttempts));
+        return result != null && result == 1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<Long, List<Cart>> readLines(Collection<Long> userIds) {
+        List<Long> ids = new ArrayList<>(userIds);
+        // 一次往返读取所有用户
+        List<Object> hashes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long userId : ids) {
+                conn.hGetAll(key(userId));
+            }
+            return null;
+        });
+        Map<Long, List<Cart>> result = new HashMap<>(ids.size() * 4 / 3 + 1);
+        for (int i = 0; i < ids.size(); i++) {
+            Map<Object, Object> hash = (Map<Object, Object>) hashes.get(i);
+            if (hash != null && hash.containsKey(CacheConstants.CART_LINES_LOADED_FIELD)) {
+                result.put(ids.get(i), parse(ids.get(i), hash));
+            }
+        }
+        return result;
+    }
+
+    private void ensureLoaded(Long userId) {
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(key(userId)))) {
+            load(userId);
+        }
+    }
+
+    /**
+     * 从数据库加载购物车，并发加载时只有第一个生效
+     */
+    private void load(Long userId) {
+        List<Cart> carts = cartMapper.selectList(Wrappers.<Cart>lambdaQuery().eq(Cart::getUserId, userId));
+        List<String> args = new ArrayList<>(carts.size() * 4 + 2);
+        args.add(ttlSeconds());
+        args.add(CacheConstants.CART_LINES_LOADED_FIELD);
+        for (Cart cart : carts) {
+            args.add(CacheConstants.CART_LINE_FIELD_PREFIX + cart.getItemId());
+            args.add(toJson(cart));
+            args.add(CacheConstants.CART_NUM_FIELD_PREFIX + cart.getItemId());
+            args.add(String.valueOf(cart.getNum()));
+        }
+        stringRedisTemplate.execute(LOAD_SCRIPT, CollUtils.singletonList(key(userId)), args.toArray());
+    }
+
+    private List<Cart> parse(Long userId, Map<Object, Object> hash) {
+        List<Cart> carts = new ArrayList<>(hash.size() / 2);
+        hash.forEach((field, value) -> {
+            String name = field.toString();
+            if (!name.startsWith(CacheConstants.CART_LINE_FIELD_PREFIX)) {
+                return;
+            }
+            Object num = hash.get(CacheConstants.CART_NUM_FIELD_PREFIX
+                    + name.substring(CacheConstants.CART_LINE_FIELD_PREFIX.length()));
+            if (num == null) {
+                return;
+            }
+            try {
+                Cart cart = objectMapper.readValue(value.toString(), Cart.class);
+                carts.add(cart.setUserId(userId).setNum(Integer.valueOf(num.toString())));
+            } catch (JsonProcessingException e) {
+                log.error("无法解析的购物车条目，用户:{}，字段:{}", userId, name, e);
+            }
+        });
+        // 与数据库查询的顺序一致，新条目的id总是更大
+        carts.sort(Comparator.comparing(Cart::getId));
+        return carts;
+    }
+
+    /**
+     * 条目json不含用户id和数量
+     */
+    private String toJson(Cart cart) {
+        Cart line = BeanUtils.copyBean(cart, Cart.class).setUserId(null).setNum(null);
+        try {
+            return objectMapper.writeValueAsString(line);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String ttlSeconds() {
+        return String.valueOf(cartProperties.getRedisStoreTtl().getSeconds());
+    }
+
+    private static String key(Long userId) {
+        return CacheConstants.CART_LINES_KEY_PREFIX + userId;
+    }
+
+    private static DefaultRedisScript<Long> script(String path) {
+        return script(path, Long.class);
+    }
+
+    private static <T> DefaultRedisScript<T> script(String path, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(resultType);
+        return script;
+    }
+}
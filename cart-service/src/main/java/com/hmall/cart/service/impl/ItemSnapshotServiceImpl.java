@@ -0,0 +1,52 @@
+package com.hmall.cart.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.hmall.api.client.ItemClient;
+import com.hmall.api.dto.ItemDTO;
+import com.hmall.cart.service.IItemSnapshotService;
+import com.hmall.common.utils.CollUtils;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * 购物车展示用的商品最新信息实现类
+ * </p>
+ * 本地缓存过期时间很短，并由商品缓存失效广播主动清理，购物车读取时与缓存的条目拼接
+ */
+@Service
+@RequiredArgsConstructor
+public class ItemSnapshotServiceImpl implements IItemSnapshotService {
+
+    private final ItemClient itemClient;
+    private final Cache<Long, ItemDTO> cartItemLocalCache;
+
+    @Override
+    public Map<Long, ItemDTO> getItems(Collection<Long> itemIds) {
+        if (CollUtils.isEmpty(itemIds)) {
+            return Collections.emptyMap();
+        }
+        return cartItemLocalCache.getAll(itemIds, this::loadItems);
+    }
+
+    private Map<Long, ItemDTO> loadItems(Iterable<? extends Long> itemIds) {
+        List<Long> ids = new ArrayList<>();
+        itemIds.forEach(ids::add);
+        List<ItemDTO> items = itemClient.queryItemByIds(ids);
+        if (CollUtils.isEmpty(items)) {
+            return Collections.emptyMap();
+        }
+        Map<Long, ItemDTO> map = new HashMap<>(items.size() * 4 / 3 + 1);
+        for (ItemDTO item : items) {
+            map.put(item.getId(), item);
+        }
+        return map;
+    }
+}
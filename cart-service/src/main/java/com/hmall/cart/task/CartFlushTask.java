@@ -0,0 +1,118 @@
+package com.hmall.cart.task;
+
+import com.hmall.cart.config.CartProperties;
+import com.hmall.cart.constants.CacheConstants;
+import com.hmall.cart.domain.po.Cart;
+import com.hmall.cart.service.ICartService;
+import com.hmall.cart.service.ICartStoreService;
+import com.hmall.common.utils.CollUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把Redis购物车的变更批量落库
+ * 待落库的用户取出时移入处理中集合，多个节点同时执行也不会处理同一批用户，落库提交后才删除；
+ * 节点在落库期间宕机时，超时未确认的用户由下一次执行放回重试，落库按条目id对比，重复执行结果相同。
+ * 落库期间用户再次修改会重新加入集合，下一轮以最新的购物车覆盖
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CartFlushTask {
+
+    private final ICartService cartService;
+    private final ICartStoreService cartStoreService;
+    private final CartProperties cartProperties;
+
+    @Scheduled(fixedDelayString = "${hm.cart.flush-interval-millis:500}")
+    public void flush() {
+        // 关闭Redis购物车后仍需把剩余的变更落库，所以不判断redisStoreEnabled
+        int reclaimed = cartStoreService.reclaimDirtyUsers(cartProperties.getFlushProcessingTimeoutMillis());
+        if (reclaimed > 0) {
+            log.warn("{}个用户的购物车取出后超时未落库，已放回重试", reclaimed);
+        }
+        int batchSize = cartProperties.getFlushBatchSize();
+        List<Long> userIds;
+        do {
+            userIds = cartStoreService.takeDirtyUsers(batchSize);
+            if (userIds.isEmpty()) {
+                return;
+            }
+            if (!apply(userIds)) {
+                return;
+            }
+        } while (userIds.size() >= batchSize);
+    }
+
+    /**
+     * @return 数据库或Redis不可用时返回false，本轮不再继续
+     */
+    private boolean apply(List<Long> userIds) {
+        try {
+            Map<Long, List<Cart>> carts = cartStoreService.readLines(userIds);
+            cartService.applyRedisCarts(carts);
+        } catch (Exception e) {
+            if (isTransient(e)) {
+                log.error("购物车落库失败，放回等待重试，用户数:{}", userIds.size(), e);
+                cartStoreService.returnDirtyUsers(userIds);
+                return false;
+            }
+            // 一个用户的数据有问题会让整批回滚，逐个用户重试，其它用户正常落库
+            log.warn("购物车批量落库失败，逐个用户重试，用户数:{}", userIds.size(), e);
+            return applyEach(userIds);
+        }
+        ack(userIds);
+        return true;
+    }
+
+    private boolean applyEach(List<Long> userIds) {
+        for (int i = 0; i < userIds.size(); i++) {
+            Long userId = userIds.get(i);
+            List<Long> single = CollUtils.singletonList(userId);
+            try {
+                cartService.applyRedisCarts(cartStoreService.readLines(single));
+            } catch (Exception e) {
+                if (isTransient(e)) {
+                    log.error("购物车落库失败，放回等待重试，用户数:{}", userIds.size() - i, e);
+                    cartStoreService.returnDirtyUsers(userIds.subList(i, userIds.size()));
+                    return false;
+                }
+                if (cartStoreService.failDirtyUser(userId, cartProperties.getFlushMaxAttempts())) {
+                    log.error("用户{}的购物车连续{}次落库失败，已移入{}，不再自动重试", userId,
+                            cartProperties.getFlushMaxAttempts(), CacheConstants.CART_DIRTY_QUARANTINE_KEY, e);
+                } else {
+                    log.warn("用户{}的购物车落库失败，放回等待重试", userId, e);
+                }
+                continue;
+            }
+            ack(single);
+        }
+        return true;
+    }
+
+    private void ack(List<Long> userIds) {
+        try {
+            cartStoreService.ackDirtyUsers(userIds);
+        } catch (Exception e) {
+            // 已经落库，超时后会再落库一次，结果相同
+            log.warn("确认购物车落库失败，用户数:{}", userIds.size(), e);
+        }
+    }
+
+    /**
+     * 数据库、Redis连接失败等与具体用户无关的异常，逐个重试没有意义
+     */
+    private static boolean isTransient(Exception e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof RecoverableDataAccessException;
+    }
+}
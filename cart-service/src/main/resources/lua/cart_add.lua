@@ -0,0 +1,22 @@
+-- 添加商品到购物车，已存在时增加数量，否则检查条目数上限后新增
+-- KEYS[1]: 用户购物车hash，KEYS[2]: 待落库用户集合
+-- ARGV[1]: 商品id，ARGV[2]: 条目json，ARGV[3]: 数量，ARGV[4]: 条目数上限，ARGV[5]: 用户id，ARGV[6]: 过期秒数
+-- 返回: 0 已存在，数量已增加；2 新增条目；1 购物车已满；-1 购物车未加载
+if redis.call('exists', KEYS[1]) == 0 then
+    return -1
+end
+local numField = 'n:' .. ARGV[1]
+local result = 0
+if redis.call('hexists', KEYS[1], numField) == 1 then
+    redis.call('hincrby', KEYS[1], numField, ARGV[3])
+else
+    -- 每个条目占两个字段，另有一个加载标记字段
+    if (redis.call('hlen', KEYS[1]) - 1) / 2 >= tonumber(ARGV[4]) then
+        return 1
+    end
+    redis.call('hmset', KEYS[1], 'i:' .. ARGV[1], ARGV[2], numField, ARGV[3])
+    result = 2
+end
+redis.call('expire', KEYS[1], ARGV[6])
+redis.call('sadd', KEYS[2], ARGV[5])
+return result
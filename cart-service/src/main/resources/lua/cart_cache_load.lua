@@ -0,0 +1,14 @@
+-- 从数据库加载用户购物车缓存，已存在或刚被修改过时不写入
+-- KEYS[1]: 用户购物车缓存hash，KEYS[2]: 修改标记
+-- ARGV[1]: 过期秒数，ARGV[2]: 加载标记字段，ARGV[3..]: 字段、值交替
+-- 返回: 1 已加载；0 已存在或刚被修改过
+if redis.call('exists', KEYS[1]) == 1 or redis.call('exists', KEYS[2]) == 1 then
+    -- 修改标记存在说明查询数据库期间购物车可能被修改，查到的数据可能是旧的
+    return 0
+end
+redis.call('hset', KEYS[1], ARGV[2], '1')
+for i = 3, #ARGV, 2 do
+    redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1])
+end
+redis.call('expire', KEYS[1], ARGV[1])
+return 1
@@ -0,0 +1,21 @@
+-- 修改购物车缓存中条目的数量
+-- KEYS[1]: 用户购物车缓存hash，KEYS[2]: 修改标记
+-- ARGV[1]: 商品id，ARGV[2]: incr 增加 / set 设置，ARGV[3]: 数量，ARGV[4]: 修改标记过期毫秒数
+-- 返回: 1 已修改；0 缓存不存在；-1 条目不在缓存中，缓存与数据库不一致，已删除缓存
+if redis.call('exists', KEYS[1]) == 0 then
+    redis.call('set', KEYS[2], '1', 'px', ARGV[4])
+    return 0
+end
+local numField = 'n:' .. ARGV[1]
+if redis.call('hexists', KEYS[1], numField) == 0 then
+    -- 数据库中有这个条目而缓存中没有，缓存是旧的，不在旧数据上继续修改
+    redis.call('del', KEYS[1])
+    redis.call('set', KEYS[2], '1', 'px', ARGV[4])
+    return -1
+end
+if ARGV[2] == 'incr' then
+    redis.call('hincrby', KEYS[1], numField, ARGV[3])
+else
+    redis.call('hset', KEYS[1], numField, ARGV[3])
+end
+return 1
@@ -0,0 +1,11 @@
+-- 购物车缓存中新增或覆盖一个条目，缓存不存在时不写入，避免生成不完整的缓存
+-- KEYS[1]: 用户购物车缓存hash，KEYS[2]: 修改标记
+-- ARGV[1]: 商品id，ARGV[2]: 条目json，ARGV[3]: 数量，ARGV[4]: 修改标记过期毫秒数
+-- 返回: 1 已写入；0 缓存不存在
+if redis.call('exists', KEYS[1]) == 0 then
+    -- 正在回源的请求可能查到了修改前的数据，标记后不再写入缓存
+    redis.call('set', KEYS[2], '1', 'px', ARGV[4])
+    return 0
+end
+redis.call('hmset', KEYS[1], 'i:' .. ARGV[1], ARGV[2], 'n:' .. ARGV[1], ARGV[3])
+return 1
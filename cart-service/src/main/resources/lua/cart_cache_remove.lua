@@ -0,0 +1,10 @@
+-- 删除购物车缓存中的条目
+-- KEYS[1]: 用户购物车缓存hash，KEYS[2]: 修改标记
+-- ARGV[1]: 修改标记过期毫秒数，ARGV[2..]: 要删除的字段
+-- 返回: 1 已删除；0 缓存不存在
+if redis.call('exists', KEYS[1]) == 0 then
+    redis.call('set', KEYS[2], '1', 'px', ARGV[1])
+    return 0
+end
+redis.call('hdel', KEYS[1], unpack(ARGV, 2))
+return 1
@@ -0,0 +1,13 @@
+-- 记录一次单个用户的落库失败，未达到上限时放回待落库集合，达到上限时移入隔离集合不再自动重试
+-- KEYS[1]: 处理中用户zset，KEYS[2]: 待落库用户集合，KEYS[3]: 失败次数hash，KEYS[4]: 隔离用户集合
+-- ARGV[1]: 用户id，ARGV[2]: 失败次数上限
+-- 返回: 1 已隔离；0 已放回
+redis.call('zrem', KEYS[1], ARGV[1])
+local failures = redis.call('hincrby', KEYS[3], ARGV[1], 1)
+if failures >= tonumber(ARGV[2]) then
+    redis.call('hdel', KEYS[3], ARGV[1])
+    redis.call('sadd', KEYS[4], ARGV[1])
+    return 1
+end
+redis.call('sadd', KEYS[2], ARGV[1])
+return 0
@@ -0,0 +1,12 @@
+-- 取出后长时间未确认的用户（处理它们的节点已宕机或重启）放回待落库集合
+-- KEYS[1]: 处理中用户zset，KEYS[2]: 待落库用户集合
+-- ARGV[1]: 取出时间早于该时间戳（毫秒）的视为超时
+-- 返回: 放回的用户数
+local ids = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1])
+for _, id in ipairs(ids) do
+    redis.call('sadd', KEYS[2], id)
+end
+if #ids > 0 then
+    redis.call('zremrangebyscore', KEYS[1], '-inf', ARGV[1])
+end
+return #ids
@@ -0,0 +1,8 @@
+-- 把处理中的用户放回待落库集合，等待下一次重试
+-- KEYS[1]: 处理中用户zset，KEYS[2]: 待落库用户集合
+-- ARGV[1..]: 用户id
+for i = 1, #ARGV do
+    redis.call('zrem', KEYS[1], ARGV[i])
+    redis.call('sadd', KEYS[2], ARGV[i])
+end
+return #ARGV
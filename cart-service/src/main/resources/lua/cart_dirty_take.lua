@@ -0,0 +1,10 @@
+-- 取出一批待落库的用户，移入处理中集合，落库提交后再删除
+-- KEYS[1]: 待落库用户集合，KEYS[2]: 处理中用户zset（score为取出时间）
+-- ARGV[1]: 最多取出的用户数，ARGV[2]: 当前时间戳（毫秒）
+-- 返回: 取出的用户id
+redis.replicate_commands()
+local ids = redis.call('spop', KEYS[1], ARGV[1])
+for _, id in ipairs(ids) do
+    redis.call('zadd', KEYS[2], ARGV[2], id)
+end
+return ids
@@ -0,0 +1,13 @@
+-- 从数据库加载用户购物车，已加载过的不覆盖
+-- KEYS[1]: 用户购物车hash
+-- ARGV[1]: 过期秒数，ARGV[2]: 加载标记字段，ARGV[3..]: 字段、值交替
+-- 返回: 1 已加载；0 已存在
+if redis.call('exists', KEYS[1]) == 1 then
+    return 0
+end
+redis.call('hset', KEYS[1], ARGV[2], '1')
+for i = 3, #ARGV, 2 do
+    redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1])
+end
+redis.call('expire', KEYS[1], ARGV[1])
+return 1
@@ -0,0 +1,15 @@
+-- 删除购物车中的商品
+-- KEYS[1]: 用户购物车hash，KEYS[2]: 待落库用户集合
+-- ARGV[1]: 用户id，ARGV[2]: 过期秒数，ARGV[3..]: 商品id
+-- 返回: 删除的条目数
+local removed = 0
+for i = 3, #ARGV do
+    if redis.call('hdel', KEYS[1], 'i:' .. ARGV[i], 'n:' .. ARGV[i]) > 0 then
+        removed = removed + 1
+    end
+end
+if removed > 0 then
+    redis.call('expire', KEYS[1], ARGV[2])
+    redis.call('sadd', KEYS[2], ARGV[1])
+end
+return removed
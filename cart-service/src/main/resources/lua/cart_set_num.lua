@@ -0,0 +1,12 @@
+-- 修改购物车条目的数量，条目不存在时不修改
+-- KEYS[1]: 用户购物车hash，KEYS[2]: 待落库用户集合
+-- ARGV[1]: 商品id，ARGV[2]: 数量，ARGV[3]: 用户id，ARGV[4]: 过期秒数
+-- 返回: 1 已修改；0 条目不存在
+local numField = 'n:' .. ARGV[1]
+if redis.call('hexists', KEYS[1], numField) == 0 then
+    return 0
+end
+redis.call('hset', KEYS[1], numField, ARGV[2])
+redis.call('expire', KEYS[1], ARGV[4])
+redis.call('sadd', KEYS[2], ARGV[3])
+return 1
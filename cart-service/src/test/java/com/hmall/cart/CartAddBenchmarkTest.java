@@ -0,0 +1,211 @@
+package com.hmall.cart;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 1万个用户并发加购时，对比两种购物车存储的吞吐量和延迟：
+ * 1. 数据库：与CartServiceImpl原逻辑一致，查是否存在、查条目数、UPDATE或INSERT，三次往返
+ * 2. Redis：与CartStoreServiceImpl一致，一次cart_add.lua调用
+ * 每次加购随机选一个用户和8个商品中的一个，条目数上限为10
+ * <p>
+ * 运行方式：
+ * mvn test -pl cart-service -am -Dtest=CartAddBenchmarkTest -Dsurefire.failIfNoSpecifiedTests=false
+ * -Dbench.redis=192.168.198.128:6379 -Dbench.redis.password=123321
+ * -Dbench.mysql="jdbc:mysql://192.168.198.128:3306/hm-cart?user=root&password=123"
+ */
+public class CartAddBenchmarkTest {
+
+    private static final int USERS = 10_000;
+    private static final int ITEMS = 8;
+    private static final int MAX_AMOUNT = 10;
+    private static final int THREADS = 200;
+    private static final long RUN_MILLIS = 10_000;
+    private static final String KEY_PREFIX = "bench:cart:lines:";
+    private static final String DIRTY_KEY = "bench:cart:dirty";
+    private static final String TABLE = "cart_bench";
+
+    @Test
+    @EnabledIfSystemProperty(named = "bench.redis", matches = ".+")
+    void testRedisStore() throws Exception {
+        String[] hostPort = System.getProperty("bench.redis").split(":");
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(hostPort[0], Integer.parseInt(hostPort[1]));
+        config.setPassword(System.getProperty("bench.redis.password"));
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(config);
+        factory.afterPropertiesSet();
+        StringRedisTemplate redis = new StringRedisTemplate(factory);
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/cart_add.lua")));
+        script.setResultType(Long.class);
+        try {
+            // 所有用户的购物车都已加载
+            redis.executePipelined((RedisCallback<Object>) conn -> {
+                for (int u = 1; u <= USERS; u++) {
+                    byte[] key = (KEY_PREFIX + u).getBytes();
+                    conn.del(key);
+                    conn.hSet(key, "_".getBytes(), "1".getBytes());
+                }
+                return null;
+            });
+            run("redis", () -> {
+                long userId = ThreadLocalRandom.current().nextInt(USERS) + 1;
+                long itemId = ThreadLocalRandom.current().nextInt(ITEMS) + 1;
+                redis.execute(script, Arrays.asList(KEY_PREFIX + userId, DIRTY_KEY),
+                        String.valueOf(itemId), line(itemId), "1", String.valueOf(MAX_AMOUNT),
+                        String.valueOf(userId), "600");
+            });
+        } finally {
+            redis.executePipelined((RedisCallback<Object>) conn -> {
+                for (int u = 1; u <= USERS; u++) {
+                    conn.del((KEY_PREFIX + u).getBytes());
+                }
+                conn.del(DIRTY_KEY.getBytes());
+                return null;
+            });
+            factory.destroy();
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "bench.mysql", matches = ".+")
+    void testDatabaseStore() throws Exception {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(System.getProperty("bench.mysql"));
+        dataSource.setMaximumPoolSize(THREADS);
+        try (Connection conn = dataSource.getConnection(); Statement st = conn.createStatement()) {
+            st.executeUpdate("DROP TABLE IF EXISTS " + TABLE);
+            st.executeUpdate("CREATE TABLE " + TABLE + " (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id BIGINT NOT NULL, "
+                    + "item_id BIGINT NOT NULL, num INT NOT NULL DEFAULT 1, name VARCHAR(256), "
+                    + "KEY idx_user_id (user_id)) ENGINE=InnoDB");
+        }
+        try {
+            run("mysql", () -> {
+                long userId = ThreadLocalRandom.current().nextInt(USERS) + 1;
+                long itemId = ThreadLocalRandom.current().nextInt(ITEMS) + 1;
+                addToDatabase(dataSource, userId, itemId);
+            });
+        } finally {
+            try (Connection conn = dataSource.getConnection(); Statement st = conn.createStatement()) {
+                st.executeUpdate("DROP TABLE IF EXISTS " + TABLE);
+            }
+            dataSource.close();
+        }
+    }
+
+    private void addToDatabase(HikariDataSource dataSource, long userId, long itemId) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            if (count(conn, "SELECT COUNT(*) FROM " + TABLE + " WHERE user_id = ? AND item_id = ?", userId, itemId) > 0) {
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "UPDATE " + TABLE + " SET num = num + 1 WHERE user_id = ? AND item_id = ?")) {
+                    ps.setLong(1, userId);
+                    ps.setLong(2, itemId);
+                    ps.executeUpdate();
+                }
+                return;
+            }
+            if (count(conn, "SELECT COUNT(*) FROM " + TABLE + " WHERE user_id = ?", userId) >= MAX_AMOUNT) {
+                return;
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO " + TABLE + " (user_id, item_id, name) VALUES (?, ?, ?)")) {
+                ps.setLong(1, userId);
+                ps.setLong(2, itemId);
+                ps.setString(3, "商品" + itemId);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    private static int count(Connection conn, String sql, long... params) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setLong(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private static String line(long itemId) {
+        return "{\"id\":\"" + (1_000_000_000L + itemId) + "\",\"itemId\":\"" + itemId
+                + "\",\"name\":\"商品" + itemId + "\",\"price\":9900,\"image\":\"/img/" + itemId + ".jpg\"}";
+    }
+
+    private void run(String mode, Add add) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        AtomicBoolean running = new AtomicBoolean(true);
+        // 按微秒统计延迟分布，最后一格为>=100ms
+        AtomicLongArray histogram = new AtomicLongArray(100_001);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        long begin = System.nanoTime();
+        for (int i = 0; i < THREADS; i++) {
+            pool.execute(() -> {
+                try {
+                    while (running.get()) {
+                        long start = System.nanoTime();
+                        add.add();
+                        long micros = (System.nanoTime() - start) / 1000;
+                        histogram.incrementAndGet((int) Math.min(micros, histogram.length() - 1));
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        TimeUnit.MILLISECONDS.sleep(RUN_MILLIS);
+        running.set(false);
+        done.await();
+        long nanos = System.nanoTime() - begin;
+        pool.shutdown();
+        long total = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            total += histogram.get(i);
+        }
+        System.out.printf("%-6s users=%d threads=%d adds=%-8d adds/sec=%.0f p50=%dus p99=%dus%n",
+                mode, USERS, THREADS, total, total * 1e9 / nanos,
+                percentile(histogram, total, 0.5), percentile(histogram, total, 0.99));
+    }
+
+    private static long percentile(AtomicLongArray histogram, long total, double p) {
+        long target = (long) Math.ceil(total * p);
+        long seen = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            seen += histogram.get(i);
+            if (seen >= target) {
+                return i;
+            }
+        }
+        return histogram.length() - 1;
+    }
+
+    @FunctionalInterface
+    private interface Add {
+        void add() throws Exception;
+    }
+}
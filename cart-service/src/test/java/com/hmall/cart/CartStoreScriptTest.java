@@ -0,0 +1,233 @@
+package com.hmall.cart;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 购物车Lua脚本的行为：加购已有商品、条目数上限、修改数量、删除后重新加购，以及待落库用户的取出、确认、超时放回、隔离
+ * <p>
+ * 需要Redis，运行方式：
+ * mvn test -pl cart-service -am -Dtest=CartStoreScriptTest -Dsurefire.failIfNoSpecifiedTests=false
+ * -Dtest.redis=192.168.198.128:6379 -Dtest.redis.password=123321
+ */
+@EnabledIfSystemProperty(named = "test.redis", matches = ".+")
+class CartStoreScriptTest {
+
+    private static final String USER = "1";
+    private static final String CART_KEY = "test:cart:lines:" + USER;
+    private static final String DIRTY_KEY = "test:cart:dirty";
+    private static final String PROCESSING_KEY = "test:cart:dirty:processing";
+    private static final String FAILURES_KEY = "test:cart:dirty:failures";
+    private static final String QUARANTINE_KEY = "test:cart:dirty:quarantine";
+    private static final String TTL = "600";
+    private static final int MAX_AMOUNT = 2;
+
+    private LettuceConnectionFactory factory;
+    private StringRedisTemplate redis;
+
+    @BeforeEach
+    void setUp() {
+        String[] hostPort = System.getProperty("test.redis").split(":");
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(hostPort[0], Integer.parseInt(hostPort[1]));
+        config.setPassword(System.getProperty("test.redis.password"));
+        factory = new LettuceConnectionFactory(config);
+        factory.afterPropertiesSet();
+        redis = new StringRedisTemplate(factory);
+        cleanUp();
+        // 已从数据库加载的空购物车
+        redis.opsForHash().put(CART_KEY, "_", "1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        cleanUp();
+        factory.destroy();
+    }
+
+    @Test
+    void testAddNotLoaded() {
+        redis.delete(CART_KEY);
+
+        assertEquals(-1L, add("100"));
+        assertFalse(redis.hasKey(CART_KEY));
+        assertFalse(isDirty());
+    }
+
+    @Test
+    void testAddExistingLine() {
+        assertEquals(2L, add("100"));
+        assertEquals(0L, add("100"));
+
+        assertEquals("2", redis.opsForHash().get(CART_KEY, "n:100"));
+        assertEquals("{\"itemId\":100}", redis.opsForHash().get(CART_KEY, "i:100"));
+        assertTrue(isDirty());
+    }
+
+    @Test
+    void testMaxAmountBoundary() {
+        assertEquals(2L, add("100"));
+        // 第MAX_AMOUNT个条目仍可加入
+        assertEquals(2L, add("200"));
+        // 超过上限的新条目被拒绝
+        assertEquals(1L, add("300"));
+        assertFalse(redis.opsForHash().hasKey(CART_KEY, "n:300"));
+        // 购物车已满时已有条目仍可加数量
+        assertEquals(0L, add("200"));
+        assertEquals("2", redis.opsForHash().get(CART_KEY, "n:200"));
+    }
+
+    @Test
+    void testSetNum() {
+        add("100");
+        redis.delete(DIRTY_KEY);
+
+        assertEquals(1L, exec("lua/cart_set_num.lua", Arrays.asList(CART_KEY, DIRTY_KEY), "100", "5", USER, TTL));
+        assertEquals("5", redis.opsForHash().get(CART_KEY, "n:100"));
+        assertTrue(isDirty());
+    }
+
+    @Test
+    void testSetNumMissingLine() {
+        assertEquals(0L, exec("lua/cart_set_num.lua", Arrays.asList(CART_KEY, DIRTY_KEY), "100", "5", USER, TTL));
+        assertFalse(redis.opsForHash().hasKey(CART_KEY, "n:100"));
+        assertFalse(isDirty());
+    }
+
+    @Test
+    void testRemoveThenReAddBeforeFlush() {
+        add("100");
+        add("100");
+        redis.delete(DIRTY_KEY);
+
+        assertEquals(1L, remove("100", "999"));
+        assertFalse(redis.opsForHash().hasKey(CART_KEY, "i:100"));
+        assertFalse(redis.opsForHash().hasKey(CART_KEY, "n:100"));
+        assertTrue(isDirty());
+
+        // 重新加购是新条目，数量从1开始，不继承删除前的数量
+        assertEquals(2L, add("100"));
+        assertEquals("1", redis.opsForHash().get(CART_KEY, "n:100"));
+    }
+
+    @Test
+    void testRemoveMissingLine() {
+        assertEquals(0L, remove("100"));
+        assertFalse(isDirty());
+        // 加载标记仍在，删空的购物车落库时删除数据库中的全部条目
+        assertTrue(redis.opsForHash().hasKey(CART_KEY, "_"));
+    }
+
+    @Test
+    void testRemoveFreesSlot() {
+        add("100");
+        add("200");
+        assertEquals(1L, add("300"));
+
+        remove("100");
+
+        assertEquals(2L, add("300"));
+    }
+
+    @Test
+    void testTakeMovesToProcessing() {
+        redis.opsForSet().add(DIRTY_KEY, "1", "2", "3");
+
+        List<Object> taken = takeDirty(2);
+
+        assertEquals(2, taken.size());
+        assertEquals(1L, redis.opsForSet().size(DIRTY_KEY));
+        assertEquals(2L, redis.opsForZSet().size(PROCESSING_KEY));
+        for (Object userId : taken) {
+            assertFalse(redis.opsForSet().isMember(DIRTY_KEY, userId.toString()));
+        }
+    }
+
+    @Test
+    void testReturnAndReclaim() {
+        redis.opsForSet().add(DIRTY_KEY, "1", "2");
+        takeDirty(2);
+
+        assertEquals(1L, exec("lua/cart_dirty_return.lua", Arrays.asList(PROCESSING_KEY, DIRTY_KEY), "1"));
+        assertTrue(redis.opsForSet().isMember(DIRTY_KEY, "1"));
+        assertNull(redis.opsForZSet().score(PROCESSING_KEY, "1"));
+
+        // 未超时的不放回
+        assertEquals(0L, exec("lua/cart_dirty_reclaim.lua", Arrays.asList(PROCESSING_KEY, DIRTY_KEY),
+                String.valueOf(System.currentTimeMillis() - 60000)));
+        assertEquals(1L, exec("lua/cart_dirty_reclaim.lua", Arrays.asList(PROCESSING_KEY, DIRTY_KEY),
+                String.valueOf(System.currentTimeMillis() + 1)));
+        assertTrue(redis.opsForSet().isMember(DIRTY_KEY, "2"));
+        assertEquals(0L, redis.opsForZSet().size(PROCESSING_KEY));
+    }
+
+    @Test
+    void testFailThenQuarantine() {
+        List<String> keys = Arrays.asList(PROCESSING_KEY, DIRTY_KEY, FAILURES_KEY, QUARANTINE_KEY);
+        for (int attempt = 1; attempt < 3; attempt++) {
+            redis.opsForSet().add(DIRTY_KEY, USER);
+            takeDirty(1);
+            assertEquals(0L, exec("lua/cart_dirty_fail.lua", keys, USER, "3"));
+            assertTrue(redis.opsForSet().isMember(DIRTY_KEY, USER));
+        }
+        takeDirty(1);
+
+        assertEquals(1L, exec("lua/cart_dirty_fail.lua", keys, USER, "3"));
+        assertFalse(redis.opsForSet().isMember(DIRTY_KEY, USER));
+        assertTrue(redis.opsForSet().isMember(QUARANTINE_KEY, USER));
+        assertFalse(redis.opsForHash().hasKey(FAILURES_KEY, USER));
+        assertEquals(0L, redis.opsForZSet().size(PROCESSING_KEY));
+    }
+
+    private Long add(String itemId) {
+        return exec("lua/cart_add.lua", Arrays.asList(CART_KEY, DIRTY_KEY),
+                itemId, "{\"itemId\":" + itemId + "}", "1", String.valueOf(MAX_AMOUNT), USER, TTL);
+    }
+
+    private Long remove(String... itemIds) {
+        Object[] args = new Object[itemIds.length + 2];
+        args[0] = USER;
+        args[1] = TTL;
+        System.arraycopy(itemIds, 0, args, 2, itemIds.length);
+        return exec("lua/cart_remove.lua", Arrays.asList(CART_KEY, DIRTY_KEY), args);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<Object> takeDirty(int count) {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/cart_dirty_take.lua")));
+        script.setResultType(List.class);
+        return redis.execute(script, Arrays.asList(DIRTY_KEY, PROCESSING_KEY),
+                String.valueOf(count), String.valueOf(System.currentTimeMillis()));
+    }
+
+    private Long exec(String path, List<String> keys, Object... args) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(Long.class);
+        return redis.execute(script, keys, args);
+    }
+
+    private boolean isDirty() {
+        return Boolean.TRUE.equals(redis.opsForSet().isMember(DIRTY_KEY, USER));
+    }
+
+    private void cleanUp() {
+        redis.delete(Arrays.asList(CART_KEY, DIRTY_KEY, PROCESSING_KEY, FAILURES_KEY, QUARANTINE_KEY));
+    }
+}
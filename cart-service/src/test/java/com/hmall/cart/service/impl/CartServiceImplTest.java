@@ -0,0 +1,181 @@
+package com.hmall.cart.service.impl;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.hmall.cart.config.CartProperties;
+import com.hmall.cart.domain.po.Cart;
+import com.hmall.cart.mapper.CartMapper;
+import com.hmall.cart.service.ICartCacheService;
+import com.hmall.cart.service.ICartStoreService;
+import com.hmall.cart.service.IItemSnapshotService;
+import com.hmall.common.utils.SingleFlightLoader;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * applyRedisCarts按条目id对比Redis购物车和数据库：加购已有商品、删除后重新加购、删除后落库
+ */
+class CartServiceImplTest {
+
+    private static final long USER = 1L;
+
+    private CartMapper cartMapper;
+    private CartServiceImpl cartService;
+
+    @BeforeAll
+    static void initTableInfo() {
+        // lambdaQuery需要实体的字段映射
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), Cart.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        cartMapper = mock(CartMapper.class);
+        cartService = spy(new CartServiceImpl(mock(IItemSnapshotService.class), new CartProperties(),
+                mock(SingleFlightLoader.class), mock(ICartStoreService.class), mock(ICartCacheService.class)));
+        ReflectionTestUtils.setField(cartService, "baseMapper", cartMapper);
+        doReturn(true).when(cartService).updateBatchById(anyCollection());
+    }
+
+    @Test
+    void testAddExistingLineUpdatesNum() {
+        database(line(11, 100, 1), line(12, 200, 1));
+
+        cartService.applyRedisCarts(redis(USER, line(11, 100, 3), line(12, 200, 1)));
+
+        ArgumentCaptor<Collection<Cart>> updates = captor();
+        verify(cartService).updateBatchById(updates.capture());
+        assertEquals(1, updates.getValue().size());
+        Cart update = updates.getValue().iterator().next();
+        assertEquals(11L, update.getId());
+        assertEquals(3, update.getNum());
+        verify(cartMapper, never()).insertBatchWithId(anyList());
+        verify(cartMapper, never()).deleteBatchIds(anyCollection());
+    }
+
+    @Test
+    void testNewLineInserted() {
+        database(line(11, 100, 1));
+
+        cartService.applyRedisCarts(redis(USER, line(11, 100, 1), line(13, 300, 2)));
+
+        ArgumentCaptor<List<Cart>> inserts = captor();
+        verify(cartMapper).insertBatchWithId(inserts.capture());
+        assertEquals(Collections.singletonList(13L), ids(inserts.getValue()));
+        verify(cartService, never()).updateBatchById(anyCollection());
+        verify(cartMapper, never()).deleteBatchIds(anyCollection());
+    }
+
+    @Test
+    void testRemoveThenReAddBeforeFlush() {
+        // 删除后重新加购，Redis中是同一商品的新条目id
+        database(line(11, 100, 4));
+
+        cartService.applyRedisCarts(redis(USER, line(21, 100, 1)));
+
+        ArgumentCaptor<Collection<Long>> deletes = captor();
+        ArgumentCaptor<List<Cart>> inserts = captor();
+        InOrder order = inOrder(cartMapper);
+        order.verify(cartMapper).deleteBatchIds(deletes.capture());
+        order.verify(cartMapper).insertBatchWithId(inserts.capture());
+        assertEquals(Collections.singletonList(11L), new ArrayList<>(deletes.getValue()));
+        assertEquals(Collections.singletonList(21L), ids(inserts.getValue()));
+        verify(cartService, never()).updateBatchById(anyCollection());
+    }
+
+    @Test
+    void testFlushAfterDeleteRemovesLines() {
+        // Redis购物车已清空，只剩加载标记
+        database(line(11, 100, 1), line(12, 200, 2));
+
+        cartService.applyRedisCarts(redis(USER));
+
+        ArgumentCaptor<Collection<Long>> deletes = captor();
+        verify(cartMapper).deleteBatchIds(deletes.capture());
+        assertEquals(Arrays.asList(11L, 12L), sorted(deletes.getValue()));
+        verify(cartMapper, never()).insertBatchWithId(anyList());
+    }
+
+    @Test
+    void testReplayIsNoop() {
+        // 落库已提交但确认失败，超时后再执行一次
+        database(line(11, 100, 2));
+
+        cartService.applyRedisCarts(redis(USER, line(11, 100, 2)));
+
+        verify(cartMapper, never()).insertBatchWithId(anyList());
+        verify(cartMapper, never()).deleteBatchIds(anyCollection());
+        verify(cartService, never()).updateBatchById(anyCollection());
+    }
+
+    @Test
+    void testEmptyBatchSkipsQuery() {
+        cartService.applyRedisCarts(Collections.emptyMap());
+
+        verify(cartMapper, never()).selectList(any());
+    }
+
+    private void database(Cart... lines) {
+        List<Cart> rows = new ArrayList<>();
+        for (Cart line : lines) {
+            rows.add(line.setUserId(USER));
+        }
+        when(cartMapper.selectList(any())).thenReturn(rows);
+    }
+
+    private static Map<Long, List<Cart>> redis(long userId, Cart... lines) {
+        Map<Long, List<Cart>> carts = new HashMap<>();
+        List<Cart> list = new ArrayList<>();
+        for (Cart line : lines) {
+            list.add(line.setUserId(userId));
+        }
+        carts.put(userId, list);
+        return carts;
+    }
+
+    private static Cart line(long id, long itemId, int num) {
+        return new Cart().setId(id).setItemId(itemId).setNum(num);
+    }
+
+    private static List<Long> ids(List<Cart> carts) {
+        List<Long> ids = new ArrayList<>();
+        carts.forEach(c -> ids.add(c.getId()));
+        return ids;
+    }
+
+    private static List<Long> sorted(Collection<Long> ids) {
+        List<Long> list = new ArrayList<>(ids);
+        Collections.sort(list);
+        return list;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> ArgumentCaptor<T> captor() {
+        return (ArgumentCaptor) ArgumentCaptor.forClass(Object.class);
+    }
+}
@@ -1,6 +1,9 @@
 package com.hmall.api.client;
 
+import com.hmall.api.dto.AddressDTO;
 import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
@@ -8,4 +11,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 public interface UserClient {
     @PutMapping("/users/money/deduct")
     void deductMoney(@RequestParam("pw") String pw, @RequestParam("amount") Integer amount);
+
+    @GetMapping("/addresses/{addressId}")
+    AddressDTO findAddressById(@PathVariable("addressId") Long id);
 }
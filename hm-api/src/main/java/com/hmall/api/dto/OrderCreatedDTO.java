@@ -0,0 +1,20 @@
+package com.hmall.api.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.Collection;
+
+@ApiModel(description = "订单创建事件")
+@Data
+@Accessors(chain = true)
+public class OrderCreatedDTO {
+    @ApiModelProperty("订单id")
+    private Long orderId;
+    @ApiModelProperty("下单用户id")
+    private Long userId;
+    @ApiModelProperty("下单的商品id")
+    private Collection<Long> itemIds;
+}
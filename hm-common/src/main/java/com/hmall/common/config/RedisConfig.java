@@ -2,13 +2,17 @@ package com.hmall.common.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.hmall.common.utils.SingleFlightLoader;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.time.Duration;
+
 @Configuration
 public class RedisConfig {
 
@@ -36,4 +40,10 @@ public class RedisConfig {
         template.afterPropertiesSet();
         return template;
     }
+
+    @Bean
+    public SingleFlightLoader singleFlightLoader(StringRedisTemplate stringRedisTemplate) {
+        // 分布式锁10秒过期，等待加载最多3秒，保留最近1万个key的旧值用于降级
+        return new SingleFlightLoader(stringRedisTemplate, Duration.ofSeconds(10), Duration.ofSeconds(3), 10000);
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,25 @@
+package com.hmall.common.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 带逻辑过期时间的缓存数据
+ * Redis中的key不设置（或设置很长的）TTL，由expireTime判断数据是否需要重建
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RedisData {
+    /**
+     * 逻辑过期时间
+     */
+    private LocalDateTime expireTime;
+    /**
+     * 缓存的数据
+     */
+    private Object data;
+}
@@ -0,0 +1,191 @@
+package com.hmall.common.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于Redis位图的布隆过滤器，多个服务实例共享同一个位图
+ * <p>
+ * 位图建好之前（未调用{@link #markReady()}），{@link #mightContain(long)}始终返回true，不拦截任何请求。
+ * 建好之后每隔recheckInterval、或连续拒绝RECHECK_REJECT_STREAK次后重新确认位图和标记仍在，
+ * Redis被清空、key被淘汰或访问Redis出错时不拦截，避免把存在的商品误判为不存在。
+ */
+public class RedisBloomFilter {
+
+    private static final Duration DEFAULT_RECHECK_INTERVAL = Duration.ofSeconds(10);
+    /**
+     * 位图丢失后所有查询都会被拒绝，连续拒绝这么多次时不等间隔到期就重新确认
+     */
+    static final int RECHECK_REJECT_STREAK = 100;
+
+    private final StringRedisTemplate redisTemplate;
+    private final String bitmapKey;
+    private final byte[] key;
+    private final String readyKey;
+    private final long numBits;
+    private final int numHashFunctions;
+    private final long recheckMillis;
+    private final AtomicInteger rejectStreak = new AtomicInteger();
+    private volatile boolean ready;
+    private volatile long checkedAt;
+
+    /**
+     * @param redisTemplate redis客户端
+     * @param key 位图的key，同时以{key}:ready作为位图已建好的标记
+     * @param expectedInsertions 预计元素数量
+     * @param fpp 期望的误判率
+     */
+    public RedisBloomFilter(StringRedisTemplate redisTemplate, String key, long expectedInsertions, double fpp) {
+        this(redisTemplate, key, expectedInsertions, fpp, DEFAULT_RECHECK_INTERVAL);
+    }
+
+    /**
+     * @param recheckInterval 多久重新确认一次位图和标记是否还在
+     */
+    public RedisBloomFilter(StringRedisTemplate redisTemplate, String key, long expectedInsertions, double fpp,
+                            Duration recheckInterval) {
+        this.redisTemplate = redisTemplate;
+        this.bitmapKey = key;
+        this.key = key.getBytes(StandardCharsets.UTF_8);
+        this.readyKey = key + ":ready";
+        this.numBits = optimalNumOfBits(expectedInsertions, fpp);
+        this.numHashFunctions = optimalNumOfHashFunctions(expectedInsertions, numBits);
+        this.recheckMillis = recheckInterval.toMillis();
+    }
+
+    public void put(long value) {
+        putAll(CollUtils.singletonList(value));
+    }
+
+    /**
+     * 通过pipeline批量写入
+     */
+    public void putAll(Collection<Long> values) {
+        if (CollUtils.isEmpty(values)) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            RedisStringCommands commands = connection.stringCommands();
+            for (Long value : values) {
+                for (long offset : bitOffsets(value)) {
+                    commands.setBit(key, offset, true);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 判断元素是否可能存在，一次pipeline读取所有位
+     * @return false表示一定不存在
+     */
+    public boolean mightContain(long value) {
+        if (!isReady()) {
+            return true;
+        }
+        long[] offsets = bitOffsets(value);
+        List<Object> bits;
+        try {
+            bits = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (long offset : offsets) {
+                    connection.stringCommands().getBit(key, offset);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // 不拦截，由后续的缓存和数据库查询决定
+            return true;
+        }
+        for (Object bit : bits) {
+            if (!Boolean.TRUE.equals(bit)) {
+                if (rejectStreak.incrementAndGet() >= RECHECK_REJECT_STREAK) {
+                    rejectStreak.set(0);
+                    checkedAt = 0;
+                }
+                return false;
+            }
+        }
+        rejectStreak.set(0);
+        return true;
+    }
+
+    /**
+     * 位图和标记都存在时才拦截，结果缓存recheckInterval
+     */
+    public boolean isReady() {
+        long now = System.currentTimeMillis();
+        if (now - checkedAt >= recheckMillis) {
+            checkedAt = now;
+            ready = keysExist();
+        }
+        return ready;
+    }
+
+    private boolean keysExist() {
+        try {
+            Long count = redisTemplate.countExistingKeys(Arrays.asList(readyKey, bitmapKey));
+            return count != null && count == 2;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 位图初始化完成后调用，之后才开始拦截
+     */
+    public void markReady() {
+        redisTemplate.opsForValue().set(readyKey, "1");
+        ready = true;
+        checkedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 位图需要重建时调用，重建完成前所有节点都不拦截
+     */
+    public void markNotReady() {
+        redisTemplate.delete(readyKey);
+        ready = false;
+        checkedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 元素对应的k个位偏移量，采用 h1 + i * h2 的双重哈希
+     */
+    public long[] bitOffsets(long value) {
+        long[] hash = MurmurHash.hash128(ByteBuffer.allocate(Long.BYTES).putLong(value).array());
+        long combined = hash[0];
+        long[] offsets = new long[numHashFunctions];
+        for (int i = 0; i < numHashFunctions; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += hash[1];
+        }
+        return offsets;
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashFunctions() {
+        return numHashFunctions;
+    }
+
+    static long optimalNumOfBits(long n, double p) {
+        return (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+    }
+
+    static int optimalNumOfHashFunctions(long n, long m) {
+        return Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+}
@@ -0,0 +1,148 @@
+package com.hmall.common.utils;
+
+import cn.hutool.core.lang.UUID;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 缓存未命中时的合并加载器（single-flight）
+ * <p>
+ * 1. 同一个JVM内，同一个key的并发未命中只有一个线程（leader）去加载，其它线程等待leader的结果；
+ * 2. leader再通过Redis分布式锁与其它节点互斥，每个节点只会抢一次锁；
+ * 3. 等待有超时上限，超时后返回最近一次成功加载的旧值，没有旧值则返回null，不再睡眠后递归重试；
+ * 4. 数据变更时调用invalidate删除旧值，避免超时后返回已修改或已删除的数据。
+ */
+@Slf4j
+public class SingleFlightLoader {
+
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+    /**
+     * 未抢到分布式锁时，轮询缓存的间隔
+     */
+    private static final long POLL_INTERVAL_MILLIS = 20;
+
+    private final StringRedisTemplate redisTemplate;
+    private final Duration lockTtl;
+    private final Duration waitTimeout;
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    /**
+     * 最近一次成功加载的值，用于等待超时后的降级
+     */
+    private final Cache<String, Object> staleValues;
+
+    public SingleFlightLoader(StringRedisTemplate redisTemplate, Duration lockTtl, Duration waitTimeout, long maxStaleSize) {
+        this.redisTemplate = redisTemplate;
+        this.lockTtl = lockTtl;
+        this.waitTimeout = waitTimeout;
+        this.staleValues = Caffeine.newBuilder().maximumSize(maxStaleSize).build();
+    }
+
+    /**
+     * 加载缓存数据
+     * @param key 缓存key，同一个key的并发请求会被合并
+     * @param lockKey 分布式锁key
+     * @param cacheReader 读取缓存，返回null表示未命中
+     * @param loader 回源加载并写入缓存，返回null表示数据不存在
+     * @param <T> 数据类型
+     * @return 数据，等待超时且没有旧值时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T load(String key, String lockKey, Supplier<T> cacheReader, Supplier<T> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            // 1.已有线程在加载，等待其结果
+            return (T) await(key, existing);
+        }
+        // 2.当前线程是leader
+        try {
+            // 调用方读缓存未命中之后，上一个leader可能刚刚加载完成并写入缓存
+            T value = cacheReader.get();
+            if (value == null) {
+                value = loadAcrossNodes(key, lockKey, cacheReader, loader);
+            }
+            if (value != null) {
+                staleValues.put(key, value);
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T loadAcrossNodes(String key, String lockKey, Supplier<T> cacheReader, Supplier<T> loader) {
+        String token = UUID.randomUUID().toString(true);
+        boolean locked = Boolean.TRUE.equals(redisTemplate.opsForValue()
+                .setIfAbsent(lockKey, token, lockTtl.toMillis(), TimeUnit.MILLISECONDS));
+        if (locked) {
+            try {
+                // 双重检查，防止其它节点刚刚写入缓存
+                T cached = cacheReader.get();
+                return cached != null ? cached : loader.get();
+            } finally {
+                redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+            }
+        }
+        // 其它节点正在加载，有限时间内轮询缓存
+        long deadline = System.nanoTime() + waitTimeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            T cached = cacheReader.get();
+            if (cached != null) {
+                return cached;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.warn("等待其它节点加载缓存超时，key:{}", key);
+        return (T) staleValues.getIfPresent(key);
+    }
+
+    /**
+     * 删除key的旧值，数据修改或删除后调用
+     */
+    public void invalidate(String key) {
+        staleValues.invalidate(key);
+    }
+
+    private Object await(String key, CompletableFuture<Object> future) {
+        try {
+            return future.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("等待缓存加载超时，返回旧值，key:{}", key);
+            return staleValues.getIfPresent(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return staleValues.getIfPresent(key);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.hmall.common.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 按商品服务的参数（预计200万、误判率1%）估算约100万商品时布隆过滤器的内存占用和实际误判率
+ * 位图在本地用BitSet模拟，偏移量计算与写入Redis时完全一致；
+ * 以及位图或标记丢失、Redis出错时不拦截
+ */
+class RedisBloomFilterTest {
+
+    private static final long EXPECTED_INSERTIONS = 2_000_000;
+    private static final double FPP = 0.01;
+    private static final int CATALOG_SIZE = 1_000_000;
+    private static final long FIRST_ITEM_ID = 100000000000L;
+
+    @Test
+    void testFalsePositiveRate() {
+        RedisBloomFilter filter = new RedisBloomFilter(null, "item:bloom:ids", EXPECTED_INSERTIONS, FPP);
+        BitSet bits = new BitSet((int) filter.getNumBits());
+        for (long i = 0; i < CATALOG_SIZE; i++) {
+            for (long offset : filter.bitOffsets(FIRST_ITEM_ID + i)) {
+                bits.set((int) offset);
+            }
+        }
+        // 已存在的id不能被误判为不存在
+        for (long i = 0; i < CATALOG_SIZE; i += 997) {
+            assertTrue(contains(filter, bits, FIRST_ITEM_ID + i));
+        }
+        // 从未出现过的id
+        int falsePositives = 0;
+        int probes = 1_000_000;
+        for (long i = 0; i < probes; i++) {
+            if (contains(filter, bits, FIRST_ITEM_ID + CATALOG_SIZE + i * 7)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / probes;
+        System.out.printf("items=%d bits=%d (%.2f MiB) hashes=%d falsePositiveRate=%.5f%n",
+                CATALOG_SIZE, filter.getNumBits(), filter.getNumBits() / 8.0 / 1024 / 1024,
+                filter.getNumHashFunctions(), rate);
+        assertTrue(rate < FPP);
+    }
+
+    @Test
+    void testFailOpenAfterBitmapGone() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        when(redis.countExistingKeys(anyCollection())).thenReturn(2L, 1L);
+        when(redis.executePipelined(any(RedisCallback.class))).thenReturn(Collections.nCopies(7, false));
+        RedisBloomFilter filter = new RedisBloomFilter(redis, "item:bloom:ids", EXPECTED_INSERTIONS, FPP, Duration.ZERO);
+
+        assertFalse(filter.mightContain(1L));
+        // 位图被淘汰，标记还在
+        assertTrue(filter.mightContain(1L));
+        verify(redis, times(1)).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    void testRejectStreakForcesRecheck() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        when(redis.countExistingKeys(anyCollection())).thenReturn(2L, 0L);
+        when(redis.executePipelined(any(RedisCallback.class))).thenReturn(Collections.nCopies(7, false));
+        RedisBloomFilter filter = new RedisBloomFilter(redis, "item:bloom:ids", EXPECTED_INSERTIONS, FPP, Duration.ofHours(1));
+
+        for (int i = 0; i < RedisBloomFilter.RECHECK_REJECT_STREAK; i++) {
+            assertFalse(filter.mightContain(i));
+        }
+        // 不等一小时到期，连续拒绝后立即重新确认，发现Redis已被清空
+        assertTrue(filter.mightContain(-1L));
+        verify(redis, times(2)).countExistingKeys(anyCollection());
+    }
+
+    @Test
+    void testFailOpenOnRedisError() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        when(redis.countExistingKeys(anyCollection())).thenReturn(2L);
+        when(redis.executePipelined(any(RedisCallback.class))).thenThrow(new RedisConnectionFailureException("down"));
+        RedisBloomFilter filter = new RedisBloomFilter(redis, "item:bloom:ids", EXPECTED_INSERTIONS, FPP);
+
+        assertTrue(filter.mightContain(1L));
+    }
+
+    @Test
+    void testNotReadyBeforeInit() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        when(redis.countExistingKeys(anyCollection())).thenReturn(1L);
+        RedisBloomFilter filter = new RedisBloomFilter(redis, "item:bloom:ids", EXPECTED_INSERTIONS, FPP);
+
+        assertTrue(filter.mightContain(1L));
+        verify(redis, never()).executePipelined(any(RedisCallback.class));
+    }
+
+    private boolean contains(RedisBloomFilter filter, BitSet bits, long id) {
+        for (long offset : filter.bitOffsets(id)) {
+            if (!bits.get((int) offset)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
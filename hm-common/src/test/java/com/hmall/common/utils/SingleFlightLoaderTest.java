@@ -0,0 +1,245 @@
+package com.hmall.common.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 1000个并发请求同时访问同一个冷key时，对比旧的"抢锁失败睡眠后递归"与SingleFlightLoader：
+ * 回源次数、抢锁次数、请求线程被占用的总时长
+ */
+class SingleFlightLoaderTest {
+
+    private static final int REQUESTS = 1000;
+    /**
+     * 与Tomcat默认的最大线程数一致
+     */
+    private static final int POOL_SIZE = 200;
+    private static final long DB_MILLIS = 200;
+    private static final String KEY = "item:id:1";
+    private static final String LOCK_KEY = "lock:item:id:1";
+
+    private final Map<String, String> redis = new ConcurrentHashMap<>();
+    private final AtomicInteger lockAttempts = new AtomicInteger();
+    private final AtomicInteger dbLoads = new AtomicInteger();
+    private StringRedisTemplate redisTemplate;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(ops);
+        when(ops.setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class))).thenAnswer(inv -> {
+            lockAttempts.incrementAndGet();
+            return redis.putIfAbsent(inv.getArgument(0), inv.getArgument(1)) == null;
+        });
+        doAnswer(inv -> {
+            List<String> keys = inv.getArgument(1);
+            return redis.remove(keys.get(0), inv.getArgument(2)) ? 1L : 0L;
+        }).when(redisTemplate).execute(any(RedisScript.class), anyList(), any());
+    }
+
+    @Test
+    void testColdKeyStampede() throws Exception {
+        SingleFlightLoader loader = new SingleFlightLoader(redisTemplate, Duration.ofSeconds(10), Duration.ofSeconds(3), 100);
+        Result result = runStampede(() -> {
+            String cached = redis.get(KEY);
+            return cached != null ? cached : loader.load(KEY, LOCK_KEY, () -> redis.get(KEY), this::loadFromDb);
+        });
+        result.print("single-flight");
+
+        assertEquals(1, dbLoads.get());
+        // 合并后每次回源最多抢一次锁
+        assertTrue(lockAttempts.get() <= dbLoads.get(), "lockAttempts: " + lockAttempts.get());
+        assertEquals(REQUESTS, result.hits);
+    }
+
+    @Test
+    void testFollowerFallsBackToStaleValueAfterTimeout() throws Exception {
+        SingleFlightLoader loader = new SingleFlightLoader(redisTemplate, Duration.ofSeconds(10), Duration.ofMillis(200), 100);
+        assertEquals("item-1", loader.load(KEY, LOCK_KEY, () -> redis.get(KEY), this::loadFromDb));
+        // 缓存过期，leader回源很慢
+        redis.remove(KEY);
+        SlowLeader leader = new SlowLeader(loader);
+
+        long begin = System.nanoTime();
+        String value = loader.load(KEY, LOCK_KEY, () -> redis.get(KEY), this::loadFromDb);
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        // 先等待leader，超时后才返回旧值
+        assertEquals("item-1", value);
+        assertTrue(waitedMillis >= 150, "waited " + waitedMillis + "ms");
+        assertEquals("item-2", leader.finish());
+        assertEquals(1, dbLoads.get());
+    }
+
+    @Test
+    void testInvalidatedStaleValueIsNotReturned() throws Exception {
+        SingleFlightLoader loader = new SingleFlightLoader(redisTemplate, Duration.ofSeconds(10), Duration.ofMillis(200), 100);
+        assertEquals("item-1", loader.load(KEY, LOCK_KEY, () -> redis.get(KEY), this::loadFromDb));
+        // 商品被修改，缓存和旧值都已删除
+        redis.remove(KEY);
+        loader.invalidate(KEY);
+        SlowLeader leader = new SlowLeader(loader);
+
+        assertNull(loader.load(KEY, LOCK_KEY, () -> redis.get(KEY), this::loadFromDb));
+        assertEquals("item-2", leader.finish());
+    }
+
+    /**
+     * 在后台线程中成为leader，回源阻塞到finish
+     */
+    private class SlowLeader {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final ExecutorService pool = Executors.newSingleThreadExecutor();
+        private final Future<String> result;
+
+        SlowLeader(SingleFlightLoader loader) throws InterruptedException {
+            CountDownLatch loading = new CountDownLatch(1);
+            result = pool.submit(() -> loader.load(KEY, LOCK_KEY, () -> redis.get(KEY), () -> {
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                redis.put(KEY, "item-2");
+                return "item-2";
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+        }
+
+        String finish() throws Exception {
+            release.countDown();
+            try {
+                return result.get(5, TimeUnit.SECONDS);
+            } finally {
+                shutdown(pool);
+            }
+        }
+    }
+
+    @Test
+    void testLegacySleepAndRecurse() throws Exception {
+        Result result = runStampede(this::legacyLoad);
+        result.print("sleep-recurse");
+
+        assertEquals(REQUESTS, result.hits);
+        assertTrue(lockAttempts.get() > 1);
+    }
+
+    /**
+     * 旧实现：抢锁失败后睡眠50ms再递归重试
+     */
+    private String legacyLoad() {
+        String cached = redis.get(KEY);
+        if (cached != null) {
+            return cached;
+        }
+        lockAttempts.incrementAndGet();
+        if (redis.putIfAbsent(LOCK_KEY, "1") == null) {
+            try {
+                cached = redis.get(KEY);
+                return cached != null ? cached : loadFromDb();
+            } finally {
+                redis.remove(LOCK_KEY);
+            }
+        }
+        try { Thread.sleep(50); } catch (InterruptedException ignored) {}
+        return legacyLoad();
+    }
+
+    private String loadFromDb() {
+        dbLoads.incrementAndGet();
+        try {
+            TimeUnit.MILLISECONDS.sleep(DB_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        redis.put(KEY, "item-1");
+        return "item-1";
+    }
+
+    private Result runStampede(Supplier<String> request) throws Exception {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        AtomicLong busyNanos = new AtomicLong();
+        AtomicInteger peakActive = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?>[] futures = new Future[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            futures[i] = pool.submit(() -> {
+                start.await();
+                long begin = System.nanoTime();
+                peakActive.accumulateAndGet(pool.getActiveCount(), Math::max);
+                String value = request.get();
+                busyNanos.addAndGet(System.nanoTime() - begin);
+                return value;
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        int hits = 0;
+        for (Future<?> future : futures) {
+            if ("item-1".equals(future.get())) {
+                hits++;
+            }
+        }
+        long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        shutdown(pool);
+        return new Result(hits, wallMillis, TimeUnit.NANOSECONDS.toMillis(busyNanos.get()), peakActive.get());
+    }
+
+    private void shutdown(ExecutorService pool) throws InterruptedException {
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private class Result {
+        final int hits;
+        final long wallMillis;
+        final long busyMillis;
+        final int peakActive;
+
+        Result(int hits, long wallMillis, long busyMillis, int peakActive) {
+            this.hits = hits;
+            this.wallMillis = wallMillis;
+            this.busyMillis = busyMillis;
+            this.peakActive = peakActive;
+        }
+
+        void print(String mode) {
+            System.out.printf("%-14s requests=%d wall=%dms threadBusy=%dms peakActive=%d/%d dbLoads=%d lockAttempts=%d%n",
+                    mode, hits, wallMillis, busyMillis, peakActive, POOL_SIZE, dbLoads.get(), lockAttempts.get());
+        }
+    }
+}
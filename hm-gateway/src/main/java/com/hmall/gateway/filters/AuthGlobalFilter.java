@@ -63,6 +63,14 @@ public class AuthGlobalFilter implements GlobalFilter, Ordered {
     }
 
     private boolean isExclude(String path) {
+        // includePaths优先，用于在放行的路径下保留需要登录的管理接口
+        if (authProperties.getIncludePaths() != null) {
+            for (String pathPattern : authProperties.getIncludePaths()) {
+                if (antPathMatcher.match(pathPattern, path)) {
+                    return false;
+                }
+            }
+        }
         for (String pathPattern : authProperties.getExcludePaths()) {
             if (antPathMatcher.match(pathPattern, path)) {
                 return true;
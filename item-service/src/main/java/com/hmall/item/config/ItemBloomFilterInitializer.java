@@ -0,0 +1,98 @@
+package com.hmall.item.config;
+
+import com.hmall.common.utils.RedisBloomFilter;
+import com.hmall.item.constants.CacheConstants;
+import com.hmall.item.mapper.ItemMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 启动时初始化商品id布隆过滤器
+ * 位图在Redis中各节点共享，只有抢到锁的节点负责流式扫描商品表，其它节点直接复用；
+ * 之后定时确认位图仍在，Redis被清空或key被淘汰后重新初始化，初始化失败时按指数退避重试
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ItemBloomFilterInitializer implements ApplicationRunner {
+
+    private static final int BATCH_SIZE = 10000;
+    private static final long BASE_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private final ItemMapper itemMapper;
+    private final RedisBloomFilter itemBloomFilter;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile int failures;
+    private volatile long nextAttemptAt;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        ensureReady();
+    }
+
+    @Scheduled(initialDelay = 30000, fixedDelay = 30000)
+    public void ensureReady() {
+        if (itemBloomFilter.isReady() || System.currentTimeMillis() < nextAttemptAt
+                || !running.compareAndSet(false, true)) {
+            return;
+        }
+        // 后台初始化，不阻塞启动，建好之前布隆过滤器不拦截请求
+        Thread thread = new Thread(this::init, "item-bloom-init");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void init() {
+        boolean lock = false;
+        try {
+            lock = Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(
+                    CacheConstants.ITEM_BLOOM_INIT_LOCK_KEY, "1", CacheConstants.BLOOM_INIT_LOCK_EXPIRE_MINUTES, TimeUnit.MINUTES));
+            if (!lock) {
+                // 其它节点正在初始化
+                return;
+            }
+            // 位图丢失时标记可能还在，先删除，重建完成前所有节点都不拦截
+            itemBloomFilter.markNotReady();
+            long begin = System.currentTimeMillis();
+            List<Long> batch = new ArrayList<>(BATCH_SIZE);
+            long[] total = {0};
+            itemMapper.scanAllIds(context -> {
+                batch.add(context.getResultObject());
+                if (batch.size() >= BATCH_SIZE) {
+                    itemBloomFilter.putAll(batch);
+                    total[0] += batch.size();
+                    batch.clear();
+                }
+            });
+            itemBloomFilter.putAll(batch);
+            total[0] += batch.size();
+            itemBloomFilter.markReady();
+            failures = 0;
+            log.info("商品布隆过滤器初始化完成，商品数:{}，位数:{}，哈希函数个数:{}，耗时:{}ms", total[0],
+                    itemBloomFilter.getNumBits(), itemBloomFilter.getNumHashFunctions(), System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            int attempts = ++failures;
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempts - 1, 10));
+            nextAttemptAt = System.currentTimeMillis() + backoff;
+            log.error("商品布隆过滤器第{}次初始化失败，{}秒后重试", attempts, backoff / 1000, e);
+        } finally {
+            running.set(false);
+            if (lock) {
+                stringRedisTemplate.delete(CacheConstants.ITEM_BLOOM_INIT_LOCK_KEY);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.hmall.item.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmall.common.utils.RedisBloomFilter;
+import com.hmall.item.constants.CacheConstants;
+import com.hmall.item.domain.po.Item;
+import com.hmall.item.listener.ItemCacheInvalidateListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 商品二级缓存配置
+ * L1: 进程内Caffeine缓存，L2: Redis缓存，通过Redis频道广播失效消息
+ */
+@Configuration
+public class ItemCacheConfig {
+
+    @Bean
+    public Cache<Long, Item> itemLocalCache(MeterRegistry meterRegistry) {
+        Cache<Long, Item> cache = Caffeine.newBuilder()
+                .maximumSize(CacheConstants.ITEM_LOCAL_CACHE_MAX_SIZE)
+                .expireAfterWrite(CacheConstants.ITEM_LOCAL_CACHE_EXPIRE_SECONDS, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        // 暴露L1的命中、未命中、淘汰次数
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "item.local");
+        return cache;
+    }
+
+    @Bean
+    public RedisBloomFilter itemBloomFilter(StringRedisTemplate stringRedisTemplate) {
+        return new RedisBloomFilter(stringRedisTemplate, CacheConstants.ITEM_BLOOM_FILTER_KEY,
+                CacheConstants.ITEM_BLOOM_EXPECTED_INSERTIONS, CacheConstants.ITEM_BLOOM_FPP);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService itemCacheRebuildExecutor() {
+        // 重建任务由分布式锁去重，队列满时拒绝，下一次读到过期数据时会再次触发
+        return new ThreadPoolExecutor(2, 4, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1000));
+    }
+
+    @Bean
+    public RedisMessageListenerContainer itemCacheListenerContainer(
+            RedisConnectionFactory factory, ItemCacheInvalidateListener listener) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        container.addMessageListener(listener, new ChannelTopic(CacheConstants.ITEM_CACHE_INVALIDATE_CHANNEL));
+        return container;
+    }
+}
@@ -0,0 +1,29 @@
+package com.hmall.item.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 商品缓存配置，可在Nacos中修改，修改后自动重新绑定
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hm.item.cache")
+public class ItemCacheProperties {
+    /**
+     * 采用逻辑过期的热点商品id，为空则不开启
+     */
+    private Set<Long> hotIds = new HashSet<>();
+    /**
+     * 热点商品的逻辑过期时间（秒）
+     */
+    private Long logicalExpireSeconds = 60L;
+
+    public boolean isHotItem(Long id) {
+        return hotIds.contains(id);
+    }
+}
@@ -0,0 +1,96 @@
+package com.hmall.item.config;
+
+import com.hmall.item.constants.MQConstants;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import java.util.Date;
+
+/**
+ * 批量写入ES时使用的消息监听容器和队列
+ * 队列以item.sync.error.direct为死信交换机，使用新的队列名，已存在的item.sync.queue、item.sync.batch.queue无需删除重建
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "hm.item.sync", name = "bulk-enabled", havingValue = "true")
+public class ItemEsBulkConfig {
+
+    private final RabbitTemplate rabbitTemplate;
+
+    public ItemEsBulkConfig(RabbitTemplate rabbitTemplate) {
+        this.rabbitTemplate = rabbitTemplate;
+    }
+
+    @PostConstruct
+    public void enableMessageTimestamp() {
+        // 发送时记录时间戳，用于统计从发送到写入ES的延迟
+        rabbitTemplate.addBeforePublishPostProcessors(message -> {
+            if (message.getMessageProperties().getTimestamp() == null) {
+                message.getMessageProperties().setTimestamp(new Date());
+            }
+            return message;
+        });
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory itemBulkListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            ItemSyncProperties properties) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(properties.getBulkSize());
+        factory.setReceiveTimeout(properties.getBulkReceiveTimeoutMillis());
+        factory.setPrefetchCount(properties.getBulkSize());
+        // 只确认成功写入ES的消息
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        return factory;
+    }
+
+    @Bean
+    public DirectExchange itemSyncExchange() {
+        return new DirectExchange(MQConstants.ITEM_SYNC_EXCHANGE_NAME);
+    }
+
+    @Bean
+    public Queue itemSyncBulkQueue() {
+        return deadLetteredQueue(MQConstants.ITEM_SYNC_BULK_QUEUE_NAME);
+    }
+
+    @Bean
+    public Queue itemSyncBatchBulkQueue() {
+        return deadLetteredQueue(MQConstants.ITEM_SYNC_BATCH_BULK_QUEUE_NAME);
+    }
+
+    @Bean
+    public Binding itemSyncBulkBinding(DirectExchange itemSyncExchange, Queue itemSyncBulkQueue) {
+        return BindingBuilder.bind(itemSyncBulkQueue).to(itemSyncExchange).with(MQConstants.ITEM_SYNC_UPDATE_KEY);
+    }
+
+    @Bean
+    public Binding itemSyncBatchBulkBinding(DirectExchange itemSyncExchange, Queue itemSyncBatchBulkQueue) {
+        return BindingBuilder.bind(itemSyncBatchBulkQueue).to(itemSyncExchange).with(MQConstants.ITEM_SYNC_BATCH_KEY);
+    }
+
+    /**
+     * 拒绝且不重新入队的消息经死信交换机进入item.sync.error.queue
+     */
+    private static Queue deadLetteredQueue(String name) {
+        return QueueBuilder.durable(name)
+                .deadLetterExchange(MQConstants.ITEM_SYNC_ERROR_EXCHANGE_NAME)
+                .deadLetterRoutingKey(MQConstants.ITEM_SYNC_ERROR_KEY)
+                .build();
+    }
+}
@@ -0,0 +1,41 @@
+package com.hmall.item.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 商品索引全量重建配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hm.item.reindex")
+public class ItemReindexProperties {
+    /**
+     * 每次从数据库读取、每个bulk请求写入的商品数
+     */
+    private Integer batchSize = 1000;
+    /**
+     * 并发写入ES的线程数
+     */
+    private Integer workers = 4;
+    /**
+     * 最多同时进行的bulk请求数，超过后暂停读取数据库
+     */
+    private Integer maxInFlight = 8;
+    /**
+     * 单个bulk请求失败后的重试次数
+     */
+    private Integer maxRetries = 3;
+    /**
+     * 重建完成后恢复的副本数
+     */
+    private Integer replicas = 1;
+    /**
+     * 允许触发重建的用户id，为空时任何人都不能触发
+     */
+    private List<Long> operatorIds = new ArrayList<>();
+}
@@ -0,0 +1,31 @@
+package com.hmall.item.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 商品库存预扣配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hm.item.stock")
+public class ItemStockProperties {
+    /**
+     * 是否在Redis中预扣库存，开启后下单只扣Redis计数器，数据库由后台批量落库
+     * 关闭期间数据库库存的变化不会同步到计数器，重新开启前需删除item:stock:*
+     */
+    private Boolean reserveEnabled = false;
+    /**
+     * 扣减流水落库间隔（毫秒），修改后需重启
+     */
+    private Long flushIntervalMillis = 200L;
+    /**
+     * 每次落库最多处理的流水条数
+     */
+    private Integer flushBatchSize = 1000;
+    /**
+     * 一批流水取出后多久未确认落库，视为处理它的节点已宕机，由其它节点重新落库（毫秒）
+     */
+    private Long flushProcessingTimeoutMillis = 60000L;
+}
@@ -0,0 +1,32 @@
+package com.hmall.item.config;
+
+import com.hmall.item.constants.MQConstants;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 商品同步失败的消息进入item.sync.error.queue，由人工排查后重新投递
+ * 批量写入ES时，队列中被拒绝的消息经死信交换机进入该队列，部分商品失败也直接发送到该交换机
+ */
+@Configuration
+public class ItemSyncMqConfig {
+
+    @Bean
+    public DirectExchange itemSyncErrorExchange() {
+        return new DirectExchange(MQConstants.ITEM_SYNC_ERROR_EXCHANGE_NAME);
+    }
+
+    @Bean
+    public Queue itemSyncErrorQueue() {
+        return new Queue(MQConstants.ITEM_SYNC_ERROR_QUEUE_NAME);
+    }
+
+    @Bean
+    public Binding itemSyncErrorBinding(DirectExchange itemSyncErrorExchange, Queue itemSyncErrorQueue) {
+        return BindingBuilder.bind(itemSyncErrorQueue).to(itemSyncErrorExchange).with(MQConstants.ITEM_SYNC_ERROR_KEY);
+    }
+}
@@ -0,0 +1,38 @@
+package com.hmall.item.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 商品ES同步配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hm.item.sync")
+public class ItemSyncProperties {
+    /**
+     * 库存变更合并窗口（毫秒），窗口内同一商品的多次变更只同步一次，修改后需重启
+     */
+    private Long windowMillis = 500L;
+    /**
+     * 每条批量同步消息最多包含的商品数
+     */
+    private Integer batchSize = 200;
+    /**
+     * 是否批量消费同步消息，合并为一次bulk请求写入ES，修改后需重启
+     */
+    private Boolean bulkEnabled = false;
+    /**
+     * 每次bulk最多消费的消息数
+     */
+    private Integer bulkSize = 500;
+    /**
+     * 凑批时等待下一条消息的最长时间（毫秒）
+     */
+    private Long bulkReceiveTimeoutMillis = 200L;
+    /**
+     * bulk中单个商品写入失败后的重试次数，仍失败的商品发送到item.sync.error.queue
+     */
+    private Integer bulkMaxRetries = 3;
+}
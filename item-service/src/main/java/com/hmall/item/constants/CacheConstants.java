@@ -11,14 +11,9 @@ public class CacheConstants {
      * 格式: item:id:{商品ID}
      */
     public static final String ITEM_CACHE_KEY_PREFIX = "item:id:";
-    /**
-     * 批量商品缓存key前缀
-     * 格式: item:batch:{商品ID列表，逗号分隔}
-     */
-    public static final String ITEM_BATCH_CACHE_KEY_PREFIX = "item:batch:";
     /**
      * 商品分页缓存key前缀
-     * 格式: item:page:{页码}:{页大小}:{排序字段}:{排序方向}
+     * 格式: item:page:{版本号}:{页码}:{页大小}:{排序字段}:{排序方向}
      */
     public static final String ITEM_PAGE_CACHE_KEY_PREFIX = "item:page:";
     // ==================== 分布式锁相关 ====================
@@ -28,41 +23,117 @@ public class CacheConstants {
      */
     public static final String ITEM_LOCK_KEY_PREFIX = "lock:item:id:";
     /**
-     * 批量商品查询分布式锁key前缀
-     * 格式: lock:item:batch:{商品ID列表，逗号分隔}
+     * 热点商品逻辑过期后重建缓存的分布式锁key前缀
+     * 格式: lock:item:rebuild:{商品ID}
+     */
+    public static final String ITEM_REBUILD_LOCK_KEY_PREFIX = "lock:item:rebuild:";
+    /**
+     * 重建期间商品又被修改的标记，持有锁的线程结束后看到标记会再重建一次
+     * 格式: item:rebuild:pending:{商品ID}
+     */
+    public static final String ITEM_REBUILD_PENDING_KEY_PREFIX = "item:rebuild:pending:";
+    // ==================== 缓存版本相关 ====================
+    /**
+     * 商品分页缓存的版本号key
+     * 商品变更时INCR该版本号，旧版本的key不再被读取，依靠TTL自然过期
+     */
+    public static final String ITEM_CACHE_VERSION_KEY = "item:cache:version";
+    // ==================== 本地缓存相关 ====================
+    /**
+     * 商品缓存失效广播频道
+     * 消息内容: {商品ID}，各节点收到后清理本地(L1)缓存
+     */
+    public static final String ITEM_CACHE_INVALIDATE_CHANNEL = "item:cache:invalidate";
+    /**
+     * 本地商品缓存最大条目数
+     */
+    public static final long ITEM_LOCAL_CACHE_MAX_SIZE = 10000;
+    // ==================== 布隆过滤器相关 ====================
+    /**
+     * 商品id布隆过滤器的Redis位图key，各节点共享
+     */
+    public static final String ITEM_BLOOM_FILTER_KEY = "item:bloom:ids";
+    /**
+     * 初始化布隆过滤器的分布式锁key，保证只有一个节点扫描商品表
+     */
+    public static final String ITEM_BLOOM_INIT_LOCK_KEY = "lock:item:bloom:init";
+    /**
+     * 布隆过滤器预计商品数量，按当前约100万商品预留一倍余量
+     */
+    public static final long ITEM_BLOOM_EXPECTED_INSERTIONS = 2_000_000;
+    /**
+     * 布隆过滤器在预计商品数量下的误判率
+     */
+    public static final double ITEM_BLOOM_FPP = 0.01;
+    // ==================== 库存预扣相关 ====================
+    /**
+     * 商品库存计数器key前缀，不设过期时间
+     * 格式: item:stock:{商品ID}
+     */
+    public static final String ITEM_STOCK_KEY_PREFIX = "item:stock:";
+    /**
+     * 已预扣、待落库的库存扣减流水（List）
+     * 元素格式: {商品ID}:{数量}
+     */
+    public static final String ITEM_STOCK_JOURNAL_KEY = "item:stock:journal";
+    /**
+     * 正在落库的一批流水（List），落库提交后才删除
+     * 格式: item:stock:journal:processing:{批次ID}
      */
-    public static final String ITEM_BATCH_LOCK_KEY_PREFIX = "lock:item:batch:";
-    // ==================== 缓存清理模式 ====================
+    public static final String ITEM_STOCK_PROCESSING_KEY_PREFIX = "item:stock:journal:processing:";
     /**
-     * 商品分页缓存清理模式
-     * 用于清理所有分页缓存
+     * 正在落库的批次（Hash），字段为批次ID，值为认领时间（毫秒），超时未确认的批次由其它节点重新落库
      */
-    public static final String ITEM_PAGE_CACHE_PATTERN = "item:page:*";
+    public static final String ITEM_STOCK_BATCHES_KEY = "item:stock:journal:batches";
     /**
-     * 商品批量缓存清理模式
-     * 用于清理所有批量查询缓存
+     * 每个商品已预扣、尚未落库的数量（Hash），包括TCC预留、流水和正在落库的批次
+     * 重新加载计数器时从数据库库存中扣除
      */
-    public static final String ITEM_BATCH_CACHE_PATTERN = "item:batch:*";
+    public static final String ITEM_STOCK_UNFLUSHED_KEY = "item:stock:unflushed";
+    /**
+     * 全局事务中的TCC预留记录（List），提交后移入扣减流水，回滚后归还计数器
+     * 格式: item:stock:reservation:{XID}:{分支ID}
+     */
+    public static final String ITEM_STOCK_RESERVATION_KEY_PREFIX = "item:stock:reservation:";
+    /**
+     * TCC分支已提交或已回滚的标记，用于幂等和防悬挂
+     * 格式: item:stock:reservation:done:{XID}:{分支ID}
+     */
+    public static final String ITEM_STOCK_RESERVATION_DONE_KEY_PREFIX = "item:stock:reservation:done:";
     // ==================== 缓存过期时间 ====================
     /**
      * 单个商品缓存过期时间（分钟）
      */
     public static final long ITEM_CACHE_EXPIRE_MINUTES = 30;
     /**
-     * 商品分页缓存过期时间（分钟）
+     * 本地商品缓存过期时间（秒）
+     * 兜底失效广播丢失的情况，不宜过长
      */
-    public static final long ITEM_PAGE_CACHE_EXPIRE_MINUTES = 30;
+    public static final long ITEM_LOCAL_CACHE_EXPIRE_SECONDS = 60;
     /**
-     * 商品批量缓存过期时间（分钟）
+     * 热点商品缓存的物理过期时间（小时）
+     * 热点商品依靠逻辑过期时间刷新，物理过期只用于清理不再热点的商品
      */
-    public static final long ITEM_BATCH_CACHE_EXPIRE_MINUTES = 30;
+    public static final long ITEM_HOT_CACHE_EXPIRE_HOURS = 24;
+    /**
+     * 商品分页缓存过期时间（分钟）
+     */
+    public static final long ITEM_PAGE_CACHE_EXPIRE_MINUTES = 30;
     /**
      * 空值缓存过期时间（分钟）
      * 用于防止缓存穿透
      */
     public static final long NULL_CACHE_EXPIRE_MINUTES = 5;
     /**
-     * 分布式锁过期时间（秒）
+     * 重建缓存的分布式锁过期时间（秒）
+     */
+    public static final long REBUILD_LOCK_EXPIRE_SECONDS = 10;
+    /**
+     * TCC预留记录和结束标记的过期时间（小时），远大于全局事务的超时时间
+     */
+    public static final long STOCK_RESERVATION_EXPIRE_HOURS = 24;
+    /**
+     * 初始化布隆过滤器的分布式锁过期时间（分钟）
      */
-    public static final long LOCK_EXPIRE_SECONDS = 10;
+    public static final long BLOOM_INIT_LOCK_EXPIRE_MINUTES = 10;
 } 
\ No newline at end of file
@@ -3,4 +3,16 @@ package com.hmall.item.constants;
 public class ElasticConstants {
     //商品索引库名
     public final static String ITEM_INDEX_NAME = "items";
+    //重建索引时版本化索引的前缀，格式: items_{yyyyMMddHHmmss}，ITEM_INDEX_NAME作为别名指向当前版本
+    public final static String ITEM_VERSIONED_INDEX_PREFIX = "items_";
+    //商品索引的mapping
+    public final static String ITEM_INDEX_MAPPING_LOCATION = "es/items-mapping.json";
+    //重建索引的检查点（Redis Hash）
+    public final static String ITEM_REINDEX_CHECKPOINT_KEY = "item:reindex:checkpoint";
+    //被物理删除的商品（Redis ZSet，score为删除时间），重建结束前从新索引中补删
+    public final static String ITEM_REINDEX_DELETED_KEY = "item:reindex:deleted";
+    //重建索引的分布式锁，保证同一时间只有一个节点在重建
+    public final static String ITEM_REINDEX_LOCK_KEY = "lock:item:reindex";
+    //商品索引代数，每次写入索引后递增，search-service据此淘汰结果缓存
+    public final static String ITEM_INDEX_GENERATION_KEY = "search:index:generation";
 }
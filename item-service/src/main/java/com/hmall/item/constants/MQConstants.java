@@ -7,4 +7,18 @@ public class MQConstants {
     public static final String ITEM_SYNC_QUEUE_NAME = "item.sync.queue";
     //商品的RoutingKey
     public static final String ITEM_SYNC_UPDATE_KEY = "item.sync.update";
+    //合并后批量同步的商品队列名，消息体为List<ItemMQDTO>
+    public static final String ITEM_SYNC_BATCH_QUEUE_NAME = "item.sync.batch.queue";
+    //合并后批量同步的RoutingKey
+    public static final String ITEM_SYNC_BATCH_KEY = "item.sync.batch";
+    //批量写入ES时使用的商品队列名，以同步失败的交换机为死信交换机，与item.sync.queue绑定相同的RoutingKey
+    public static final String ITEM_SYNC_BULK_QUEUE_NAME = "item.sync.bulk.queue";
+    //批量写入ES时使用的合并同步队列名，以同步失败的交换机为死信交换机，与item.sync.batch.queue绑定相同的RoutingKey
+    public static final String ITEM_SYNC_BATCH_BULK_QUEUE_NAME = "item.sync.batch.bulk.queue";
+    //同步失败的商品交换机，两个批量写入队列的死信交换机
+    public static final String ITEM_SYNC_ERROR_EXCHANGE_NAME = "item.sync.error.direct";
+    //同步失败的商品队列名，消息体为List<ItemMQDTO>，或无法解析的原始消息
+    public static final String ITEM_SYNC_ERROR_QUEUE_NAME = "item.sync.error.queue";
+    //同步失败的RoutingKey
+    public static final String ITEM_SYNC_ERROR_KEY = "item.sync.error";
 }
@@ -6,8 +6,13 @@ import com.hmall.item.domain.dto.ItemDTO;
 import com.hmall.item.domain.dto.OrderDetailDTO;
 import com.hmall.common.domain.PageDTO;
 import com.hmall.common.domain.PageQuery;
+import com.hmall.common.exception.ForbiddenException;
+import com.hmall.common.exception.UnauthorizedException;
 import com.hmall.common.utils.BeanUtils;
+import com.hmall.common.utils.UserContext;
+import com.hmall.item.config.ItemReindexProperties;
 import com.hmall.item.domain.po.Item;
+import com.hmall.item.service.IItemIndexService;
 import com.hmall.item.service.IItemService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -16,6 +21,7 @@ import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @Api(tags = "商品管理相关接口")
 @RestController
@@ -24,7 +30,9 @@ import java.util.List;
 public class ItemController {
 
     private final IItemService itemService;
+    private final IItemIndexService itemIndexService;
     private final RabbitTemplate rabbitTemplate;
+    private final ItemReindexProperties itemReindexProperties;
 
     @ApiOperation("分页查询商品")
     @GetMapping("/page")
@@ -88,4 +96,31 @@ public class ItemController {
     public void restoreStock(@RequestBody List<OrderDetailDTO> items){
         itemService.restoreStock(items);
     }
+
+    @ApiOperation("全量重建商品索引")
+    @PostMapping("/admin/index/rebuild")
+    public String rebuildIndex() {
+        checkReindexOperator();
+        return itemIndexService.rebuild();
+    }
+
+    @ApiOperation("查询商品索引重建进度")
+    @GetMapping("/admin/index/rebuild")
+    public Map<Object, Object> rebuildIndexStatus() {
+        checkReindexOperator();
+        return itemIndexService.rebuildStatus();
+    }
+
+    /**
+     * /items/admin/**由网关要求登录，这里再校验当前用户是否在运维名单中
+     */
+    private void checkReindexOperator() {
+        Long userId = UserContext.getUser();
+        if (userId == null) {
+            throw new UnauthorizedException("未登录");
+        }
+        if (!itemReindexProperties.getOperatorIds().contains(userId)) {
+            throw new ForbiddenException("无权操作商品索引");
+        }
+    }
 }
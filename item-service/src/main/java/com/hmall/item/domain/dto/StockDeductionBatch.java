@@ -0,0 +1,26 @@
+package com.hmall.item.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 一批待落库的库存扣减流水
+ */
+@Data
+@AllArgsConstructor
+public class StockDeductionBatch {
+    /**
+     * 批次id，落库提交后凭此确认
+     */
+    private String id;
+    /**
+     * 取出的流水条数
+     */
+    private int entries;
+    /**
+     * 按商品合并后的扣减数量
+     */
+    private List<OrderDetailDTO> deductions;
+}
@@ -1,10 +1,15 @@
 package com.hmall.item.domain.po;
 
+import cn.hutool.core.util.StrUtil;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 @Data
 @ApiModel(description = "索引库实体")
@@ -39,4 +44,34 @@ public class ItemDoc{
 
     @ApiModelProperty("更新时间")
     private LocalDateTime updateTime;
+
+    @ApiModelProperty("搜索框自动补全，由名称、品牌、类目生成")
+    private Suggestion suggestion;
+
+    /**
+     * 根据名称、品牌、类目生成自动补全的输入，按销量加权
+     * 修改时只传了部分字段的商品不生成，避免覆盖索引库中完整的补全输入
+     */
+    public ItemDoc fillSuggestion() {
+        if (StrUtil.isBlank(name)) {
+            return this;
+        }
+        List<String> input = new ArrayList<>(3);
+        input.add(name.trim());
+        for (String s : new String[]{brand, category}) {
+            if (StrUtil.isNotBlank(s) && !input.contains(s.trim())) {
+                input.add(s.trim());
+            }
+        }
+        suggestion = new Suggestion(input, sold == null ? 0 : Math.max(sold, 0));
+        return this;
+    }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Suggestion {
+        private List<String> input;
+        private Integer weight;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,266 @@
+package com.hmall.item.listener;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmall.common.utils.BeanUtils;
+import com.hmall.item.config.ItemSyncProperties;
+import com.hmall.item.constants.ElasticConstants;
+import com.hmall.item.constants.MQConstants;
+import com.hmall.item.domain.dto.ItemDTO;
+import com.hmall.item.domain.dto.ItemMQDTO;
+import com.hmall.item.domain.po.ItemDoc;
+import com.hmall.item.enums.ItemOperate;
+import com.hmall.item.service.IItemIndexService;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量消费商品同步消息，开启hm.item.sync.bulk-enabled后替代ItemListener
+ * 一批消息中同一商品的多次操作合并为一次，通过一个BulkRequest写入ES；
+ * 重试后仍失败的商品单独发送到错误队列，其余消息正常确认，无法解析的消息经死信交换机进入错误队列
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "hm.item.sync", name = "bulk-enabled", havingValue = "true")
+public class ItemBulkListener {
+
+    private final RestHighLevelClient client;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final ItemSyncProperties itemSyncProperties;
+    private final IItemIndexService itemIndexService;
+    private final RabbitTemplate rabbitTemplate;
+
+    @RabbitListener(queues = {MQConstants.ITEM_SYNC_BULK_QUEUE_NAME, MQConstants.ITEM_SYNC_BATCH_BULK_QUEUE_NAME},
+            containerFactory = "itemBulkListenerContainerFactory")
+    public void listenItemMessages(List<Message> messages, Channel channel) throws IOException {
+        Set<Long> tags = new LinkedHashSet<>(messages.size());
+        Set<Long> failedTags = new HashSet<>();
+        try {
+            // 1.按商品id合并操作，保持消息顺序
+            Map<Long, ItemOperation> operations = new LinkedHashMap<>();
+            int total = 0;
+            // 批量同步消息只来自库存变更，不影响搜索列表和聚合，只有单条消息中的变更才递增索引代数
+            boolean listingChanged = false;
+            for (Message message : messages) {
+                long tag = message.getMessageProperties().getDeliveryTag();
+                tags.add(tag);
+                List<ItemMQDTO> itemMQDTOs;
+                try {
+                    itemMQDTOs = parse(message);
+                } catch (IOException e) {
+                    log.error("无法解析的商品同步消息，已丢弃", e);
+                    failedTags.add(tag);
+                    continue;
+                }
+                recordLag(message);
+                boolean stockOnly = isStockSync(message);
+                for (ItemMQDTO itemMQDTO : itemMQDTOs) {
+                    Long id = itemMQDTO.getItemDTO() == null ? null : itemMQDTO.getItemDTO().getId();
+                    if (id == null) {
+                        continue;
+                    }
+                    total++;
+                    listingChanged |= !stockOnly;
+                    ItemOperation operation = operations.get(id);
+                    if (operation == null) {
+                        operations.put(id, new ItemOperation(itemMQDTO, tag));
+                    } else {
+                        operation.merge(itemMQDTO, tag);
+                    }
+                }
+            }
+            meterRegistry.counter("item.es.bulk.collapsed").increment(total - operations.size());
+            // 2.一次bulk写入，单个商品失败时重试
+            if (!operations.isEmpty()) {
+                List<ItemOperation> failed = bulkWithRetry(new ArrayList<>(operations.values()));
+                if (!failed.isEmpty() && !sendToErrorQueue(failed)) {
+                    for (ItemOperation operation : failed) {
+                        failedTags.addAll(operation.tags);
+                    }
+                }
+                if (listingChanged) {
+                    itemIndexService.markIndexChanged();
+                }
+            }
+        } catch (InterruptedException e) {
+            // 服务关闭，全部重新入队由其它节点处理
+            Thread.currentThread().interrupt();
+            log.warn("批量写入ES被中断，消息重新入队，消息数:{}", messages.size());
+            for (Long tag : tags) {
+                channel.basicNack(tag, false, true);
+            }
+            return;
+        } catch (Exception e) {
+            log.error("批量写入ES失败，消息数:{}", messages.size(), e);
+            failedTags.addAll(tags);
+        }
+        // 3.确认其余消息，失败的拒绝且不重新入队，经死信交换机进入item.sync.error.queue，避免反复失败阻塞队列
+        for (Long tag : tags) {
+            if (failedTags.contains(tag)) {
+                channel.basicNack(tag, false, false);
+            } else {
+                channel.basicAck(tag, false);
+            }
+        }
+    }
+
+    /**
+     * @return 重试后仍失败的操作
+     */
+    private List<ItemOperation> bulkWithRetry(List<ItemOperation> pending) throws InterruptedException {
+        for (int attempt = 0; !pending.isEmpty(); attempt++) {
+            BulkRequest request = new BulkRequest();
+            for (ItemOperation operation : pending) {
+                request.add(operation.toRequest());
+            }
+            List<ItemOperation> failed = new ArrayList<>();
+            long begin = System.nanoTime();
+            try {
+                BulkResponse response = client.bulk(request, RequestOptions.DEFAULT);
+                BulkItemResponse[] items = response.getItems();
+                for (int i = 0; i < items.length; i++) {
+                    if (!items[i].isFailed()) {
+                        continue;
+                    }
+                    if (items[i].getFailure().getStatus() == RestStatus.NOT_FOUND) {
+                        // 更新或删除的文档不存在，重试也不会成功
+                        log.info("索引库中不存在商品{}:{}", items[i].getId(), items[i].getFailureMessage());
+                        continue;
+                    }
+                    log.warn("商品{}写入索引库失败:{}", items[i].getId(), items[i].getFailureMessage());
+                    failed.add(pending.get(i));
+                }
+            } catch (IOException e) {
+                log.warn("bulk请求失败，商品数:{}", pending.size(), e);
+                failed = pending;
+            }
+            meterRegistry.timer("item.es.bulk").record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+            meterRegistry.counter("item.es.indexed", "result", "success").increment(pending.size() - failed.size());
+            if (failed.isEmpty() || attempt >= itemSyncProperties.getBulkMaxRetries()) {
+                meterRegistry.counter("item.es.indexed", "result", "failure").increment(failed.size());
+                return failed;
+            }
+            TimeUnit.MILLISECONDS.sleep(100L << attempt);
+            pending = failed;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 重试后仍失败的商品发送到错误队列，消息中其它商品已经写入，不因一个商品拒绝整条批量消息
+     *
+     * @return 发送失败时返回false，由调用方拒绝这些商品所在的消息
+     */
+    private boolean sendToErrorQueue(List<ItemOperation> failed) {
+        List<ItemMQDTO> items = new ArrayList<>(failed.size());
+        for (ItemOperation operation : failed) {
+            items.add(new ItemMQDTO(operation.operate, operation.item));
+        }
+        try {
+            rabbitTemplate.convertAndSend(MQConstants.ITEM_SYNC_ERROR_EXCHANGE_NAME, MQConstants.ITEM_SYNC_ERROR_KEY, items);
+            log.error("{}个商品写入索引库失败，已发送到{}", items.size(), MQConstants.ITEM_SYNC_ERROR_QUEUE_NAME);
+            return true;
+        } catch (Exception e) {
+            log.error("发送写入失败的商品到错误队列失败，商品数:{}", items.size(), e);
+            return false;
+        }
+    }
+
+    private static boolean isStockSync(Message message) {
+        return MQConstants.ITEM_SYNC_BATCH_KEY.equals(message.getMessageProperties().getReceivedRoutingKey());
+    }
+
+    private List<ItemMQDTO> parse(Message message) throws IOException {
+        if (isStockSync(message)) {
+            return objectMapper.readValue(message.getBody(), new TypeReference<List<ItemMQDTO>>() {});
+        }
+        return Collections.singletonList(objectMapper.readValue(message.getBody(), ItemMQDTO.class));
+    }
+
+    private void recordLag(Message message) {
+        if (message.getMessageProperties().getTimestamp() != null) {
+            long lag = System.currentTimeMillis() - message.getMessageProperties().getTimestamp().getTime();
+            meterRegistry.timer("item.es.lag").record(Math.max(0, lag), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 一个商品在本批中合并后的操作
+     */
+    private static class ItemOperation {
+        private ItemOperate operate;
+        private ItemDTO item;
+        private final List<Long> tags = new ArrayList<>(1);
+
+        ItemOperation(ItemMQDTO itemMQDTO, long tag) {
+            this.operate = itemMQDTO.getOperate();
+            this.item = itemMQDTO.getItemDTO();
+            this.tags.add(tag);
+        }
+
+        void merge(ItemMQDTO next, long tag) {
+            tags.add(tag);
+            if (next.getOperate() == ItemOperate.UPDATE && operate != ItemOperate.REMOVE) {
+                // 新增或修改之后的修改：合并非空字段，操作类型不变
+                ItemDTO merged = BeanUtils.copyBean(item, ItemDTO.class);
+                BeanUtil.copyProperties(next.getItemDTO(), merged, CopyOptions.create().setIgnoreNullValue(true));
+                item = merged;
+                return;
+            }
+            // 删除、新增总是以最后一次为准
+            operate = next.getOperate();
+            item = next.getItemDTO();
+        }
+
+        DocWriteRequest<?> toRequest() {
+            String id = item.getId().toString();
+            switch (operate) {
+                case ADD:
+                    return new IndexRequest(ElasticConstants.ITEM_INDEX_NAME).id(id)
+                            .source(JSONUtil.toJsonStr(BeanUtils.copyProperties(item, ItemDoc.class).fillSuggestion()), XContentType.JSON);
+                case REMOVE:
+                    return new DeleteRequest(ElasticConstants.ITEM_INDEX_NAME).id(id);
+                default:
+                    ItemDoc itemDoc = BeanUtils.copyProperties(item, ItemDoc.class).fillSuggestion();
+                    itemDoc.setUpdateTime(LocalDateTime.now());
+                    return new UpdateRequest(ElasticConstants.ITEM_INDEX_NAME, id)
+                            .doc(JSONUtil.toJsonStr(itemDoc), XContentType.JSON);
+            }
+        }
+    }
+}
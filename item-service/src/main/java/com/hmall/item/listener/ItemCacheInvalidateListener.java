@@ -0,0 +1,38 @@
+package com.hmall.item.listener;
+
+import cn.hutool.core.util.NumberUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.hmall.common.utils.SingleFlightLoader;
+import com.hmall.item.constants.CacheConstants;
+import com.hmall.item.domain.po.Item;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 监听商品缓存失效广播，清理本节点的本地缓存和回源降级用的旧值
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ItemCacheInvalidateListener implements MessageListener {
+
+    private final Cache<Long, Item> itemLocalCache;
+    private final SingleFlightLoader singleFlightLoader;
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (!NumberUtil.isLong(body)) {
+            log.warn("无法识别的商品缓存失效消息:{}", body);
+            return;
+        }
+        itemLocalCache.invalidate(Long.valueOf(body));
+        // 回源等待超时时不再返回修改前的旧值
+        singleFlightLoader.invalidate(CacheConstants.ITEM_CACHE_KEY_PREFIX + body);
+    }
+}
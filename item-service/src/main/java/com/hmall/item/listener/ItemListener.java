@@ -7,6 +7,7 @@ import com.hmall.item.constants.MQConstants;
 import com.hmall.item.domain.dto.ItemDTO;
 import com.hmall.item.domain.dto.ItemMQDTO;
 import com.hmall.item.domain.po.ItemDoc;
+import com.hmall.item.service.IItemIndexService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.elasticsearch.action.delete.DeleteRequest;
@@ -19,16 +20,20 @@ import org.springframework.amqp.rabbit.annotation.Exchange;
 import org.springframework.amqp.rabbit.annotation.Queue;
 import org.springframework.amqp.rabbit.annotation.QueueBinding;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Component
 @Slf4j
 @RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "hm.item.sync", name = "bulk-enabled", havingValue = "false", matchIfMissing = true)
 public class ItemListener {
     private final RestHighLevelClient client;
+    private final IItemIndexService itemIndexService;
 
     @RabbitListener(bindings = @QueueBinding(
             value = @Queue(name = MQConstants.ITEM_SYNC_QUEUE_NAME),
@@ -36,6 +41,26 @@ public class ItemListener {
             key = MQConstants.ITEM_SYNC_UPDATE_KEY
     ))
     public void listenerItemMessage(ItemMQDTO itemMQDTO) {
+        handle(itemMQDTO);
+        itemIndexService.markIndexChanged();
+    }
+
+    /**
+     * 消费ItemSyncPublisher合并后的批量同步消息
+     * 批量同步只来自库存变更，库存不是列表字段也不影响聚合，不递增索引代数，搜索结果按TTL过期
+     */
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(name = MQConstants.ITEM_SYNC_BATCH_QUEUE_NAME),
+            exchange = @Exchange(name = MQConstants.ITEM_SYNC_EXCHANGE_NAME),
+            key = MQConstants.ITEM_SYNC_BATCH_KEY
+    ))
+    public void listenerItemBatchMessage(List<ItemMQDTO> itemMQDTOs) {
+        for (ItemMQDTO itemMQDTO : itemMQDTOs) {
+            handle(itemMQDTO);
+        }
+    }
+
+    private void handle(ItemMQDTO itemMQDTO) {
         if (itemMQDTO.getItemDTO().getId() == null) return;
         switch (itemMQDTO.getOperate()) {
             case ADD: //添加
@@ -66,7 +91,7 @@ public class ItemListener {
 
     private void updateItemByIndex(ItemDTO item) {
         UpdateRequest request = new UpdateRequest(ElasticConstants.ITEM_INDEX_NAME, item.getId().toString());
-        ItemDoc itemDoc = BeanUtils.copyProperties(item, ItemDoc.class);
+        ItemDoc itemDoc = BeanUtils.copyProperties(item, ItemDoc.class).fillSuggestion();
         itemDoc.setUpdateTime(LocalDateTime.now());//设置更新时间
         request.doc(JSONUtil.toJsonStr(itemDoc), XContentType.JSON);
         try {
@@ -84,7 +109,7 @@ public class ItemListener {
     private void addItemByIndex(ItemDTO item) {
         log.info("添加商品到索引库");
         // 将商品DTO对象转换为索引文档对象
-        ItemDoc itemDoc = BeanUtils.copyProperties(item, ItemDoc.class);
+        ItemDoc itemDoc = BeanUtils.copyProperties(item, ItemDoc.class).fillSuggestion();
         // 创建索引请求对象，指定索引名称和文档ID
         IndexRequest request = new IndexRequest(ElasticConstants.ITEM_INDEX_NAME).id(item.getId().toString());
         // 设置索引请求的源数据，将商品文档对象转换为JSON字符串
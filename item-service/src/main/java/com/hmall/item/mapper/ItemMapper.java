@@ -3,7 +3,12 @@ package com.hmall.item.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.hmall.item.domain.dto.OrderDetailDTO;
 import com.hmall.item.domain.po.Item;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
 /**
  * <p>
@@ -17,4 +22,16 @@ public interface ItemMapper extends BaseMapper<Item> {
 
     @Update("UPDATE item SET stock = stock - #{num} WHERE id = #{itemId}")
     void updateStock(OrderDetailDTO orderDetail);
+
+    @Update("UPDATE item SET stock = stock + #{num} WHERE id = #{itemId}")
+    void restoreStock(OrderDetailDTO orderDetail);
+
+    /**
+     * 流式扫描全部商品id，不会一次性把结果集加载到内存
+     * @param handler 逐行处理id
+     */
+    @Select("SELECT id FROM item")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(Long.class)
+    void scanAllIds(ResultHandler<Long> handler);
 }
@@ -0,0 +1,30 @@
+package com.hmall.item.service;
+
+import java.util.Map;
+
+/**
+ * 商品索引维护
+ */
+public interface IItemIndexService {
+
+    /**
+     * 后台全量重建商品索引，存在未完成的检查点时从检查点继续
+     * @return 正在写入的版本化索引名
+     */
+    String rebuild();
+
+    /**
+     * 查询重建进度
+     */
+    Map<Object, Object> rebuildStatus();
+
+    /**
+     * 记录被物理删除的商品，重建时从新索引中补删
+     */
+    void recordDeleted(Long id);
+
+    /**
+     * 索引内容发生变化，递增索引代数，使搜索服务的结果缓存失效
+     */
+    void markIndexChanged();
+}
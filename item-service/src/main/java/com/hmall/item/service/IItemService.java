@@ -22,6 +22,9 @@ public interface IItemService extends IService<Item> {
 
     void deductStock(List<OrderDetailDTO> items);
 
+    // 把Redis中已预扣的库存批量落库
+    void applyStockDeductions(List<OrderDetailDTO> deductions);
+
     List<ItemDTO> queryItemByIds(Collection<Long> ids);
 
     void restoreStock(List<OrderDetailDTO> items);
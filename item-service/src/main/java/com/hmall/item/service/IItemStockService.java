@@ -0,0 +1,67 @@
+package com.hmall.item.service;
+
+import com.hmall.item.domain.dto.OrderDetailDTO;
+import com.hmall.item.domain.dto.StockDeductionBatch;
+import io.seata.rm.tcc.api.BusinessActionContext;
+import io.seata.rm.tcc.api.LocalTCC;
+import io.seata.rm.tcc.api.TwoPhaseBusinessAction;
+
+import java.util.List;
+
+/**
+ * 基于Redis计数器的商品库存预扣
+ * 预扣在Seata全局事务中作为TCC分支，全局事务提交后才写入扣减流水，回滚时归还计数器
+ */
+@LocalTCC
+public interface IItemStockService {
+
+    /**
+     * 原子地预扣一个订单中所有商品的库存，任一商品不足则整单拒绝
+     * 在全局事务中时预扣的数量先记在预留记录中；不在全局事务中时context为null，直接写入扣减流水
+     */
+    @TwoPhaseBusinessAction(name = "itemStockReserve", commitMethod = "confirmReserve", rollbackMethod = "cancelReserve")
+    void reserve(BusinessActionContext context, List<OrderDetailDTO> items);
+
+    /**
+     * 全局事务提交：预留记录移入扣减流水，幂等
+     */
+    boolean confirmReserve(BusinessActionContext context);
+
+    /**
+     * 全局事务回滚：归还预留的库存，幂等；预留记录还不存在时阻止之后到达的预扣
+     */
+    boolean cancelReserve(BusinessActionContext context);
+
+    /**
+     * 归还库存到计数器
+     */
+    void release(List<OrderDetailDTO> items);
+
+    /**
+     * 取出一批待落库的扣减流水，同一商品的数量已合并
+     * 流水移入这一批的处理中列表，落库提交后调用{@link #ackDeductions(String)}删除
+     * @return 没有待落库的流水时返回null
+     */
+    StockDeductionBatch takeDeductions(int batchSize);
+
+    /**
+     * 认领一批超时未确认的流水，处理它的节点已宕机或重启
+     * @return 没有超时的批次时返回null
+     */
+    StockDeductionBatch reclaimDeductions(long timeoutMillis);
+
+    /**
+     * 一批流水已落库，删除处理中列表
+     */
+    void ackDeductions(String batchId);
+
+    /**
+     * 落库失败时把一批流水放回扣减流水，等待下次重试
+     */
+    void returnDeductions(String batchId);
+
+    /**
+     * 删除商品的库存计数器，下次预扣时按数据库库存减去未落库数量重新加载
+     */
+    void evict(Long itemId);
+}
@@ -0,0 +1,370 @@
+package com.hmall.item.service.impl;
+
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.hmall.common.exception.BizIllegalException;
+import com.hmall.common.utils.BeanUtils;
+import com.hmall.item.config.ItemReindexProperties;
+import com.hmall.item.constants.ElasticConstants;
+import com.hmall.item.domain.po.Item;
+import com.hmall.item.domain.po.ItemDoc;
+import com.hmall.item.mapper.ItemMapper;
+import com.hmall.item.service.IItemIndexService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * 商品索引维护服务实现类
+ * </p>
+ * 全量重建流程：
+ * 1. 创建新的版本化索引（关闭刷新、0副本）
+ * 2. 按id游标分批读取商品，在线程池中转换为ItemDoc并并发bulk写入，同时进行的bulk数受maxInFlight限制
+ * 3. 每批完成后把连续完成的最大id写入检查点，进程崩溃后从检查点继续
+ * 4. 恢复刷新和副本，补写重建期间修改、下架和删除的商品，原子地把别名切换到新索引
+ * 旧索引切换后只移除别名、不删除，确认新索引无误后由运维手动删除，需要时可把别名切回
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ItemIndexServiceImpl implements IItemIndexService {
+
+    private static final String FIELD_INDEX = "index";
+    private static final String FIELD_LAST_ID = "lastId";
+    private static final String FIELD_INDEXED = "indexed";
+    private static final String FIELD_START_TIME = "startTime";
+    private static final String FIELD_STATUS = "status";
+    private static final String STATUS_RUNNING = "RUNNING";
+    private static final String STATUS_FAILED = "FAILED";
+    private static final String STATUS_DONE = "DONE";
+    private static final long LOCK_EXPIRE_SECONDS = 60;
+    private static final long DELETED_RETAIN_MILLIS = TimeUnit.DAYS.toMillis(7);
+    private static final DateTimeFormatter VERSION_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private final ItemMapper itemMapper;
+    private final RestHighLevelClient client;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ItemReindexProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    public String rebuild() {
+        boolean lock = Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(
+                ElasticConstants.ITEM_REINDEX_LOCK_KEY, "1", LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS));
+        if (!lock) {
+            throw new BizIllegalException("商品索引正在重建中");
+        }
+        try {
+            Map<Object, Object> checkpoint = rebuildStatus();
+            String index = (String) checkpoint.get(FIELD_INDEX);
+            if (index == null || STATUS_DONE.equals(checkpoint.get(FIELD_STATUS)) || !indexExists(index)) {
+                // 没有可继续的检查点，创建新索引
+                index = ElasticConstants.ITEM_VERSIONED_INDEX_PREFIX + LocalDateTime.now().format(VERSION_FORMATTER);
+                createIndex(index);
+                Map<String, String> fields = new HashMap<>();
+                fields.put(FIELD_INDEX, index);
+                fields.put(FIELD_LAST_ID, "0");
+                fields.put(FIELD_INDEXED, "0");
+                fields.put(FIELD_START_TIME, LocalDateTime.now().toString());
+                stringRedisTemplate.delete(ElasticConstants.ITEM_REINDEX_CHECKPOINT_KEY);
+                stringRedisTemplate.opsForHash().putAll(ElasticConstants.ITEM_REINDEX_CHECKPOINT_KEY, fields);
+            } else {
+                log.info("从检查点继续重建商品索引:{}", checkpoint);
+            }
+            stringRedisTemplate.opsForHash().put(ElasticConstants.ITEM_REINDEX_CHECKPOINT_KEY, FIELD_STATUS, STATUS_RUNNING);
+            String target = index;
+            Thread thread = new Thread(() -> run(target), "item-reindex");
+            thread.setDaemon(true);
+            thread.start();
+            return index;
+        } catch (IOException | RuntimeException e) {
+            stringRedisTemplate.delete(ElasticConstants.ITEM_REINDEX_LOCK_KEY);
+            throw new BizIllegalException("启动商品索引重建失败", e);
+        }
+    }
+
+    @Override
+    public Map<Object, Object> rebuildStatus() {
+        return stringRedisTemplate.opsForHash().entries(ElasticConstants.ITEM_REINDEX_CHECKPOINT_KEY);
+    }
+
+    private void run(String index) {
+        long begin = System.currentTimeMillis();
+        Map<Object, Object> checkpoint = rebuildStatus();
+        LocalDateTime startTime = LocalDateTime.parse((String) checkpoint.get(FIELD_START_TIME));
+        long lastId = Long.parseLong((String) checkpoint.get(FIELD_LAST_ID));
+        ExecutorService workers = Executors.newFixedThreadPool(properties.getWorkers());
+        Semaphore inFlight = new Semaphore(properties.getMaxInFlight());
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Watermark watermark = new Watermark();
+        try {
+            long seq = 0;
+            while (failure.get() == null) {
+                List<Item> items = itemMapper.selectList(Wrappers.<Item>lambdaQuery()
+                        .eq(Item::getStatus, 1)
+                        .gt(Item::getId, lastId)
+                        .orderByAsc(Item::getId)
+                        .last("LIMIT " + properties.getBatchSize()));
+                if (items.isEmpty()) {
+                    break;
+                }
+                lastId = items.get(items.size() - 1).getId();
+                // 背压：正在进行的bulk达到上限时阻塞读取
+                inFlight.acquire();
+                renewLock();
+                long batchSeq = seq++;
+                long batchLastId = lastId;
+                watermark.begin(batchSeq, batchLastId);
+                workers.execute(() -> {
+                    try {
+                        bulkIndex(index, items);
+                        watermark.complete(batchSeq, items.size());
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            workers.shutdown();
+            while (!workers.awaitTermination(LOCK_EXPIRE_SECONDS / 2, TimeUnit.SECONDS)) {
+                renewLock();
+            }
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            // 恢复刷新和副本后再对外提供服务
+            UpdateSettingsRequest settings = new UpdateSettingsRequest(index).settings(Settings.builder()
+                    .put("index.refresh_interval", "1s")
+                    .put("index.number_of_replicas", properties.getReplicas()));
+            client.indices().putSettings(settings, RequestOptions.DEFAULT);
+            // 重建期间修改过的商品，切换前后各补写一次，覆盖切换前的空窗
+            catchUp(index, startTime);
+            client.indices().refresh(new RefreshRequest(index), RequestOptions.DEFAULT);
+            swapAlias(index);
+            catchUp(index, startTime);
+            markIndexChanged();
+            stringRedisTemplate.opsForHash().put(ElasticConstants.ITEM_REINDEX_CHECKPOINT_KEY, FIELD_STATUS, STATUS_DONE);
+            log.info("商品索引重建完成，索引:{}，商品数:{}，耗时:{}s", index,
+                    rebuildStatus().get(FIELD_INDEXED), (System.currentTimeMillis() - begin) / 1000);
+        } catch (Exception e) {
+            workers.shutdownNow();
+            stringRedisTemplate.opsForHash().put(ElasticConstants.ITEM_REINDEX_CHECKPOINT_KEY, FIELD_STATUS, STATUS_FAILED);
+            log.error("商品索引重建失败，可从检查点继续:{}", rebuildStatus(), e);
+        } finally {
+            stringRedisTemplate.delete(ElasticConstants.ITEM_REINDEX_LOCK_KEY);
+        }
+    }
+
+    @Override
+    public void recordDeleted(Long id) {
+        long now = System.currentTimeMillis();
+        try {
+            stringRedisTemplate.opsForZSet().add(ElasticConstants.ITEM_REINDEX_DELETED_KEY, id.toString(), now);
+            stringRedisTemplate.opsForZSet().removeRangeByScore(
+                    ElasticConstants.ITEM_REINDEX_DELETED_KEY, 0, now - DELETED_RETAIN_MILLIS);
+        } catch (Exception e) {
+            // 只影响正在进行的重建，删除消息仍会删除当前别名下的文档
+            log.warn("记录删除的商品失败，id:{}", id, e);
+        }
+    }
+
+    @Override
+    public void markIndexChanged() {
+        try {
+            stringRedisTemplate.opsForValue().increment(ElasticConstants.ITEM_INDEX_GENERATION_KEY);
+        } catch (Exception e) {
+            // 搜索服务的缓存仍会按TTL过期
+            log.warn("递增商品索引代数失败", e);
+        }
+    }
+
+    private void bulkIndex(String index, List<Item> items) throws IOException, InterruptedException {
+        List<DocWriteRequest<?>> requests = new ArrayList<>(items.size());
+        for (Item item : items) {
+            requests.add(toIndexRequest(index, item));
+        }
+        bulk(requests);
+    }
+
+    private IndexRequest toIndexRequest(String index, Item item) {
+        return new IndexRequest(index)
+                .id(item.getId().toString())
+                .source(JSONUtil.toJsonStr(BeanUtils.copyProperties(item, ItemDoc.class).fillSuggestion()), XContentType.JSON);
+    }
+
+    private void bulk(List<DocWriteRequest<?>> requests) throws IOException, InterruptedException {
+        List<DocWriteRequest<?>> pending = requests;
+        for (int attempt = 0; ; attempt++) {
+            BulkRequest request = new BulkRequest();
+            pending.forEach(request::add);
+            BulkResponse response = client.bulk(request, RequestOptions.DEFAULT);
+            if (!response.hasFailures()) {
+                meterRegistry.counter("item.reindex.docs").increment(requests.size());
+                return;
+            }
+            // 只重试失败的文档，写入和删除都是幂等的
+            List<DocWriteRequest<?>> failed = new ArrayList<>();
+            BulkItemResponse[] responses = response.getItems();
+            for (int i = 0; i < responses.length; i++) {
+                if (responses[i].isFailed()) {
+                    failed.add(pending.get(i));
+                }
+            }
+            if (attempt >= properties.getMaxRetries()) {
+                throw new IOException("bulk写入失败:" + response.buildFailureMessage());
+            }
+            TimeUnit.MILLISECONDS.sleep(200L << attempt);
+            pending = failed;
+        }
+    }
+
+    /**
+     * 补写startTime之后修改过的商品：正常的商品写入，下架、逻辑删除和物理删除的商品从新索引中删除
+     */
+    private void catchUp(String index, LocalDateTime startTime) throws IOException, InterruptedException {
+        long lastId = 0;
+        while (true) {
+            List<Item> items = itemMapper.selectList(Wrappers.<Item>lambdaQuery()
+                    .ge(Item::getUpdateTime, startTime)
+                    .gt(Item::getId, lastId)
+                    .orderByAsc(Item::getId)
+                    .last("LIMIT " + properties.getBatchSize()));
+            if (items.isEmpty()) {
+                break;
+            }
+            List<DocWriteRequest<?>> requests = new ArrayList<>(items.size());
+            for (Item item : items) {
+                requests.add(Integer.valueOf(1).equals(item.getStatus())
+                        ? toIndexRequest(index, item)
+                        : new DeleteRequest(index, item.getId().toString()));
+            }
+            bulk(requests);
+            lastId = items.get(items.size() - 1).getId();
+            renewLock();
+        }
+        long since = startTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        Set<String> deleted = stringRedisTemplate.opsForZSet()
+                .rangeByScore(ElasticConstants.ITEM_REINDEX_DELETED_KEY, since, Double.POSITIVE_INFINITY);
+        if (deleted == null || deleted.isEmpty()) {
+            return;
+        }
+        List<DocWriteRequest<?>> requests = new ArrayList<>(deleted.size());
+        for (String id : deleted) {
+            requests.add(new DeleteRequest(index, id));
+        }
+        bulk(requests);
+    }
+
+    private void renewLock() {
+        stringRedisTemplate.expire(ElasticConstants.ITEM_REINDEX_LOCK_KEY, LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 在一个别名请求中把ITEM_INDEX_NAME指向新索引，旧索引只移除别名，保留到运维确认后手动删除
+     */
+    private void swapAlias(String index) throws IOException {
+        IndicesAliasesRequest request = new IndicesAliasesRequest();
+        request.addAliasAction(AliasActions.add().index(index).alias(ElasticConstants.ITEM_INDEX_NAME));
+        Set<String> oldIndices = client.indices()
+                .getAlias(new GetAliasesRequest(ElasticConstants.ITEM_INDEX_NAME), RequestOptions.DEFAULT)
+                .getAliases().keySet();
+        if (!oldIndices.isEmpty()) {
+            for (String old : oldIndices) {
+                if (!old.equals(index)) {
+                    request.addAliasAction(AliasActions.remove().index(old).alias(ElasticConstants.ITEM_INDEX_NAME));
+                }
+            }
+        } else if (indexExists(ElasticConstants.ITEM_INDEX_NAME)) {
+            // 第一次重建时items还是一个普通索引，同名别名需要先删除它
+            request.addAliasAction(AliasActions.removeIndex().index(ElasticConstants.ITEM_INDEX_NAME));
+        }
+        client.indices().updateAliases(request, RequestOptions.DEFAULT);
+        log.info("商品索引别名{}已切换到{}，旧索引{}已保留，确认无误后请手动删除", ElasticConstants.ITEM_INDEX_NAME, index, oldIndices);
+    }
+
+    private void createIndex(String index) throws IOException {
+        CreateIndexRequest request = new CreateIndexRequest(index);
+        try (InputStream in = new ClassPathResource(ElasticConstants.ITEM_INDEX_MAPPING_LOCATION).getInputStream()) {
+            request.source(IoUtil.read(in, StandardCharsets.UTF_8), XContentType.JSON);
+        }
+        // 写入期间关闭刷新、不要副本，结束后恢复
+        request.settings(Settings.builder()
+                .put("index.refresh_interval", "-1")
+                .put("index.number_of_replicas", 0));
+        client.indices().create(request, RequestOptions.DEFAULT);
+    }
+
+    private boolean indexExists(String index) throws IOException {
+        return client.indices().exists(new GetIndexRequest(index), RequestOptions.DEFAULT);
+    }
+
+    /**
+     * 记录连续完成的最大id，bulk乱序完成时检查点不会越过还没完成的批次
+     */
+    private class Watermark {
+        private final TreeMap<Long, Long> running = new TreeMap<>();
+        private final Map<Long, Integer> done = new HashMap<>();
+
+        synchronized void begin(long seq, long lastId) {
+            running.put(seq, lastId);
+        }
+
+        synchronized void complete(long seq, int count) {
+            done.put(seq, count);
+            long committedId = -1;
+            long indexed = 0;
+            while (!running.isEmpty() && done.containsKey(running.firstKey())) {
+                Map.Entry<Long, Long> first = running.pollFirstEntry();
+                committedId = first.getValue();
+                indexed += done.remove(first.getKey());
+            }
+            if (committedId >= 0) {
+                stringRedisTemplate.opsForHash().put(ElasticConstants.ITEM_REINDEX_CHECKPOINT_KEY,
+                        FIELD_LAST_ID, String.valueOf(committedId));
+                stringRedisTemplate.opsForHash().increment(ElasticConstants.ITEM_REINDEX_CHECKPOINT_KEY,
+                        FIELD_INDEXED, indexed);
+            }
+        }
+    }
+}
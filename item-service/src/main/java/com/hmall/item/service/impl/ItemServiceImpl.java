@@ -1,6 +1,8 @@
 package com.hmall.item.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmall.item.config.ItemCacheProperties;
+import com.hmall.item.config.ItemStockProperties;
 import com.hmall.item.constants.MQConstants;
 import com.hmall.item.constants.CacheConstants;
 import com.hmall.item.domain.dto.ItemDTO;
@@ -11,24 +13,47 @@ import com.hmall.common.utils.BeanUtils;
 import com.hmall.item.domain.po.Item;
 import com.hmall.item.enums.ItemOperate;
 import com.hmall.item.mapper.ItemMapper;
+import com.hmall.item.service.IItemIndexService;
 import com.hmall.item.service.IItemService;
+import com.hmall.item.service.IItemStockService;
+import com.hmall.item.task.ItemSyncPublisher;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmall.common.domain.PageQuery;
+import com.hmall.common.domain.RedisData;
 import org.springframework.util.StringUtils;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import org.springframework.beans.factory.annotation.Qualifier;
 import com.hmall.common.utils.CollUtils;
+import com.hmall.common.utils.RedisBloomFilter;
+import com.hmall.common.utils.SingleFlightLoader;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -39,12 +64,24 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  *
  * @author 虎哥
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements IItemService {
 
     private final RabbitTemplate rabbitTemplate;
     private final ObjectMapper objectMapper;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Cache<Long, Item> itemLocalCache;
+    private final SingleFlightLoader singleFlightLoader;
+    private final ItemCacheProperties itemCacheProperties;
+    private final ExecutorService itemCacheRebuildExecutor;
+    private final RedisBloomFilter itemBloomFilter;
+    private final IItemStockService itemStockService;
+    private final ItemStockProperties itemStockProperties;
+    private final ItemSyncPublisher itemSyncPublisher;
+    private final IItemIndexService itemIndexService;
     
     // 需要@Qualifier的字段，手动注入
     @Autowired
@@ -54,6 +91,12 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
     @Override
     @Transactional
     public void deductStock(List<OrderDetailDTO> items) {
+        if (itemStockProperties.getReserveEnabled()) {
+            // 只在Redis中预扣，库存不足直接拒绝，落库由ItemStockFlushTask批量完成
+            // 在全局事务中时作为TCC分支，context由Seata注入
+            itemStockService.reserve(null, items);
+            return;
+        }
         String sqlStatement = "com.hmall.item.mapper.ItemMapper.updateStock";
         boolean r = false;
         try {
@@ -64,24 +107,30 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
         if (!r) {
             throw new BizIllegalException("库存不足！");
         }
+        afterStockChanged(items);
+    }
+
+    @Override
+    @Transactional
+    public void applyStockDeductions(List<OrderDetailDTO> deductions) {
+        String sqlStatement = "com.hmall.item.mapper.ItemMapper.updateStock";
+        executeBatch(deductions, (sqlSession, entity) -> sqlSession.update(sqlStatement, entity));
+        afterStockChanged(deductions);
+        meterRegistry.counter("item.stock.flushed").increment(deductions.size());
+    }
+
+    /**
+     * 库存变更后清理缓存并同步ES
+     */
+    private void afterStockChanged(List<OrderDetailDTO> items) {
+        List<Long> ids = items.stream().map(OrderDetailDTO::getItemId).collect(Collectors.toList());
         // 清理缓存
-        for (OrderDetailDTO orderDetail : items) {
-            Long id = orderDetail.getItemId();
-            redisTemplate.delete(CacheConstants.ITEM_CACHE_KEY_PREFIX + id);
-        }
-        redisTemplate.delete(redisTemplate.keys(CacheConstants.ITEM_BATCH_CACHE_PATTERN));
-        redisTemplate.delete(redisTemplate.keys(CacheConstants.ITEM_PAGE_CACHE_PATTERN));
-        // MQ同步ES
-        for (OrderDetailDTO orderDetail : items) {
-            Long id = orderDetail.getItemId();
-            Item item = getById(id);
-            ItemDTO itemDTO = BeanUtils.copyBean(item, ItemDTO.class);
-            rabbitTemplate.convertAndSend(
-                MQConstants.ITEM_SYNC_EXCHANGE_NAME,
-                MQConstants.ITEM_SYNC_UPDATE_KEY,
-                new ItemMQDTO(ItemOperate.UPDATE, itemDTO)
-            );
+        for (Long id : ids) {
+            evictItemCache(id);
         }
+        bumpItemCacheVersion();
+        // MQ同步ES，由ItemSyncPublisher合并后批量发送；提交后再记录，否则窗口结束时可能读到未提交前的库存
+        afterCommit(() -> itemSyncPublisher.markChanged(ids));
     }
 
     @Override
@@ -89,98 +138,100 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
         return BeanUtils.copyList(listByIds(ids), ItemDTO.class);
     }
 
-    // 批量查询商品缓存优化
+    // 批量查询商品缓存优化：复用单商品缓存 item:id:{id}，一次MGET取出，只回源缺失的部分
     @Override
     public List<ItemDTO> queryItemByIdsWithCache(Collection<Long> ids) {
         if (CollUtils.isEmpty(ids)) {
             return CollUtils.emptyList();
         }
-        
-        String key = CacheConstants.ITEM_BATCH_CACHE_KEY_PREFIX + ids.stream().sorted().map(String::valueOf).collect(Collectors.joining(","));
-        
-        // 先检查hash是否存在
-        Long size = redisTemplate.opsForHash().size(key);
-        if (size != null && size > 0) {
-            // 从hash中获取所有元素
-            List<Object> cached = redisTemplate.opsForHash().values(key);
-            if (cached != null && !cached.isEmpty()) {
-                return cached.stream()
-                    .map(item -> objectMapper.convertValue(item, ItemDTO.class))
+        List<Long> idList = ids.stream().distinct().collect(Collectors.toList());
+        Map<Long, Item> found = new HashMap<>(itemLocalCache.getAllPresent(idList));
+        // 1.本地缓存未命中的，一次MGET从Redis获取
+        List<Long> remoteIds = idList.stream().filter(id -> !found.containsKey(id)).collect(Collectors.toList());
+        List<Long> missingIds = new ArrayList<>();
+        if (!remoteIds.isEmpty()) {
+            List<String> keys = remoteIds.stream()
+                    .map(id -> CacheConstants.ITEM_CACHE_KEY_PREFIX + id)
                     .collect(Collectors.toList());
+            List<Object> cached = redisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; i < remoteIds.size(); i++) {
+                Object cache = cached == null ? null : cached.get(i);
+                Long id = remoteIds.get(i);
+                countRedisCache(cache != null);
+                if (cache == null) {
+                    missingIds.add(id);
+                } else if (!"NULL".equals(cache)) {
+                    Item item = toItem(cache);
+                    itemLocalCache.put(id, item);
+                    found.put(id, item);
+                }
+            }
+        }
+        // 2.缺失的商品先经过布隆过滤器，再一次查库，并通过pipeline回填缓存
+        int before = missingIds.size();
+        missingIds.removeIf(id -> !itemBloomFilter.mightContain(id));
+        countBloomRejected(before - missingIds.size());
+        if (!missingIds.isEmpty()) {
+            List<Item> loaded = listByIds(missingIds);
+            loaded.forEach(item -> {
+                itemLocalCache.put(item.getId(), item);
+                found.put(item.getId(), item);
+            });
+            backfillItemCache(missingIds, loaded);
+        }
+        // 3.按入参顺序返回
+        List<ItemDTO> result = new ArrayList<>(found.size());
+        for (Long id : idList) {
+            Item item = found.get(id);
+            if (item != null) {
+                result.add(BeanUtils.copyBean(item, ItemDTO.class));
             }
         }
-        
-        // 缓存击穿保护：加分布式锁
-        String lockKey = CacheConstants.ITEM_BATCH_LOCK_KEY_PREFIX + ids.stream().sorted().map(String::valueOf).collect(Collectors.joining(","));
-        boolean lock = Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, "1", CacheConstants.LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS));
-        if (lock) {
-            try {
-                // 再检查一次hash
-                size = redisTemplate.opsForHash().size(key);
-                if (size != null && size > 0) {
-                    List<Object> cached = redisTemplate.opsForHash().values(key);
-                    if (cached != null && !cached.isEmpty()) {
-                        return cached.stream()
-                            .map(item -> objectMapper.convertValue(item, ItemDTO.class))
-                            .collect(Collectors.toList());
+        return result;
+    }
+
+    /**
+     * 通过pipeline批量写入单商品缓存，数据库中不存在的id写入空值防止穿透
+     */
+    @SuppressWarnings("unchecked")
+    private void backfillItemCache(List<Long> ids, List<Item> items) {
+        Map<Long, Item> itemMap = items.stream().collect(Collectors.toMap(Item::getId, Function.identity()));
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                ValueOperations<String, Object> ops = (ValueOperations<String, Object>) operations.opsForValue();
+                for (Long id : ids) {
+                    String key = CacheConstants.ITEM_CACHE_KEY_PREFIX + id;
+                    Item item = itemMap.get(id);
+                    if (item != null) {
+                        ops.set(key, item, CacheConstants.ITEM_CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES);
+                    } else {
+                        ops.set(key, "NULL", CacheConstants.NULL_CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES);
                     }
                 }
-                
-                List<ItemDTO> items = queryItemByIds(ids);
-                if (CollUtils.isEmpty(items)) {
-                    // 空结果也缓存，防止穿透
-                    redisTemplate.opsForHash().put(key, "NULL", "NULL");
-                    redisTemplate.expire(key, CacheConstants.NULL_CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES);
-                    return CollUtils.emptyList();
-                } else {
-                    // 使用hash结构存储，每个商品以id为key存储
-                    Map<String, ItemDTO> itemMap = items.stream()
-                        .collect(Collectors.toMap(item -> String.valueOf(item.getId()), item -> item));
-                    redisTemplate.opsForHash().putAll(key, itemMap);
-                    redisTemplate.expire(key, CacheConstants.ITEM_BATCH_CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES);
-                    return items;
-                }
-            } finally {
-                redisTemplate.delete(lockKey);
+                return null;
             }
-        } else {
-            try { Thread.sleep(50); } catch (InterruptedException ignored) {}
-            return queryItemByIdsWithCache(ids);
-        }
+        });
     }
 
     @Override
+    @Transactional
     public void restoreStock(List<OrderDetailDTO> items) {
-        for (OrderDetailDTO orderDetail : items) {
-            Item item = lambdaQuery().eq(Item::getId, orderDetail.getItemId()).one();
-            lambdaUpdate()
-                    .set(Item::getStock, item.getStock() + orderDetail.getNum())
-                    .eq(Item::getId, orderDetail.getItemId())
-                    .update();
-        }
-        // 清理缓存
-        for (OrderDetailDTO orderDetail : items) {
-            Long id = orderDetail.getItemId();
-            redisTemplate.delete(CacheConstants.ITEM_CACHE_KEY_PREFIX + id);
-        }
-        redisTemplate.delete(redisTemplate.keys(CacheConstants.ITEM_BATCH_CACHE_PATTERN));
-        redisTemplate.delete(redisTemplate.keys(CacheConstants.ITEM_PAGE_CACHE_PATTERN));
-        // MQ同步ES
-        for (OrderDetailDTO orderDetail : items) {
-            Long id = orderDetail.getItemId();
-            Item item = getById(id);
-            ItemDTO itemDTO = BeanUtils.copyBean(item, ItemDTO.class);
-            rabbitTemplate.convertAndSend(
-                MQConstants.ITEM_SYNC_EXCHANGE_NAME,
-                MQConstants.ITEM_SYNC_UPDATE_KEY,
-                new ItemMQDTO(ItemOperate.UPDATE, itemDTO)
-            );
-        }
+        // 同一商品的多行（可能来自多个订单）合并为一次相对增量，全部在一个JDBC批次中执行
+        Map<Long, Integer> nums = items.stream()
+                .collect(Collectors.groupingBy(OrderDetailDTO::getItemId, TreeMap::new, Collectors.summingInt(OrderDetailDTO::getNum)));
+        List<OrderDetailDTO> restores = new ArrayList<>(nums.size());
+        nums.forEach((itemId, num) -> restores.add(new OrderDetailDTO().setItemId(itemId).setNum(num)));
+        String sqlStatement = "com.hmall.item.mapper.ItemMapper.restoreStock";
+        executeBatch(restores, (sqlSession, entity) -> sqlSession.update(sqlStatement, entity));
+        // 事务提交后再归还预扣计数器，避免回滚后计数器多出库存
+        afterCommit(() -> itemStockService.release(restores));
+        afterStockChanged(restores);
     }
 
     // 分页查询商品缓存优化
     public Page<Item> pageWithCache(PageQuery query) {
-        String key = CacheConstants.ITEM_PAGE_CACHE_KEY_PREFIX + query.getPageNo() + ":" + query.getPageSize() + ":" + (StringUtils.hasText(query.getSortBy()) ? query.getSortBy() : "") + ":" + (query.getIsAsc() != null ? query.getIsAsc() : "");
+        String key = CacheConstants.ITEM_PAGE_CACHE_KEY_PREFIX + currentItemCacheVersion() + ":" + query.getPageNo() + ":" + query.getPageSize() + ":" + (StringUtils.hasText(query.getSortBy()) ? query.getSortBy() : "") + ":" + (query.getIsAsc() != null ? query.getIsAsc() : "");
         Object cache = redisTemplate.opsForValue().get(key);
         Page<Item> page = (Page<Item>) redisTemplate.opsForValue().get(key);
         if (page != null) {
@@ -191,51 +242,206 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
         return page;
     }
 
-    // 根据id查询商品缓存优化
+    // 根据id查询商品缓存优化：L1本地缓存 -> L2 Redis -> 数据库
     public Item getByIdWithCache(Long id) {
+        // 1. 先查本地缓存
+        Item local = itemLocalCache.getIfPresent(id);
+        if (local != null) {
+            return local;
+        }
+        // 2. 布隆过滤器判断一定不存在的，直接返回，不再访问Redis和数据库
+        if (!itemBloomFilter.mightContain(id)) {
+            countBloomRejected(1);
+            return null;
+        }
         String key = CacheConstants.ITEM_CACHE_KEY_PREFIX + id;
-        // 1. 先查缓存
+        // 3. 再查Redis缓存
         Object cache = redisTemplate.opsForValue().get(key);
+        countRedisCache(cache != null);
+        Optional<Item> cached;
         if (cache != null) {
-            if (cache instanceof Item) {
-                return (Item) cache;
-            } else if ("NULL".equals(cache)) {
-                return null;
+            cached = "NULL".equals(cache) ? Optional.empty() : Optional.of(toItem(cache));
+            // 热点商品逻辑过期：直接返回旧值，由后台线程重建
+            if (cached.isPresent() && itemCacheProperties.isHotItem(id)) {
+                checkLogicalExpire(id, cache);
             }
+        } else {
+            // 4. 缓存击穿保护：合并本节点的并发回源，节点间通过分布式锁互斥
+            cached = singleFlightLoader.load(key, CacheConstants.ITEM_LOCK_KEY_PREFIX + id,
+                    () -> readItemCache(key), () -> loadItemToCache(id, key));
         }
-        // 2. 缓存击穿保护：加分布式锁
-        String lockKey = CacheConstants.ITEM_LOCK_KEY_PREFIX + id;
-        boolean lock = Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, "1", CacheConstants.LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS));
-        if (lock) {
-            try {
-                // 再查一次缓存，防止并发下重复查库
-                cache = redisTemplate.opsForValue().get(key);
-                if (cache != null) {
-                    if (cache instanceof Item) {
-                        return (Item) cache;
-                    } else if ("NULL".equals(cache)) {
-                        return null;
-                    } else {
-                        return objectMapper.convertValue(cache, Item.class);
+        Item item = cached == null ? null : cached.orElse(null);
+        if (item != null) {
+            itemLocalCache.put(id, item);
+        }
+        return item;
+    }
+
+    private void checkLogicalExpire(Long id, Object cache) {
+        RedisData redisData = toRedisData(cache);
+        if (redisData != null && redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+            countLogicalExpire(false);
+            return;
+        }
+        // 已过期，或者不是逻辑过期格式的数据（如批量查询回填的），都需要重建
+        countLogicalExpire(true);
+        rebuildItemCacheAsync(id, false);
+    }
+
+    /**
+     * 异步重建热点商品缓存，同一商品同时只有一个线程重建
+     * @param changed 商品刚被修改：正在进行的重建可能已经读到旧数据，标记后由它结束时再重建一次
+     */
+    private void rebuildItemCacheAsync(Long id, boolean changed) {
+        String lockKey = CacheConstants.ITEM_REBUILD_LOCK_KEY_PREFIX + id;
+        String pendingKey = CacheConstants.ITEM_REBUILD_PENDING_KEY_PREFIX + id;
+        if (!tryRebuildLock(lockKey)) {
+            if (!changed) {
+                return;
+            }
+            redisTemplate.opsForValue().set(pendingKey, "1", CacheConstants.REBUILD_LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS);
+            // 持有锁的线程可能在标记之前就已结束，再抢一次锁，抢到则由当前线程重建
+            if (!tryRebuildLock(lockKey)) {
+                return;
+            }
+            redisTemplate.delete(pendingKey);
+        }
+        try {
+            itemCacheRebuildExecutor.execute(() -> {
+                try {
+                    Item item = loadItemToCache(id, CacheConstants.ITEM_CACHE_KEY_PREFIX + id).orElse(null);
+                    itemLocalCache.invalidate(id);
+                    stringRedisTemplate.convertAndSend(CacheConstants.ITEM_CACHE_INVALIDATE_CHANNEL, String.valueOf(id));
+                    meterRegistry.counter("item.cache.rebuild", "result", item != null ? "loaded" : "absent").increment();
+                } catch (Exception e) {
+                    log.error("重建商品缓存失败，id:{}", id, e);
+                } finally {
+                    redisTemplate.delete(lockKey);
+                    if (Boolean.TRUE.equals(redisTemplate.delete(pendingKey))) {
+                        rebuildItemCacheAsync(id, true);
                     }
                 }
-                // 查数据库
-                Item item = super.getById(id);
-                if (item != null) {
-                    redisTemplate.opsForValue().set(key, item, CacheConstants.ITEM_CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES);
-                } else {
-                    // 缓存空对象，防止穿透
-                    redisTemplate.opsForValue().set(key, "NULL", CacheConstants.NULL_CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES);
-                }
-                return item;
-            } finally {
-                redisTemplate.delete(lockKey);
-            }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("商品缓存重建任务已满，id:{}", id);
+            redisTemplate.delete(lockKey);
+        }
+    }
+
+    private boolean tryRebuildLock(String lockKey) {
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, "1", CacheConstants.REBUILD_LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 读取单商品缓存
+     * @return null表示未命中，Optional.empty()表示缓存的空值
+     */
+    private Optional<Item> readItemCache(String key) {
+        Object cache = redisTemplate.opsForValue().get(key);
+        if (cache == null) {
+            return null;
+        }
+        return "NULL".equals(cache) ? Optional.empty() : Optional.of(toItem(cache));
+    }
+
+    private Optional<Item> loadItemToCache(Long id, String key) {
+        Item item = super.getById(id);
+        if (item != null && itemCacheProperties.isHotItem(id)) {
+            // 热点商品写入逻辑过期时间
+            LocalDateTime expireTime = LocalDateTime.now().plusSeconds(itemCacheProperties.getLogicalExpireSeconds());
+            redisTemplate.opsForValue().set(key, new RedisData(expireTime, item), CacheConstants.ITEM_HOT_CACHE_EXPIRE_HOURS, TimeUnit.HOURS);
+        } else if (item != null) {
+            redisTemplate.opsForValue().set(key, item, CacheConstants.ITEM_CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES);
         } else {
-            // 未获得锁，短暂等待后重试
-            try { Thread.sleep(50); } catch (InterruptedException ignored) {}
-            return getByIdWithCache(id);
+            // 缓存空对象，防止穿透
+            redisTemplate.opsForValue().set(key, "NULL", CacheConstants.NULL_CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES);
         }
+        return Optional.ofNullable(item);
+    }
+
+    /**
+     * Redis中的值反序列化后是Map，需要转换为Item，逻辑过期格式的取出其中的data
+     */
+    private Item toItem(Object cache) {
+        if (cache instanceof Item) {
+            return (Item) cache;
+        }
+        RedisData redisData = toRedisData(cache);
+        return objectMapper.convertValue(redisData != null ? redisData.getData() : cache, Item.class);
+    }
+
+    /**
+     * @return 逻辑过期格式的数据，不是该格式时返回null
+     */
+    private RedisData toRedisData(Object cache) {
+        if (cache instanceof Map && ((Map<?, ?>) cache).containsKey("expireTime")) {
+            return objectMapper.convertValue(cache, RedisData.class);
+        }
+        return null;
+    }
+
+    /**
+     * 当前商品列表类缓存的版本号，未初始化时为0
+     */
+    private long currentItemCacheVersion() {
+        String version = stringRedisTemplate.opsForValue().get(CacheConstants.ITEM_CACHE_VERSION_KEY);
+        return version == null ? 0L : Long.parseLong(version);
+    }
+
+    /**
+     * 使所有分页缓存和批量查询缓存失效：只需一次INCR，代替KEYS扫描后删除
+     */
+    private void bumpItemCacheVersion() {
+        stringRedisTemplate.opsForValue().increment(CacheConstants.ITEM_CACHE_VERSION_KEY);
+    }
+
+    private void countRedisCache(boolean hit) {
+        meterRegistry.counter("item.redis.cache", "result", hit ? "hit" : "miss").increment();
+    }
+
+    private void countBloomRejected(int count) {
+        if (count > 0) {
+            meterRegistry.counter("item.bloom.rejected").increment(count);
+        }
+    }
+
+    private void countLogicalExpire(boolean stale) {
+        meterRegistry.counter("item.cache.logical", "result", stale ? "stale" : "fresh").increment();
+    }
+
+    /**
+     * 清理单个商品的二级缓存，并广播通知其它节点清理本地缓存
+     * 在事务中调用时推迟到提交之后，否则重建或回源会把未提交的旧数据重新写入缓存
+     * @param id 商品ID
+     */
+    private void evictItemCache(Long id) {
+        afterCommit(() -> {
+            if (itemCacheProperties.isHotItem(id)) {
+                // 热点商品不删除缓存，避免大量请求同时回源，改为后台重建
+                rebuildItemCacheAsync(id, true);
+            } else {
+                redisTemplate.delete(CacheConstants.ITEM_CACHE_KEY_PREFIX + id);
+            }
+            itemLocalCache.invalidate(id);
+            singleFlightLoader.invalidate(CacheConstants.ITEM_CACHE_KEY_PREFIX + id);
+            stringRedisTemplate.convertAndSend(CacheConstants.ITEM_CACHE_INVALIDATE_CHANNEL, String.valueOf(id));
+        });
+    }
+
+    /**
+     * 有活动的事务时在提交后执行，没有时立即执行
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
     // 新增商品时清理分页缓存
@@ -244,9 +450,9 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
         Item item = BeanUtils.copyProperties(itemDTO, Item.class);
         baseMapper.insert(item);
         itemDTO.setId(item.getId());
+        itemBloomFilter.put(item.getId());
         // 清理所有分页缓存和批量查询缓存
-        redisTemplate.delete(redisTemplate.keys(CacheConstants.ITEM_PAGE_CACHE_PATTERN));
-        redisTemplate.delete(redisTemplate.keys(CacheConstants.ITEM_BATCH_CACHE_PATTERN));
+        bumpItemCacheVersion();
         rabbitTemplate.convertAndSend(
                 MQConstants.ITEM_SYNC_EXCHANGE_NAME,
                 MQConstants.ITEM_SYNC_UPDATE_KEY,
@@ -259,9 +465,8 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
     public boolean updateByIdWithCache(Item item) {
         boolean result = super.updateById(item);
         if (result && item.getId() != null) {
-            redisTemplate.delete(CacheConstants.ITEM_CACHE_KEY_PREFIX + item.getId());
-            redisTemplate.delete(redisTemplate.keys(CacheConstants.ITEM_PAGE_CACHE_PATTERN));
-            redisTemplate.delete(redisTemplate.keys(CacheConstants.ITEM_BATCH_CACHE_PATTERN));
+            evictItemCache(item.getId());
+            bumpItemCacheVersion();
         }
         return result;
     }
@@ -273,6 +478,10 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
         itemDTO.setStatus(null);
         Item item = BeanUtils.copyBean(itemDTO, Item.class);
         updateByIdWithCache(item);
+        if (item.getStock() != null) {
+            // 库存被直接修改，计数器下次预扣时按数据库库存减去未落库数量重新加载
+            itemStockService.evict(item.getId());
+        }
         // MQ同步ES
         rabbitTemplate.convertAndSend(
                 MQConstants.ITEM_SYNC_EXCHANGE_NAME,
@@ -285,16 +494,18 @@ public class ItemServiceImpl extends ServiceImpl<ItemMapper, Item> implements II
     private boolean removeByIdWithCache(Long id) {
         boolean result = super.removeById(id);
         if (result) {
-            redisTemplate.delete(CacheConstants.ITEM_CACHE_KEY_PREFIX + id);
-            redisTemplate.delete(redisTemplate.keys(CacheConstants.ITEM_PAGE_CACHE_PATTERN));
-            redisTemplate.delete(redisTemplate.keys(CacheConstants.ITEM_BATCH_CACHE_PATTERN));
+            evictItemCache(id);
+            bumpItemCacheVersion();
         }
         return result;
     }
 
     @Override
     public void deleteItemById(Long id) {
-        removeByIdWithCache(id);
+        if (removeByIdWithCache(id)) {
+            // 正在进行的索引重建可能已经写入了这个商品，切换别名前补删
+            itemIndexService.recordDeleted(id);
+        }
         // MQ同步ES
         ItemDTO itemDTO = ItemDTO.builder().id(id).build();
         rabbitTemplate.convertAndSend(
@@ -0,0 +1,263 @@
+package com.hmall.item.service.impl;
+
+import cn.hutool.core.lang.UUID;
+import com.hmall.common.exception.BizIllegalException;
+import com.hmall.common.utils.CollUtils;
+import com.hmall.item.constants.CacheConstants;
+import com.hmall.item.domain.dto.OrderDetailDTO;
+import com.hmall.item.domain.dto.StockDeductionBatch;
+import com.hmall.item.domain.po.Item;
+import com.hmall.item.mapper.ItemMapper;
+import com.hmall.item.service.IItemStockService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.seata.rm.tcc.api.BusinessActionContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * 商品库存扣减服务实现类
+ * </p>
+ * 预扣：每个商品在Redis中维护一个库存计数器，预扣成功的同时在同一个Lua脚本中记录扣减；
+ * 在全局事务中先记入TCC预留记录，提交后移入扣减流水，回滚时归还计数器。
+ * 流水由ItemStockFlushTask批量落库，落库提交后才从Redis删除
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ItemStockServiceImpl implements IItemStockService {
+
+    private static final DefaultRedisScript<Long> RESERVE_SCRIPT = script("lua/stock_reserve.lua", Long.class);
+    private static final DefaultRedisScript<Long> CONFIRM_SCRIPT = script("lua/stock_confirm.lua", Long.class);
+    private static final DefaultRedisScript<Long> CANCEL_SCRIPT = script("lua/stock_cancel.lua", Long.class);
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = script("lua/stock_release.lua", Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> TAKE_SCRIPT = script("lua/stock_journal_take.lua", List.class);
+    private static final DefaultRedisScript<Long> ACK_SCRIPT = script("lua/stock_journal_ack.lua", Long.class);
+    private static final DefaultRedisScript<Long> RETURN_SCRIPT = script("lua/stock_journal_return.lua", Long.class);
+    private static final DefaultRedisScript<String> RECLAIM_SCRIPT = script("lua/stock_journal_reclaim.lua", String.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ItemMapper itemMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    public void reserve(BusinessActionContext context, List<OrderDetailDTO> items) {
+        Map<Long, Integer> nums = mergeByItem(items);
+        if (nums.isEmpty()) {
+            return;
+        }
+        List<Long> itemIds = new ArrayList<>(nums.keySet());
+        int n = itemIds.size();
+        List<String> keys = new ArrayList<>(n + 3);
+        List<String> args = new ArrayList<>(n * 2 + 2);
+        args.add(String.valueOf(n));
+        for (Long itemId : itemIds) {
+            keys.add(CacheConstants.ITEM_STOCK_KEY_PREFIX + itemId);
+            args.add(String.valueOf(nums.get(itemId)));
+        }
+        for (Long itemId : itemIds) {
+            args.add(String.valueOf(itemId));
+        }
+        if (context == null) {
+            // 不在全局事务中，直接写入扣减流水
+            keys.add(CacheConstants.ITEM_STOCK_JOURNAL_KEY);
+            keys.add(CacheConstants.ITEM_STOCK_UNFLUSHED_KEY);
+            args.add("0");
+        } else {
+            keys.add(CacheConstants.ITEM_STOCK_RESERVATION_KEY_PREFIX + branchKey(context));
+            keys.add(CacheConstants.ITEM_STOCK_UNFLUSHED_KEY);
+            keys.add(CacheConstants.ITEM_STOCK_RESERVATION_DONE_KEY_PREFIX + branchKey(context));
+            args.add(String.valueOf(TimeUnit.HOURS.toSeconds(CacheConstants.STOCK_RESERVATION_EXPIRE_HOURS)));
+        }
+        Long result = stringRedisTemplate.execute(RESERVE_SCRIPT, keys, args.toArray());
+        if (result != null && result < 0 && result >= -n) {
+            // 有商品的计数器还没加载，加载后重试一次
+            loadCounters(itemIds);
+            result = stringRedisTemplate.execute(RESERVE_SCRIPT, keys, args.toArray());
+        }
+        if (result != null && result == -(n + 1)) {
+            meterRegistry.counter("item.stock.reserve", "result", "suspended").increment();
+            throw new BizIllegalException("订单事务已结束！");
+        }
+        if (result == null || result != 0) {
+            meterRegistry.counter("item.stock.reserve", "result", "sold_out").increment();
+            throw new BizIllegalException("库存不足！");
+        }
+        meterRegistry.counter("item.stock.reserve", "result", "success").increment();
+    }
+
+    @Override
+    public boolean confirmReserve(BusinessActionContext context) {
+        String branch = branchKey(context);
+        stringRedisTemplate.execute(CONFIRM_SCRIPT, Arrays.asList(
+                        CacheConstants.ITEM_STOCK_RESERVATION_KEY_PREFIX + branch,
+                        CacheConstants.ITEM_STOCK_JOURNAL_KEY,
+                        CacheConstants.ITEM_STOCK_RESERVATION_DONE_KEY_PREFIX + branch),
+                String.valueOf(TimeUnit.HOURS.toSeconds(CacheConstants.STOCK_RESERVATION_EXPIRE_HOURS)));
+        return true;
+    }
+
+    @Override
+    public boolean cancelReserve(BusinessActionContext context) {
+        String branch = branchKey(context);
+        Long released = stringRedisTemplate.execute(CANCEL_SCRIPT, Arrays.asList(
+                        CacheConstants.ITEM_STOCK_RESERVATION_KEY_PREFIX + branch,
+                        CacheConstants.ITEM_STOCK_UNFLUSHED_KEY,
+                        CacheConstants.ITEM_STOCK_RESERVATION_DONE_KEY_PREFIX + branch),
+                CacheConstants.ITEM_STOCK_KEY_PREFIX,
+                String.valueOf(TimeUnit.HOURS.toSeconds(CacheConstants.STOCK_RESERVATION_EXPIRE_HOURS)));
+        if (released != null && released > 0) {
+            meterRegistry.counter("item.stock.reserve.cancelled").increment();
+        }
+        return true;
+    }
+
+    @Override
+    public void release(List<OrderDetailDTO> items) {
+        Map<Long, Integer> nums = mergeByItem(items);
+        if (nums.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(nums.size());
+        List<String> args = new ArrayList<>(nums.size());
+        nums.forEach((itemId, num) -> {
+            keys.add(CacheConstants.ITEM_STOCK_KEY_PREFIX + itemId);
+            args.add(String.valueOf(num));
+        });
+        stringRedisTemplate.execute(RELEASE_SCRIPT, keys, args.toArray());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public StockDeductionBatch takeDeductions(int batchSize) {
+        String batchId = UUID.randomUUID().toString(true);
+        List<String> entries = stringRedisTemplate.execute(TAKE_SCRIPT, Arrays.asList(
+                        CacheConstants.ITEM_STOCK_JOURNAL_KEY,
+                        CacheConstants.ITEM_STOCK_PROCESSING_KEY_PREFIX + batchId,
+                        CacheConstants.ITEM_STOCK_BATCHES_KEY),
+                String.valueOf(batchSize), batchId, String.valueOf(System.currentTimeMillis()));
+        return toBatch(batchId, entries);
+    }
+
+    @Override
+    public StockDeductionBatch reclaimDeductions(long timeoutMillis) {
+        String batchId = stringRedisTemplate.execute(RECLAIM_SCRIPT,
+                CollUtils.singletonList(CacheConstants.ITEM_STOCK_BATCHES_KEY),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(timeoutMillis));
+        if (batchId == null) {
+            return null;
+        }
+        log.warn("重新落库超时未确认的库存流水批次:{}", batchId);
+        meterRegistry.counter("item.stock.flush.reclaimed").increment();
+        List<String> entries = stringRedisTemplate.opsForList()
+                .range(CacheConstants.ITEM_STOCK_PROCESSING_KEY_PREFIX + batchId, 0, -1);
+        StockDeductionBatch batch = toBatch(batchId, entries);
+        if (batch == null) {
+            // 处理中列表已为空，只剩批次记录
+            ackDeductions(batchId);
+        }
+        return batch;
+    }
+
+    @Override
+    public void ackDeductions(String batchId) {
+        stringRedisTemplate.execute(ACK_SCRIPT, Arrays.asList(
+                CacheConstants.ITEM_STOCK_PROCESSING_KEY_PREFIX + batchId,
+                CacheConstants.ITEM_STOCK_BATCHES_KEY,
+                CacheConstants.ITEM_STOCK_UNFLUSHED_KEY), batchId);
+    }
+
+    @Override
+    public void returnDeductions(String batchId) {
+        stringRedisTemplate.execute(RETURN_SCRIPT, Arrays.asList(
+                CacheConstants.ITEM_STOCK_PROCESSING_KEY_PREFIX + batchId,
+                CacheConstants.ITEM_STOCK_JOURNAL_KEY,
+                CacheConstants.ITEM_STOCK_BATCHES_KEY), batchId);
+    }
+
+    @Override
+    public void evict(Long itemId) {
+        stringRedisTemplate.delete(CacheConstants.ITEM_STOCK_KEY_PREFIX + itemId);
+    }
+
+    /**
+     * 从数据库加载库存计数器，已存在的计数器不会被覆盖
+     * 计数器 = 数据库库存 - 未落库数量。先读未落库数量再读数据库：期间落库的扣减会被多扣一次（少卖），但不会超卖
+     */
+    private void loadCounters(List<Long> itemIds) {
+        List<Object> unflushed = stringRedisTemplate.opsForHash().multiGet(CacheConstants.ITEM_STOCK_UNFLUSHED_KEY,
+                itemIds.stream().map(String::valueOf).collect(Collectors.toList()));
+        Map<Long, Integer> pending = new HashMap<>(itemIds.size());
+        for (int i = 0; i < itemIds.size(); i++) {
+            Object num = unflushed.get(i);
+            pending.put(itemIds.get(i), num == null ? 0 : Integer.parseInt(num.toString()));
+        }
+        List<Item> list = itemMapper.selectBatchIds(itemIds);
+        if (list.size() < itemIds.size()) {
+            throw new BizIllegalException("商品不存在！");
+        }
+        for (Item item : list) {
+            int stock = Math.max(0, item.getStock() - pending.getOrDefault(item.getId(), 0));
+            stringRedisTemplate.opsForValue().setIfAbsent(
+                    CacheConstants.ITEM_STOCK_KEY_PREFIX + item.getId(), String.valueOf(stock));
+        }
+    }
+
+    private Map<Long, Integer> mergeByItem(List<OrderDetailDTO> items) {
+        Map<Long, Integer> nums = new LinkedHashMap<>();
+        if (CollUtils.isEmpty(items)) {
+            return nums;
+        }
+        for (OrderDetailDTO item : items) {
+            if (item.getNum() == null || item.getNum() <= 0) {
+                throw new BizIllegalException("商品数量不合法！");
+            }
+            nums.merge(item.getItemId(), item.getNum(), Integer::sum);
+        }
+        return nums;
+    }
+
+    private StockDeductionBatch toBatch(String batchId, List<String> entries) {
+        if (CollUtils.isEmpty(entries)) {
+            return null;
+        }
+        Map<Long, Integer> nums = new LinkedHashMap<>();
+        for (String entry : entries) {
+            int i = entry.indexOf(':');
+            nums.merge(Long.valueOf(entry.substring(0, i)), Integer.valueOf(entry.substring(i + 1)), Integer::sum);
+        }
+        return new StockDeductionBatch(batchId, entries.size(), toDetails(nums));
+    }
+
+    private static String branchKey(BusinessActionContext context) {
+        return context.getXid() + ":" + context.getBranchId();
+    }
+
+    private List<OrderDetailDTO> toDetails(Map<Long, Integer> nums) {
+        List<OrderDetailDTO> details = new ArrayList<>(nums.size());
+        nums.forEach((itemId, num) -> details.add(new OrderDetailDTO().setItemId(itemId).setNum(num)));
+        return details;
+    }
+
+    private static <T> DefaultRedisScript<T> script(String path, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(resultType);
+        return script;
+    }
+}
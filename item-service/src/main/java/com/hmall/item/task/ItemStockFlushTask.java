@@ -0,0 +1,63 @@
+package com.hmall.item.task;
+
+import com.hmall.item.config.ItemStockProperties;
+import com.hmall.item.domain.dto.StockDeductionBatch;
+import com.hmall.item.service.IItemService;
+import com.hmall.item.service.IItemStockService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 把Redis中预扣的库存批量落库
+ * 流水由Lua脚本原子地移入这一批的处理中列表，多个节点同时执行也不会重复落库；
+ * 落库提交后才删除处理中列表，节点宕机或重启后，超时未确认的批次由下一次执行重新落库
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ItemStockFlushTask {
+
+    private final IItemService itemService;
+    private final IItemStockService itemStockService;
+    private final ItemStockProperties itemStockProperties;
+
+    @Scheduled(fixedDelayString = "${hm.item.stock.flush-interval-millis:200}")
+    public void flush() {
+        // 关闭预扣后仍需把剩余的流水落库，所以不判断reserveEnabled
+        // 1.先处理超时未确认的批次
+        StockDeductionBatch batch;
+        while ((batch = itemStockService.reclaimDeductions(itemStockProperties.getFlushProcessingTimeoutMillis())) != null) {
+            if (!apply(batch)) {
+                return;
+            }
+        }
+        // 2.再处理新的流水
+        int batchSize = itemStockProperties.getFlushBatchSize();
+        do {
+            batch = itemStockService.takeDeductions(batchSize);
+            if (batch == null || !apply(batch)) {
+                return;
+            }
+        } while (batch.getEntries() >= batchSize);
+    }
+
+    private boolean apply(StockDeductionBatch batch) {
+        try {
+            itemService.applyStockDeductions(batch.getDeductions());
+        } catch (Exception e) {
+            log.error("库存扣减落库失败，放回流水等待重试，商品数:{}", batch.getDeductions().size(), e);
+            itemStockService.returnDeductions(batch.getId());
+            return false;
+        }
+        try {
+            itemStockService.ackDeductions(batch.getId());
+        } catch (Exception e) {
+            // 已落库但未确认，超时后会被重新落库，多扣的库存只会少卖不会超卖
+            log.error("库存扣减已落库但确认失败，批次:{}", batch.getId(), e);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,99 @@
+package com.hmall.item.task;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.hmall.common.utils.BeanUtils;
+import com.hmall.common.utils.CollUtils;
+import com.hmall.item.config.ItemSyncProperties;
+import com.hmall.item.constants.MQConstants;
+import com.hmall.item.domain.dto.ItemDTO;
+import com.hmall.item.domain.dto.ItemMQDTO;
+import com.hmall.item.domain.po.Item;
+import com.hmall.item.enums.ItemOperate;
+import com.hmall.item.mapper.ItemMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 合并商品库存变更的ES同步消息
+ * 窗口内同一商品的多次变更只记录一次，窗口结束时一次查询所有商品的最新状态，按批发送到ITEM_SYNC_BATCH_KEY
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ItemSyncPublisher {
+
+    private final ItemMapper itemMapper;
+    private final RabbitTemplate rabbitTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ItemSyncProperties itemSyncProperties;
+
+    private final Set<Long> pendingIds = ConcurrentHashMap.newKeySet();
+    /**
+     * 窗口内的变更次数，即不合并时需要发送的消息数
+     */
+    private final AtomicLong pendingChanges = new AtomicLong();
+
+    /**
+     * 记录发生变更的商品，每个元素对应原来的一条同步消息
+     */
+    public void markChanged(Collection<Long> itemIds) {
+        if (CollUtils.isEmpty(itemIds)) {
+            return;
+        }
+        pendingChanges.addAndGet(itemIds.size());
+        pendingIds.addAll(itemIds);
+    }
+
+    @Scheduled(fixedDelayString = "${hm.item.sync.window-millis:500}")
+    @PreDestroy
+    public void flush() {
+        if (pendingIds.isEmpty()) {
+            return;
+        }
+        long changes = pendingChanges.getAndSet(0);
+        List<Long> ids = new ArrayList<>(pendingIds.size());
+        for (Iterator<Long> it = pendingIds.iterator(); it.hasNext(); ) {
+            ids.add(it.next());
+            it.remove();
+        }
+        int batchSize = itemSyncProperties.getBatchSize();
+        long messages = 0;
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            // 一次查询这一批商品的最新状态，已删除的商品会被跳过
+            List<Item> items = itemMapper.selectList(Wrappers.<Item>lambdaQuery().in(Item::getId, chunk));
+            if (items.isEmpty()) {
+                continue;
+            }
+            List<ItemMQDTO> batch = new ArrayList<>(items.size());
+            for (Item item : items) {
+                batch.add(new ItemMQDTO(ItemOperate.UPDATE, BeanUtils.copyBean(item, ItemDTO.class)));
+            }
+            try {
+                rabbitTemplate.convertAndSend(MQConstants.ITEM_SYNC_EXCHANGE_NAME, MQConstants.ITEM_SYNC_BATCH_KEY, batch);
+                messages++;
+            } catch (Exception e) {
+                // 放回下个窗口重试
+                log.error("发送商品批量同步消息失败，商品数:{}", chunk.size(), e);
+                pendingIds.addAll(chunk);
+            }
+        }
+        meterRegistry.counter("item.sync.changes").increment(changes);
+        meterRegistry.counter("item.sync.items").increment(ids.size());
+        meterRegistry.counter("item.sync.messages").increment(messages);
+        meterRegistry.counter("item.sync.saved").increment(Math.max(0, changes - messages));
+    }
+}
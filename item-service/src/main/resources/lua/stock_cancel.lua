@@ -0,0 +1,23 @@
+-- TCC回滚：归还预留的库存，计数器不存在时跳过（重新加载时已按未落库数量扣除）
+-- 预留记录不存在时（预扣失败或尚未到达）只写结束标记，之后到达的预扣会被拒绝
+-- KEYS[1]: 预留记录key，KEYS[2]: 未落库数量hash，KEYS[3]: TCC结束标记key
+-- ARGV[1]: 库存计数器key前缀，ARGV[2]: 结束标记过期时间（秒）
+if redis.call('exists', KEYS[3]) == 1 then
+    return 0
+end
+local entries = redis.call('lrange', KEYS[1], 0, -1)
+for _, entry in ipairs(entries) do
+    local i = string.find(entry, ':', 1, true)
+    local id = string.sub(entry, 1, i - 1)
+    local num = tonumber(string.sub(entry, i + 1))
+    local counter = ARGV[1] .. id
+    if redis.call('exists', counter) == 1 then
+        redis.call('incrby', counter, num)
+    end
+    if redis.call('hincrby', KEYS[2], id, -num) <= 0 then
+        redis.call('hdel', KEYS[2], id)
+    end
+end
+redis.call('del', KEYS[1])
+redis.call('set', KEYS[3], 'rollback', 'EX', ARGV[2])
+return #entries
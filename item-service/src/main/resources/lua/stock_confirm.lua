@@ -0,0 +1,13 @@
+-- TCC提交：预留记录移入扣减流水，等待落库
+-- KEYS[1]: 预留记录key，KEYS[2]: 扣减流水key，KEYS[3]: TCC结束标记key
+-- ARGV[1]: 结束标记过期时间（秒）
+if redis.call('exists', KEYS[3]) == 1 then
+    return 0
+end
+local entries = redis.call('lrange', KEYS[1], 0, -1)
+if #entries > 0 then
+    redis.call('rpush', KEYS[2], unpack(entries))
+end
+redis.call('del', KEYS[1])
+redis.call('set', KEYS[3], 'commit', 'EX', ARGV[1])
+return #entries
@@ -0,0 +1,14 @@
+-- 一批流水已落库：删除处理中列表，扣除未落库数量
+-- KEYS[1]: 这一批的处理中列表key，KEYS[2]: 处理中批次hash，KEYS[3]: 未落库数量hash
+-- ARGV[1]: 批次id
+local entries = redis.call('lrange', KEYS[1], 0, -1)
+for _, entry in ipairs(entries) do
+    local i = string.find(entry, ':', 1, true)
+    local id = string.sub(entry, 1, i - 1)
+    if redis.call('hincrby', KEYS[3], id, -tonumber(string.sub(entry, i + 1))) <= 0 then
+        redis.call('hdel', KEYS[3], id)
+    end
+end
+redis.call('del', KEYS[1])
+redis.call('hdel', KEYS[2], ARGV[1])
+return #entries
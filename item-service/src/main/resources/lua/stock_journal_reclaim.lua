@@ -0,0 +1,12 @@
+-- 认领一个超时未确认的批次（处理它的节点已宕机），重新记录认领时间后返回批次id
+-- KEYS[1]: 处理中批次hash
+-- ARGV[1]: 当前时间（毫秒），ARGV[2]: 超时时间（毫秒）
+local batches = redis.call('hgetall', KEYS[1])
+local now = tonumber(ARGV[1])
+for i = 1, #batches, 2 do
+    if now - tonumber(batches[i + 1]) > tonumber(ARGV[2]) then
+        redis.call('hset', KEYS[1], batches[i], ARGV[1])
+        return batches[i]
+    end
+end
+return false
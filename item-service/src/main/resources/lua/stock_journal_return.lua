@@ -0,0 +1,10 @@
+-- 一批流水落库失败：放回扣减流水，等待下次重试
+-- KEYS[1]: 这一批的处理中列表key，KEYS[2]: 扣减流水key，KEYS[3]: 处理中批次hash
+-- ARGV[1]: 批次id
+local entries = redis.call('lrange', KEYS[1], 0, -1)
+if #entries > 0 then
+    redis.call('rpush', KEYS[2], unpack(entries))
+end
+redis.call('del', KEYS[1])
+redis.call('hdel', KEYS[3], ARGV[1])
+return #entries
@@ -0,0 +1,10 @@
+-- 从扣减流水头部取出最多ARGV[1]条，移入这一批的处理中列表，落库提交后才删除
+-- KEYS[1]: 扣减流水key，KEYS[2]: 这一批的处理中列表key，KEYS[3]: 处理中批次hash
+-- ARGV[1]: 条数，ARGV[2]: 批次id，ARGV[3]: 当前时间（毫秒）
+local entries = redis.call('lrange', KEYS[1], 0, tonumber(ARGV[1]) - 1)
+if #entries > 0 then
+    redis.call('ltrim', KEYS[1], #entries, -1)
+    redis.call('rpush', KEYS[2], unpack(entries))
+    redis.call('hset', KEYS[3], ARGV[2], ARGV[3])
+end
+return entries
@@ -0,0 +1,8 @@
+-- 归还库存，计数器不存在时跳过，下次预扣时会从数据库重新加载
+-- KEYS[1..n]: 库存计数器key，ARGV[1..n]: 归还数量
+for i = 1, #KEYS do
+    if redis.call('exists', KEYS[i]) == 1 then
+        redis.call('incrby', KEYS[i], ARGV[i])
+    end
+end
+return 0
@@ -0,0 +1,39 @@
+-- 预扣一个订单中所有商品的库存，全部充足才扣减
+-- KEYS[1..n]: 库存计数器key，KEYS[n+1]: 扣减记录key（扣减流水或TCC预留记录），KEYS[n+2]: 未落库数量hash，
+-- KEYS[n+3]: TCC结束标记key（不在全局事务中时不传）
+-- ARGV[1]: 商品数n，ARGV[2..n+1]: 扣减数量，ARGV[n+2..2n+1]: 商品id，ARGV[2n+2]: 预留记录过期时间（秒），0表示直接写入流水
+-- 返回: 0 成功；i 第i个商品库存不足；-i 第i个商品的计数器不存在；-(n+1) 全局事务已结束
+local n = tonumber(ARGV[1])
+local record = KEYS[n + 1]
+local unflushed = KEYS[n + 2]
+local done = KEYS[n + 3]
+local ttl = tonumber(ARGV[2 * n + 2])
+if done then
+    -- 回滚先于预扣到达（悬挂），或重复的预扣
+    if redis.call('exists', done) == 1 then
+        return -(n + 1)
+    end
+    if redis.call('exists', record) == 1 then
+        return 0
+    end
+end
+for i = 1, n do
+    local stock = redis.call('get', KEYS[i])
+    if not stock then
+        return -i
+    end
+    if tonumber(stock) < tonumber(ARGV[i + 1]) then
+        return i
+    end
+end
+for i = 1, n do
+    local num = ARGV[i + 1]
+    local id = ARGV[n + i + 1]
+    redis.call('decrby', KEYS[i], num)
+    redis.call('rpush', record, id .. ':' .. num)
+    redis.call('hincrby', unflushed, id, num)
+end
+if ttl > 0 then
+    redis.call('expire', record, ttl)
+end
+return 0
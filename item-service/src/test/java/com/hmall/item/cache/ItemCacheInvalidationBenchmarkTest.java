@@ -0,0 +1,148 @@
+package com.hmall.item.cache;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 对比商品写操作时两种缓存失效方式对Redis延迟的影响：
+ * 1. KEYS item:page:* / item:batch:* 后DEL
+ * 2. INCR item:cache:version
+ * 两种方式失效后都按新版本回填同样数量的列表缓存，回填与线上一样带30分钟过期，旧版本的key在INCR方式下保留到过期
+ * <p>
+ * 需要一个可写的Redis，运行方式：
+ * mvn test -pl item-service -Dtest=ItemCacheInvalidationBenchmarkTest -Dbench.redis=redis://123321@192.168.198.128:6379/15
+ */
+@EnabledIfSystemProperty(named = "bench.redis", matches = ".+")
+public class ItemCacheInvalidationBenchmarkTest {
+
+    private static final int OTHER_KEYS = 200_000;
+    private static final int ITEM_LIST_KEYS = 2_000;
+    /**
+     * 与CacheConstants.ITEM_PAGE_CACHE_EXPIRE_MINUTES一致
+     */
+    private static final long ITEM_LIST_TTL_SECONDS = TimeUnit.MINUTES.toSeconds(30);
+    private static final long RUN_MILLIS = 10_000;
+    private static final long WRITE_INTERVAL_MILLIS = 20;
+
+    private RedisClient client;
+    private StatefulRedisConnection<String, String> readerConn;
+    private StatefulRedisConnection<String, String> writerConn;
+
+    @Test
+    void testKeysScan() throws InterruptedException {
+        report("KEYS + DEL", run(redis -> {
+            List<String> pages = redis.keys("item:page:*");
+            List<String> batches = redis.keys("item:batch:*");
+            if (!pages.isEmpty()) {
+                redis.del(pages.toArray(new String[0]));
+            }
+            if (!batches.isEmpty()) {
+                redis.del(batches.toArray(new String[0]));
+            }
+            // 模拟失效后的回填
+            seedItemListKeys(redis, "0");
+        }));
+    }
+
+    @Test
+    void testVersionIncr() throws InterruptedException {
+        report("INCR version", run(redis -> {
+            Long version = redis.incr("item:cache:version");
+            // 模拟失效后的回填，新版本的key
+            seedItemListKeys(redis, String.valueOf(version));
+        }));
+    }
+
+    private long[] run(Invalidation invalidation) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            RedisCommands<String, String> redis = writerConn.sync();
+            while (running.get()) {
+                invalidation.invalidate(redis);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(WRITE_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        writer.start();
+        // 读线程模拟其它服务的普通请求，记录每次GET的耗时
+        RedisCommands<String, String> redis = readerConn.sync();
+        long[] latencies = new long[1 << 20];
+        int n = 0;
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        while (System.currentTimeMillis() < deadline && n < latencies.length) {
+            long start = System.nanoTime();
+            redis.get("cart:user:" + (n % OTHER_KEYS));
+            latencies[n++] = System.nanoTime() - start;
+        }
+        running.set(false);
+        writer.join();
+        return Arrays.copyOf(latencies, n);
+    }
+
+    private void report(String mode, long[] latencies) {
+        Arrays.sort(latencies);
+        System.out.printf("%-14s reads=%d p50=%dus p99=%dus p999=%dus max=%dus keys=%d%n", mode, latencies.length,
+                percentile(latencies, 0.50), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[latencies.length - 1] / 1000, readerConn.sync().dbsize());
+    }
+
+    private long percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(p * sorted.length))] / 1000;
+    }
+
+    private void seedItemListKeys(RedisCommands<String, String> redis, String version) {
+        for (int i = 0; i < ITEM_LIST_KEYS / 2; i++) {
+            redis.setex("item:page:" + version + ":" + i + ":20::", ITEM_LIST_TTL_SECONDS, "{}");
+            redis.setex("item:batch:" + version + ":" + i, ITEM_LIST_TTL_SECONDS, "{}");
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        client = RedisClient.create(System.getProperty("bench.redis"));
+        readerConn = client.connect();
+        writerConn = client.connect();
+        RedisCommands<String, String> redis = writerConn.sync();
+        redis.flushdb();
+        // 其它业务的key，KEYS需要扫描整个keyspace
+        writerConn.setAutoFlushCommands(false);
+        for (int i = 0; i < OTHER_KEYS; i++) {
+            writerConn.async().set("cart:user:" + i, "[]");
+        }
+        writerConn.flushCommands();
+        writerConn.setAutoFlushCommands(true);
+        seedItemListKeys(redis, "0");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writerConn != null) {
+            writerConn.sync().flushdb();
+            writerConn.close();
+        }
+        if (readerConn != null) {
+            readerConn.close();
+        }
+        if (client != null) {
+            client.shutdown();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Invalidation {
+        void invalidate(RedisCommands<String, String> redis);
+    }
+}
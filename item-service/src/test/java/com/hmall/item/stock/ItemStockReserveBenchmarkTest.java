@@ -0,0 +1,199 @@
+package com.hmall.item.stock;
+
+import com.hmall.common.exception.BizIllegalException;
+import com.hmall.item.constants.CacheConstants;
+import com.hmall.item.domain.dto.OrderDetailDTO;
+import com.hmall.item.domain.po.Item;
+import com.hmall.item.mapper.ItemMapper;
+import com.hmall.item.service.impl.ItemStockServiceImpl;
+import io.lettuce.core.RedisURI;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 秒杀场景下的库存预扣压测：热点商品库存1000，20000个订单并发抢购，每个订单另带一件普通商品
+ * 对比Lua脚本预扣与"先GET判断再DECRBY"两种方式的吞吐量和超卖数量
+ * <p>
+ * 需要一个可写的Redis，运行方式：
+ * mvn test -pl item-service -am -Dtest=ItemStockReserveBenchmarkTest -Dsurefire.failIfNoSpecifiedTests=false -Dbench.redis=redis://123321@192.168.198.128:6379/15
+ */
+@EnabledIfSystemProperty(named = "bench.redis", matches = ".+")
+public class ItemStockReserveBenchmarkTest {
+
+    private static final long HOT_ITEM_ID = 1L;
+    private static final int HOT_STOCK = 1000;
+    private static final int NORMAL_ITEMS = 100;
+    private static final int NORMAL_STOCK = 1_000_000;
+    private static final int ORDERS = 20_000;
+    private static final int THREADS = 200;
+
+    private LettuceConnectionFactory factory;
+    private StringRedisTemplate redisTemplate;
+    private ItemStockServiceImpl stockService;
+
+    @Test
+    void testLuaReserve() throws InterruptedException {
+        Result result = run(order -> {
+            try {
+                stockService.reserve(null, order);
+                return true;
+            } catch (BizIllegalException e) {
+                return false;
+            }
+        });
+        result.print("lua reserve");
+
+        assertEquals(HOT_STOCK, result.accepted);
+        assertEquals(0, result.oversell);
+        // 每个被接受的订单各写入两条流水，全部落库后数据库与计数器一致
+        assertEquals(result.accepted * 2L, redisTemplate.opsForList().size(CacheConstants.ITEM_STOCK_JOURNAL_KEY));
+    }
+
+    @Test
+    void testGetThenDecr() throws InterruptedException {
+        Result result = run(order -> {
+            for (OrderDetailDTO line : order) {
+                String stock = redisTemplate.opsForValue().get(CacheConstants.ITEM_STOCK_KEY_PREFIX + line.getItemId());
+                if (stock == null || Integer.parseInt(stock) < line.getNum()) {
+                    return false;
+                }
+            }
+            for (OrderDetailDTO line : order) {
+                redisTemplate.opsForValue().decrement(CacheConstants.ITEM_STOCK_KEY_PREFIX + line.getItemId(), line.getNum());
+            }
+            return true;
+        });
+        result.print("get then decr");
+    }
+
+    private Result run(OrderHandler handler) throws InterruptedException {
+        List<List<OrderDetailDTO>> orders = new ArrayList<>(ORDERS);
+        for (int i = 0; i < ORDERS; i++) {
+            long normalItemId = 2 + ThreadLocalRandom.current().nextInt(NORMAL_ITEMS);
+            orders.add(Arrays.asList(
+                    new OrderDetailDTO().setItemId(HOT_ITEM_ID).setNum(1),
+                    new OrderDetailDTO().setItemId(normalItemId).setNum(1)));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(ORDERS);
+        for (List<OrderDetailDTO> order : orders) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    if (handler.handle(order)) {
+                        accepted.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long nanos = System.nanoTime() - begin;
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        int hotLeft = Integer.parseInt(redisTemplate.opsForValue().get(CacheConstants.ITEM_STOCK_KEY_PREFIX + HOT_ITEM_ID));
+        return new Result(accepted.get(), Math.max(0, accepted.get() - HOT_STOCK), hotLeft, nanos);
+    }
+
+    @BeforeEach
+    void setUp() {
+        RedisURI uri = RedisURI.create(System.getProperty("bench.redis"));
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(uri.getHost(), uri.getPort());
+        config.setDatabase(uri.getDatabase());
+        if (uri.getPassword() != null) {
+            config.setPassword(uri.getPassword());
+        }
+        factory = new LettuceConnectionFactory(config);
+        factory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(factory);
+        redisTemplate.execute(connection -> {
+            connection.flushDb();
+            return null;
+        }, true);
+
+        ItemMapper itemMapper = mock(ItemMapper.class);
+        when(itemMapper.selectBatchIds(anyCollection())).thenAnswer(inv -> {
+            Collection<Long> ids = inv.getArgument(0);
+            return ids.stream().map(this::loadItem).collect(Collectors.toList());
+        });
+        stockService = new ItemStockServiceImpl(redisTemplate, itemMapper, new SimpleMeterRegistry());
+        // 对比的实现不会自己加载计数器，提前加载好
+        redisTemplate.opsForValue().set(CacheConstants.ITEM_STOCK_KEY_PREFIX + HOT_ITEM_ID, String.valueOf(HOT_STOCK));
+        for (long id = 2; id < 2 + NORMAL_ITEMS; id++) {
+            redisTemplate.opsForValue().set(CacheConstants.ITEM_STOCK_KEY_PREFIX + id, String.valueOf(NORMAL_STOCK));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (factory != null) {
+            redisTemplate.execute(connection -> {
+                connection.flushDb();
+                return null;
+            }, true);
+            factory.destroy();
+        }
+    }
+
+    private Item loadItem(Long id) {
+        Item item = new Item();
+        item.setId(id);
+        item.setStock(id == HOT_ITEM_ID ? HOT_STOCK : NORMAL_STOCK);
+        return item;
+    }
+
+    @FunctionalInterface
+    private interface OrderHandler {
+        boolean handle(List<OrderDetailDTO> order) throws InterruptedException;
+    }
+
+    private static class Result {
+        final int accepted;
+        final int oversell;
+        final int hotLeft;
+        final long nanos;
+
+        Result(int accepted, int oversell, int hotLeft, long nanos) {
+            this.accepted = accepted;
+            this.oversell = oversell;
+            this.hotLeft = hotLeft;
+            this.nanos = nanos;
+        }
+
+        void print(String mode) {
+            System.out.printf("%-14s orders=%d accepted=%d oversell=%d hotStockLeft=%d elapsed=%dms orders/sec=%.0f%n",
+                    mode, ORDERS, accepted, oversell, hotLeft, TimeUnit.NANOSECONDS.toMillis(nanos),
+                    ORDERS * 1e9 / nanos);
+        }
+    }
+}
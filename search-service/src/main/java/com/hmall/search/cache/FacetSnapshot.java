@@ -0,0 +1,201 @@
+package com.hmall.search.cache;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmall.search.config.SearchCacheProperties;
+import com.hmall.search.constants.SearchConstants;
+import com.hmall.search.domain.query.ItemPageQuery;
+import com.hmall.search.domain.vo.CategoryAndBrandVo;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 默认列表页的分类、品牌聚合快照
+ * 没有关键字、品牌、价格条件时，聚合结果只取决于索引内容，定时用一次ES请求算出
+ * 全部商品以及每个分类下的聚合，这两种请求直接从内存返回
+ * <p>
+ * 快照超过最长存活时间，或索引代数变化且距上次刷新超过最小间隔时重建
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FacetSnapshot {
+
+    private static final String CATEGORY_AGG = "category_agg";
+    private static final String BRAND_AGG = "brand_agg";
+    private static final String CATEGORY_FIELD = "category.keyword";
+    private static final String BRAND_FIELD = "brand.keyword";
+    /**
+     * 与SearchServiceImpl返回的聚合条数一致
+     */
+    private static final int FACET_SIZE = 10;
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final MeterRegistry meterRegistry;
+    private final SearchCacheProperties properties;
+    private final SearchResultCache searchResultCache;
+
+    private volatile Snapshot snapshot;
+    private Timer refreshTimer;
+
+    @PostConstruct
+    public void init() {
+        refreshTimer = meterRegistry.timer("search.facet.snapshot.refresh");
+        Gauge.builder("search.facet.snapshot.age", this, FacetSnapshot::ageSeconds)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return 快照能回答的查询返回聚合结果，否则返回null
+     */
+    public CategoryAndBrandVo lookup(ItemPageQuery query) {
+        Snapshot current = snapshot;
+        if (current == null || !Boolean.TRUE.equals(properties.getFacetSnapshotEnabled()) || !snapshotable(query)) {
+            return null;
+        }
+        CategoryAndBrandVo result;
+        if (StrUtil.isBlank(query.getCategory())) {
+            result = current.all;
+        } else {
+            result = current.byCategory.get(query.getCategory().trim());
+            if (result == null && current.complete) {
+                // 全部分类都在快照中，不存在的分类没有商品
+                result = current.empty;
+            }
+        }
+        meterRegistry.counter("search.facet.snapshot.requests", "result", result == null ? "miss" : "hit").increment();
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${hm.search.cache.facet-snapshot-check-millis:1000}")
+    public void refreshIfStale() {
+        if (!Boolean.TRUE.equals(properties.getFacetSnapshotEnabled())) {
+            return;
+        }
+        long generation = searchResultCache.getGeneration();
+        Snapshot current = snapshot;
+        long age = current == null ? Long.MAX_VALUE : System.currentTimeMillis() - current.builtAt;
+        boolean stale = age >= properties.getFacetSnapshotMaxAge().toMillis()
+                || (current.generation != generation && age >= properties.getFacetSnapshotMinInterval().toMillis());
+        if (!stale) {
+            return;
+        }
+        long begin = System.nanoTime();
+        try {
+            snapshot = build(generation);
+        } catch (Exception e) {
+            // 刷新失败时继续使用旧快照，快照年龄指标会持续增长
+            log.warn("刷新分类、品牌聚合快照失败:{}", e.getMessage());
+            meterRegistry.counter("search.facet.snapshot.failures").increment();
+        } finally {
+            refreshTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 与SearchServiceImpl.getFilters的条件一致，价格只有上下限都传时才生效
+     */
+    private static boolean snapshotable(ItemPageQuery query) {
+        return StrUtil.isBlank(query.getKey())
+                && StrUtil.isBlank(query.getBrand())
+                && (query.getMinPrice() == null || query.getMaxPrice() == null);
+    }
+
+    private Snapshot build(long generation) throws IOException {
+        SearchRequest request = new SearchRequest(SearchConstants.ITEM_INDEX_NAME);
+        request.source().size(0)
+                .aggregation(AggregationBuilders.terms(CATEGORY_AGG).field(CATEGORY_FIELD)
+                        .size(properties.getFacetSnapshotMaxCategories())
+                        .subAggregation(AggregationBuilders.terms(BRAND_AGG).field(BRAND_FIELD).size(FACET_SIZE)))
+                .aggregation(AggregationBuilders.terms(BRAND_AGG).field(BRAND_FIELD).size(FACET_SIZE));
+        SearchResponse response = restHighLevelClient.search(request, RequestOptions.DEFAULT);
+        Terms categories = response.getAggregations().get(CATEGORY_AGG);
+        Terms brands = response.getAggregations().get(BRAND_AGG);
+
+        Map<String, CategoryAndBrandVo> byCategory = new HashMap<>(categories.getBuckets().size() * 4 / 3 + 1);
+        List<Terms.Bucket> topCategories = new ArrayList<>(FACET_SIZE);
+        for (Terms.Bucket bucket : categories.getBuckets()) {
+            if (topCategories.size() < FACET_SIZE) {
+                topCategories.add(bucket);
+            }
+            byCategory.put(bucket.getKeyAsString(), facets(Collections.singletonList(bucket),
+                    ((Terms) bucket.getAggregations().get(BRAND_AGG)).getBuckets()));
+        }
+        Snapshot built = new Snapshot(facets(topCategories, brands.getBuckets()), byCategory,
+                facets(Collections.emptyList(), Collections.emptyList()),
+                categories.getSumOfOtherDocCounts() == 0, generation, System.currentTimeMillis());
+        log.debug("分类、品牌聚合快照已刷新，分类数:{}，索引代数:{}", byCategory.size(), generation);
+        return built;
+    }
+
+    private static CategoryAndBrandVo facets(List<? extends Terms.Bucket> categories, List<? extends Terms.Bucket> brands) {
+        CategoryAndBrandVo vo = new CategoryAndBrandVo();
+        vo.setCategory(new ArrayList<>(categories.size()));
+        vo.setCategoryCount(new LinkedHashMap<>(categories.size() * 4 / 3 + 1));
+        for (Terms.Bucket bucket : categories) {
+            vo.getCategory().add(bucket.getKeyAsString());
+            vo.getCategoryCount().put(bucket.getKeyAsString(), bucket.getDocCount());
+        }
+        vo.setBrand(new ArrayList<>(brands.size()));
+        vo.setBrandCount(new LinkedHashMap<>(brands.size() * 4 / 3 + 1));
+        for (Terms.Bucket bucket : brands) {
+            vo.getBrand().add(bucket.getKeyAsString());
+            vo.getBrandCount().put(bucket.getKeyAsString(), bucket.getDocCount());
+        }
+        return vo;
+    }
+
+    private double ageSeconds() {
+        Snapshot current = snapshot;
+        return current == null ? Double.NaN : (System.currentTimeMillis() - current.builtAt) / 1000.0;
+    }
+
+    private static class Snapshot {
+        /**
+         * 不带任何条件的聚合
+         */
+        private final CategoryAndBrandVo all;
+        /**
+         * 只带分类条件的聚合，key为分类名
+         */
+        private final Map<String, CategoryAndBrandVo> byCategory;
+        private final CategoryAndBrandVo empty;
+        /**
+         * 分类的terms聚合是否包含了全部分类
+         */
+        private final boolean complete;
+        private final long generation;
+        private final long builtAt;
+
+        Snapshot(CategoryAndBrandVo all, Map<String, CategoryAndBrandVo> byCategory, CategoryAndBrandVo empty,
+                 boolean complete, long generation, long builtAt) {
+            this.all = all;
+            this.byCategory = byCategory;
+            this.empty = empty;
+            this.complete = complete;
+            this.generation = generation;
+            this.builtAt = builtAt;
+        }
+    }
+}
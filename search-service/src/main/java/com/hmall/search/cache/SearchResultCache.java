@@ -0,0 +1,280 @@
+package com.hmall.search.cache;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmall.search.config.SearchCacheProperties;
+import com.hmall.search.constants.SearchConstants;
+import com.hmall.search.domain.query.ItemPageQuery;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 搜索结果缓存
+ * L1: 进程内Caffeine缓存，L2: 可选的Redis缓存，key为规范化后的查询条件
+ * <p>
+ * 搜索结果的key中带有索引代数，item-service每次写入索引后递增代数，旧代数的结果不再被读取；
+ * 分类、品牌聚合变化很慢，单独缓存，只按较长的TTL过期
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SearchResultCache {
+
+    private static final String TYPE_FACET = "facet";
+    private static final String RESULT_LOCAL = "local";
+    private static final String RESULT_REDIS = "redis";
+    private static final String RESULT_MISS = "miss";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final SearchCacheProperties properties;
+
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long flushedAt;
+    private Cache<String, Object> resultCache;
+    private Cache<String, Object> facetCache;
+
+    @PostConstruct
+    public void init() {
+        resultCache = Caffeine.newBuilder()
+                .maximumSize(properties.getLocalMaxSize())
+                .expireAfterWrite(properties.getResultTtl())
+                .recordStats()
+                .build();
+        facetCache = Caffeine.newBuilder()
+                .maximumSize(properties.getLocalMaxSize())
+                .expireAfterWrite(properties.getFacetTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, resultCache, "search.result");
+        CaffeineCacheMetrics.monitor(meterRegistry, facetCache, "search.facet");
+    }
+
+    /**
+     * 查询搜索结果，游标翻页、pit和深分页不缓存
+     *
+     * @param type 结果类型，不同接口的结果分开缓存
+     * @param javaType 结果的类型，用于从Redis反序列化
+     */
+    public <T> T getResult(String type, ItemPageQuery query, JavaType javaType, Loader<T> loader) throws IOException {
+        if (!cacheable(query)) {
+            return loader.load();
+        }
+        String prefix = type + ":" + generation.get() + ":";
+        return get(resultCache, type, prefix, normalize(query, true), properties.getResultTtl(), javaType, loader);
+    }
+
+    /**
+     * 异步查询搜索结果，命中时直接返回，未命中时查询完成后写入缓存
+     * 与同步查询不同，同一个key的并发未命中不合并
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> getResultAsync(String type, ItemPageQuery query, JavaType javaType,
+                                                   Supplier<CompletableFuture<T>> loader) {
+        if (!cacheable(query)) {
+            return loader.get();
+        }
+        String prefix = type + ":" + generation.get() + ":";
+        String normalized = normalize(query, true);
+        String key = prefix + normalized;
+        String redisKey = SearchConstants.SEARCH_CACHE_KEY_PREFIX + prefix + DigestUtil.md5Hex(normalized);
+        Object value = resultCache.getIfPresent(key);
+        if (value != null) {
+            record(type, RESULT_LOCAL);
+            return CompletableFuture.completedFuture((T) value);
+        }
+        T cached = readRedis(redisKey, javaType);
+        if (cached != null) {
+            resultCache.put(key, cached);
+            record(type, RESULT_REDIS);
+            return CompletableFuture.completedFuture(cached);
+        }
+        long begin = System.nanoTime();
+        return loader.get().thenApply(loaded -> {
+            loadTimer(type).record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+            record(type, RESULT_MISS);
+            resultCache.put(key, loaded);
+            writeRedis(redisKey, loaded, properties.getResultTtl());
+            return loaded;
+        });
+    }
+
+    /**
+     * 查询分类、品牌聚合，与分页、排序无关
+     */
+    public <T> T getFacets(ItemPageQuery query, Class<T> type, Loader<T> loader) throws IOException {
+        if (!Boolean.TRUE.equals(properties.getEnabled())) {
+            return loader.load();
+        }
+        return get(facetCache, TYPE_FACET, TYPE_FACET + ":", normalize(query, false),
+                properties.getFacetTtl(), objectMapper.constructType(type), loader);
+    }
+
+    /**
+     * 当前的索引代数
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * 定时读取索引代数，代数变化后清空本地的搜索结果
+     * 距上次清空不足generation-min-flush-interval时先沿用旧代数，到期后再切换，变更不会丢失
+     */
+    @Scheduled(fixedDelayString = "${hm.search.cache.generation-refresh-millis:1000}")
+    public void refreshGeneration() {
+        try {
+            String value = stringRedisTemplate.opsForValue().get(SearchConstants.INDEX_GENERATION_KEY);
+            long latest = value == null ? 0 : Long.parseLong(value);
+            if (generation.get() == latest) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (now - flushedAt < properties.getGenerationMinFlushInterval().toMillis()) {
+                meterRegistry.counter("search.cache.flush", "result", "deferred").increment();
+                return;
+            }
+            generation.set(latest);
+            flushedAt = now;
+            resultCache.invalidateAll();
+            meterRegistry.counter("search.cache.flush", "result", "flushed").increment();
+        } catch (Exception e) {
+            // 读取失败时结果仍会按TTL过期
+            log.warn("读取商品索引代数失败:{}", e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(Cache<String, Object> cache, String type, String prefix, String normalized, Duration ttl,
+                      JavaType javaType, Loader<T> loader) throws IOException {
+        String redisKey = SearchConstants.SEARCH_CACHE_KEY_PREFIX + prefix + DigestUtil.md5Hex(normalized);
+        String[] result = {RESULT_LOCAL};
+        Object value;
+        try {
+            // 同一个key的并发未命中只有一个线程查询
+            value = cache.get(prefix + normalized, k -> {
+                T cached = readRedis(redisKey, javaType);
+                if (cached != null) {
+                    result[0] = RESULT_REDIS;
+                    return cached;
+                }
+                result[0] = RESULT_MISS;
+                T loaded;
+                long begin = System.nanoTime();
+                try {
+                    loaded = loader.load();
+                } catch (IOException e) {
+                    // 查询失败不缓存
+                    throw new UncheckedIOException(e);
+                }
+                loadTimer(type).record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+                writeRedis(redisKey, loaded, ttl);
+                return loaded;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        record(type, result[0]);
+        return (T) value;
+    }
+
+    private boolean cacheable(ItemPageQuery query) {
+        return Boolean.TRUE.equals(properties.getEnabled())
+                && StrUtil.isEmpty(query.getSearchAfter())
+                && !Boolean.TRUE.equals(query.getPit())
+                && query.getPageNo() <= properties.getMaxPageNo();
+    }
+
+    private void record(String type, String result) {
+        meterRegistry.counter("search.cache.requests", "type", type, "result", result).increment();
+        if (!RESULT_MISS.equals(result)) {
+            // 按未命中时的平均查询耗时估算节省的时间
+            meterRegistry.counter("search.cache.saved", "type", type).increment(loadTimer(type).mean(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private <T> T readRedis(String redisKey, JavaType javaType) {
+        if (!Boolean.TRUE.equals(properties.getRedisEnabled())) {
+            return null;
+        }
+        try {
+            String json = stringRedisTemplate.opsForValue().get(redisKey);
+            return json == null ? null : objectMapper.readValue(json, javaType);
+        } catch (Exception e) {
+            log.warn("读取Redis搜索缓存失败:{}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeRedis(String redisKey, Object value, Duration ttl) {
+        if (!Boolean.TRUE.equals(properties.getRedisEnabled())) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForValue().set(redisKey, objectMapper.writeValueAsString(value), ttl);
+        } catch (Exception e) {
+            log.warn("写入Redis搜索缓存失败:{}", e.getMessage());
+        }
+    }
+
+    private Timer loadTimer(String type) {
+        return meterRegistry.timer("search.cache.load", "type", type);
+    }
+
+    /**
+     * 规范化查询条件：去掉关键字首尾和重复的空白并转为小写，空字符串视为未传，同样的查询得到同样的key
+     *
+     * @param paging 是否包含分页、排序条件
+     */
+    static String normalize(ItemPageQuery query, boolean paging) {
+        StringBuilder sb = new StringBuilder()
+                .append("k=").append(normalizeText(query.getKey()))
+                .append("&c=").append(StrUtil.trimToEmpty(query.getCategory()))
+                .append("&b=").append(StrUtil.trimToEmpty(query.getBrand()));
+        if (query.getMinPrice() != null && query.getMaxPrice() != null) {
+            sb.append("&p=").append(query.getMinPrice()).append('-').append(query.getMaxPrice());
+        }
+        if (paging) {
+            sb.append("&n=").append(query.isCursorMode() ? 1 : query.getPageNo())
+                    .append("&s=").append(query.getPageSize())
+                    .append("&o=").append(StrUtil.trimToEmpty(query.getSortBy()))
+                    .append(Boolean.FALSE.equals(query.getIsAsc()) ? ",desc" : ",asc")
+                    .append("&cur=").append(query.isCursorMode())
+                    .append("&approx=").append(Boolean.TRUE.equals(query.getApproximateTotal()))
+                    .append("&r=").append(StrUtil.trimToEmpty(query.getRankingProfile()));
+        }
+        return sb.toString();
+    }
+
+    private static String normalizeText(String text) {
+        return StrUtil.isBlank(text) ? "" : text.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+
+    /**
+     * 未命中时查询ES
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws IOException;
+    }
+}
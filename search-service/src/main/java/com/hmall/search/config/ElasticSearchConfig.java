@@ -6,14 +6,28 @@ import org.elasticsearch.client.RestHighLevelClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class ElasticSearchConfig {
     private static final String HOST = "http://192.168.198.128:9200";
 
     @Bean
-    public RestHighLevelClient restHighLevelClient() {
+    public RestHighLevelClient restHighLevelClient(SearchProperties searchProperties) {
         return new RestHighLevelClient(RestClient.builder(
                 HttpHost.create(HOST)
-        ));
+        ).setHttpClientConfigCallback(builder -> builder
+                .setMaxConnTotal(searchProperties.getEsMaxConnTotal())
+                .setMaxConnPerRoute(searchProperties.getEsMaxConnPerRoute())));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService searchCallbackExecutor(SearchProperties searchProperties) {
+        // 队列满时拒绝，请求返回降级结果
+        int threads = searchProperties.getAsyncCallbackThreads();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(10000));
     }
 } 
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.hmall.search.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 搜索结果缓存配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hm.search.cache")
+public class SearchCacheProperties {
+    /**
+     * 是否缓存搜索结果
+     */
+    private Boolean enabled = true;
+    /**
+     * 是否启用Redis二级缓存，多个节点共享缓存结果
+     */
+    private Boolean redisEnabled = false;
+    /**
+     * 本地缓存的最大条目数，结果和聚合各自独立
+     */
+    private Long localMaxSize = 2000L;
+    /**
+     * 搜索结果的缓存时间，索引代数变化时提前失效
+     */
+    private Duration resultTtl = Duration.ofSeconds(10);
+    /**
+     * 分类、品牌聚合的缓存时间，不随索引代数失效
+     */
+    private Duration facetTtl = Duration.ofMinutes(5);
+    /**
+     * 只缓存前几页，深分页很少重复
+     */
+    private Integer maxPageNo = 5;
+    /**
+     * 从Redis读取索引代数的间隔
+     */
+    private Long generationRefreshMillis = 1000L;
+    /**
+     * 索引代数变化后清空本地结果的最小间隔，商品频繁变更时避免缓存反复被清空，期间结果最多旧这么久
+     */
+    private Duration generationMinFlushInterval = Duration.ofSeconds(5);
+    /**
+     * 是否用内存中的聚合快照回答无条件和只带分类条件的聚合请求
+     */
+    private Boolean facetSnapshotEnabled = true;
+    /**
+     * 快照的最长存活时间，到期后无论索引是否变化都重建
+     */
+    private Duration facetSnapshotMaxAge = Duration.ofMinutes(5);
+    /**
+     * 索引代数变化后重建快照的最小间隔，商品频繁变更时避免反复聚合全索引
+     */
+    private Duration facetSnapshotMinInterval = Duration.ofSeconds(30);
+    /**
+     * 检查快照是否需要重建的间隔
+     */
+    private Long facetSnapshotCheckMillis = 1000L;
+    /**
+     * 快照最多包含的分类数，超出的分类查询ES
+     */
+    private Integer facetSnapshotMaxCategories = 1000;
+}
@@ -0,0 +1,54 @@
+package com.hmall.search.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 商品搜索配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hm.search")
+public class SearchProperties {
+    /**
+     * 游标分页时point in time的保活时间，每翻一页续期一次
+     */
+    private Duration pitKeepAlive = Duration.ofMinutes(1);
+    /**
+     * 近似总数模式下最多精确统计的命中数，超过后只返回下限
+     */
+    private Integer approximateTotalUpTo = 1000;
+    /**
+     * 异步搜索的超时时间，超时后返回降级结果
+     */
+    private Duration asyncTimeout = Duration.ofSeconds(1);
+    /**
+     * 同时进行的异步ES查询数上限，超过后直接返回降级结果
+     */
+    private Integer asyncMaxInFlight = 1000;
+    /**
+     * 解析异步查询结果的线程数，不在ES客户端的IO线程上解析
+     */
+    private Integer asyncCallbackThreads = 4;
+    /**
+     * ES客户端连接池大小，默认每个节点只有10个连接，不够支撑大量并发的异步查询
+     */
+    private Integer esMaxConnTotal = 200;
+    private Integer esMaxConnPerRoute = 200;
+    /**
+     * 每个前缀返回的补全建议数
+     */
+    private Integer suggestSize = 10;
+    /**
+     * 前缀缓存的条数和过期时间，补全建议按销量排序，短时间内变化不大
+     */
+    private Integer suggestCacheSize = 10000;
+    private Duration suggestCacheTtl = Duration.ofMinutes(5);
+    /**
+     * 超过该长度的前缀会被截断
+     */
+    private Integer suggestMaxPrefixLength = 20;
+}
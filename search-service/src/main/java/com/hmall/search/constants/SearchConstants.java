@@ -0,0 +1,36 @@
+package com.hmall.search.constants;
+
+public interface SearchConstants {
+    /**
+     * 商品索引库名
+     */
+    String ITEM_INDEX_NAME = "items";
+    /**
+     * 不使用pit时游标分页的最后一个排序字段，保证排序值唯一
+     * 索引mapping中id是keyword，按字符串排序，游标中的排序值也是字符串
+     */
+    String ITEM_TIEBREAKER_FIELD = "id";
+    /**
+     * 使用pit时游标分页的最后一个排序字段，ES按分片和文档序号排序，不读取字段的doc values
+     */
+    String ITEM_PIT_TIEBREAKER_FIELD = "_shard_doc";
+    /**
+     * 自动补全的completion字段，由item-service同步商品时写入
+     */
+    String ITEM_SUGGEST_FIELD = "suggestion";
+    /**
+     * 商品索引代数，item-service每次写入索引后递增
+     */
+    String INDEX_GENERATION_KEY = "search:index:generation";
+    /**
+     * Redis中搜索结果缓存的key前缀
+     * 格式: search:cache:{类型}:{索引代数}:{查询条件摘要}
+     */
+    String SEARCH_CACHE_KEY_PREFIX = "search:cache:";
+    /**
+     * 未登录用户的客户端id，搜索排序方案按它分流，同一客户端总是落在同一方案
+     * 优先读取请求头，没有时读取cookie，都没有时生成一个写入cookie
+     */
+    String RANKING_CLIENT_HEADER = "X-Client-Id";
+    String RANKING_CLIENT_COOKIE = "hm_cid";
+}
@@ -1,15 +1,21 @@
 package com.hmall.search.controller;
 
 import com.hmall.common.domain.PageDTO;
-import com.hmall.search.domain.po.ItemDoc;
 import com.hmall.search.domain.query.ItemPageQuery;
 import com.hmall.search.domain.vo.CategoryAndBrandVo;
+import com.hmall.search.domain.vo.CursorPageVO;
+import com.hmall.search.domain.vo.ItemListVO;
+import com.hmall.search.domain.vo.ItemSearchVO;
 import com.hmall.search.service.ISearchService;
+import com.hmall.search.service.ISuggestService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 @Api(tags = "搜索相关接口")
 @RestController
 @RequestMapping("/search")
@@ -17,10 +23,11 @@ import org.springframework.web.bind.annotation.*;
 public class SearchController {
 
     private final ISearchService searchService;
+    private final ISuggestService suggestService;
 
     @ApiOperation("搜索商品")
     @GetMapping("/list")
-    public PageDTO<ItemDoc> search(ItemPageQuery query) {
+    public PageDTO<ItemListVO> search(ItemPageQuery query) {
         // 分页查询
 //        Page<Item> result = itemService.lambdaQuery()
 //                .like(StrUtil.isNotBlank(query.getKey()), Item::getName, query.getKey())
@@ -38,4 +45,22 @@ public class SearchController {
     public CategoryAndBrandVo getFilters(@RequestBody ItemPageQuery query) {
         return searchService.getFilters(query);
     }
+
+    @ApiOperation("搜索商品（异步）")
+    @GetMapping("/list-async")
+    public CompletableFuture<CursorPageVO<ItemListVO>> searchAsync(ItemPageQuery query) {
+        return searchService.esSearchAsync(query);
+    }
+
+    @ApiOperation("搜索商品并返回分类、品牌聚合")
+    @GetMapping("/list-with-filters")
+    public CompletableFuture<ItemSearchVO> searchWithFilters(ItemPageQuery query) {
+        return searchService.searchAsync(query);
+    }
+
+    @ApiOperation("搜索框自动补全")
+    @GetMapping("/suggest")
+    public List<String> suggest(@RequestParam("key") String key) {
+        return suggestService.suggest(key);
+    }
 }
@@ -0,0 +1,28 @@
+package com.hmall.search.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 游标分页的游标内容，序列化后以Base64编码返回给前端，对前端不透明
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchCursor {
+    /**
+     * 上一页最后一条数据的排序值，最后一个是商品id
+     */
+    private List<Object> sort;
+    /**
+     * point in time id，未开启时为空
+     */
+    private String pit;
+    /**
+     * 第一页使用的排序方案，翻页时保持不变
+     */
+    private String ranking;
+}
@@ -1,5 +1,6 @@
 package com.hmall.search.domain.query;
 
+import cn.hutool.core.util.StrUtil;
 import com.hmall.common.domain.PageQuery;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
@@ -20,4 +21,18 @@ public class ItemPageQuery extends PageQuery {
     private Integer minPrice;
     @ApiModelProperty("价格最大值")
     private Integer maxPrice;
+    @ApiModelProperty("是否使用游标分页，开启后忽略页码，翻页时传入上一页返回的searchAfter")
+    private Boolean cursor;
+    @ApiModelProperty("上一页返回的游标")
+    private String searchAfter;
+    @ApiModelProperty("游标分页时是否使用point in time，保证翻页过程中数据一致")
+    private Boolean pit;
+    @ApiModelProperty("是否只统计近似总数")
+    private Boolean approximateTotal;
+    @ApiModelProperty("排序方案，不传时按流量比例分配")
+    private String rankingProfile;
+
+    public boolean isCursorMode() {
+        return Boolean.TRUE.equals(cursor) || StrUtil.isNotEmpty(searchAfter);
+    }
 }
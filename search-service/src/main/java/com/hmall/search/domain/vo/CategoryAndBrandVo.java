@@ -3,9 +3,15 @@ package com.hmall.search.domain.vo;
 import lombok.Data;
 
 import java.util.List;
+import java.util.Map;
 
 @Data
 public class CategoryAndBrandVo {
     private List<String> category;
     private List<String> brand;
+    /**
+     * 各分类、品牌的商品数，顺序与列表一致
+     */
+    private Map<String, Long> categoryCount;
+    private Map<String, Long> brandCount;
 }
@@ -0,0 +1,19 @@
+package com.hmall.search.domain.vo;
+
+import com.hmall.common.domain.PageDTO;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+@EqualsAndHashCode(callSuper = true)
+@Data
+@ApiModel(description = "游标分页结果")
+public class CursorPageVO<T> extends PageDTO<T> {
+    @ApiModelProperty("下一页的游标，为空表示没有下一页")
+    private String searchAfter;
+    @ApiModelProperty("总数是否精确，为false时total只是下限")
+    private Boolean totalAccurate;
+    @ApiModelProperty("是否是降级结果，ES超时或不可用时返回空列表")
+    private Boolean degraded;
+}
@@ -0,0 +1,27 @@
+package com.hmall.search.domain.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+/**
+ * 搜索列表中的商品，只包含商品卡片展示的字段
+ */
+@Data
+@ApiModel(description = "商品列表项")
+public class ItemListVO {
+    @ApiModelProperty("商品id")
+    private String id;
+    @ApiModelProperty("商品名称，命中关键字时带高亮标签")
+    private String name;
+    @ApiModelProperty("价格（分）")
+    private Integer price;
+    @ApiModelProperty("商品图片")
+    private String image;
+    @ApiModelProperty("销量")
+    private Integer sold;
+    @ApiModelProperty("评论数")
+    private Integer commentCount;
+    @ApiModelProperty("是否是推广广告，true/false")
+    private Boolean isAD;
+}
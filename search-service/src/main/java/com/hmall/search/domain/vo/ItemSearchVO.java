@@ -0,0 +1,18 @@
+package com.hmall.search.domain.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.util.List;
+
+@EqualsAndHashCode(callSuper = true)
+@Data
+@ApiModel(description = "商品搜索结果及分类、品牌聚合")
+public class ItemSearchVO extends CursorPageVO<ItemListVO> {
+    @ApiModelProperty("分类，游标分页时只有第一页返回")
+    private List<String> category;
+    @ApiModelProperty("品牌，游标分页时只有第一页返回")
+    private List<String> brand;
+}
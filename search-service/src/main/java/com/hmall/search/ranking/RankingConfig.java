@@ -0,0 +1,83 @@
+package com.hmall.search.ranking;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nacos中的排序方案配置，例如：
+ * <pre>
+ * {
+ *   "defaultProfile": "default",
+ *   "split": {"default": 90, "sold_recency": 10},
+ *   "profiles": [
+ *     {"name": "default", "boosts": [{"field": "isAD", "value": true, "weight": 10}]},
+ *     {"name": "sold_recency", "scoreMode": "sum", "boostMode": "sum",
+ *      "boosts": [{"field": "isAD", "value": true, "weight": 10}],
+ *      "soldDecay": {"function": "exp", "origin": 100000, "scale": 20000, "decay": 0.5, "weight": 3},
+ *      "recencyDecay": {"function": "gauss", "origin": "now", "scale": "7d", "offset": "1d", "decay": 0.5, "weight": 2}}
+ *   ]
+ * }
+ * </pre>
+ */
+@Data
+public class RankingConfig {
+    /**
+     * 未指定方案、也不在流量分配中时使用的方案
+     */
+    private String defaultProfile;
+    /**
+     * 各方案的流量权重，为空时全部流量使用默认方案
+     */
+    private Map<String, Integer> split = new LinkedHashMap<>();
+    private List<Profile> profiles = new ArrayList<>();
+
+    @Data
+    public static class Profile {
+        private String name;
+        /**
+         * 各打分函数的合并方式：multiply、sum、avg、first、max、min，默认与ES一致
+         */
+        private String scoreMode = "multiply";
+        /**
+         * 函数得分与查询得分的合并方式：multiply、replace、sum、avg、max、min，默认与原来的规则一致
+         */
+        private String boostMode = "sum";
+        private Float maxBoost;
+        /**
+         * 满足条件时加固定权重，例如广告
+         */
+        private List<Boost> boosts = new ArrayList<>();
+        /**
+         * 按销量衰减，销量离origin越远得分越低
+         */
+        private Decay soldDecay;
+        /**
+         * 按更新时间衰减，越久没更新得分越低
+         */
+        private Decay recencyDecay;
+    }
+
+    @Data
+    public static class Boost {
+        private String field;
+        private Object value;
+        private Float weight;
+    }
+
+    @Data
+    public static class Decay {
+        /**
+         * gauss、exp、linear
+         */
+        private String function = "gauss";
+        private Object origin;
+        private Object scale;
+        private Object offset;
+        private Double decay = 0.5;
+        private Float weight = 1f;
+    }
+}
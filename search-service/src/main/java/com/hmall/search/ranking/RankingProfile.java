@@ -0,0 +1,41 @@
+package com.hmall.search.ranking;
+
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.lucene.search.function.FunctionScoreQuery;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.functionscore.FunctionScoreQueryBuilder;
+
+/**
+ * 编译后的排序方案，打分函数在配置变更时构造好，多个请求共享，请求时只需包装查询条件
+ */
+public class RankingProfile {
+
+    private final String name;
+    private final FunctionScoreQueryBuilder.FilterFunctionBuilder[] functions;
+    private final FunctionScoreQuery.ScoreMode scoreMode;
+    private final CombineFunction boostMode;
+    private final Float maxBoost;
+
+    RankingProfile(String name, FunctionScoreQueryBuilder.FilterFunctionBuilder[] functions,
+                   FunctionScoreQuery.ScoreMode scoreMode, CombineFunction boostMode, Float maxBoost) {
+        this.name = name;
+        this.functions = functions;
+        this.scoreMode = scoreMode;
+        this.boostMode = boostMode;
+        this.maxBoost = maxBoost;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public FunctionScoreQueryBuilder apply(QueryBuilder query) {
+        FunctionScoreQueryBuilder builder = new FunctionScoreQueryBuilder(query, functions)
+                .scoreMode(scoreMode)
+                .boostMode(boostMode);
+        if (maxBoost != null) {
+            builder.maxBoost(maxBoost);
+        }
+        return builder;
+    }
+}
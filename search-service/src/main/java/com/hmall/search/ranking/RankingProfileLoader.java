@@ -0,0 +1,73 @@
+package com.hmall.search.ranking;
+
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.cloud.nacos.NacosConfigManager;
+import com.alibaba.nacos.api.config.listener.Listener;
+import com.alibaba.nacos.api.exception.NacosException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.Executor;
+
+/**
+ * 从Nacos加载排序方案，配置变更时重新编译并整体替换，不需要重新发布
+ * 配置有误时保留上一份可用的方案
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RankingProfileLoader {
+
+    private final NacosConfigManager nacosConfigManager;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    private final String dataId = "search-ranking.json";
+    private final String group = "DEFAULT_GROUP";
+
+    private volatile RankingProfiles profiles = RankingProfiles.builtin();
+
+    @PostConstruct
+    public void initRankingConfigListener() throws NacosException {
+        // 1.启动时拉取一次配置，并添加配置监听器
+        String configInfo = nacosConfigManager.getConfigService()
+                .getConfigAndSignListener(dataId, group, 5000, new Listener() {
+                    @Override
+                    public Executor getExecutor() {
+                        return null;
+                    }
+
+                    @Override
+                    public void receiveConfigInfo(String configInfo) {
+                        // 2.配置变更，重新编译
+                        updateConfigInfo(configInfo);
+                    }
+                });
+        // 3.没有配置时使用内置方案
+        updateConfigInfo(configInfo);
+    }
+
+    public void updateConfigInfo(String configInfo) {
+        if (StrUtil.isBlank(configInfo)) {
+            log.info("未配置{}，使用内置排序方案", dataId);
+            profiles = RankingProfiles.builtin();
+            return;
+        }
+        try {
+            profiles = RankingProfiles.compile(objectMapper.readValue(configInfo, RankingConfig.class));
+            meterRegistry.counter("search.ranking.reload", "result", "success").increment();
+            log.info("排序方案已更新：{}", configInfo);
+        } catch (Exception e) {
+            meterRegistry.counter("search.ranking.reload", "result", "failure").increment();
+            log.error("排序方案配置有误，继续使用上一份配置", e);
+        }
+    }
+
+    public RankingProfiles current() {
+        return profiles;
+    }
+}
@@ -0,0 +1,203 @@
+package com.hmall.search.ranking;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import cn.hutool.core.util.StrUtil;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.lucene.search.function.FunctionScoreQuery;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.functionscore.DecayFunctionBuilder;
+import org.elasticsearch.index.query.functionscore.FunctionScoreQueryBuilder;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 一份配置编译后的全部排序方案，不可变，配置变更时整体替换
+ */
+public class RankingProfiles {
+
+    public static final String DEFAULT_PROFILE = "default";
+    private static final String SOLD_FIELD = "sold";
+    private static final String RECENCY_FIELD = "updateTime";
+
+    private final Map<String, RankingProfile> profiles;
+    private final RankingProfile defaultProfile;
+    /**
+     * 流量分配：splitBounds[i]为前i个方案的累计权重
+     */
+    private final RankingProfile[] splitProfiles;
+    private final int[] splitBounds;
+
+    private RankingProfiles(Map<String, RankingProfile> profiles, RankingProfile defaultProfile,
+                            RankingProfile[] splitProfiles, int[] splitBounds) {
+        this.profiles = profiles;
+        this.defaultProfile = defaultProfile;
+        this.splitProfiles = splitProfiles;
+        this.splitBounds = splitBounds;
+    }
+
+    /**
+     * 没有配置时的内置方案，与原来写死的规则一致：广告加权10，与相关性得分相加
+     */
+    public static RankingProfiles builtin() {
+        RankingConfig.Boost ad = new RankingConfig.Boost();
+        ad.setField("isAD");
+        ad.setValue(true);
+        ad.setWeight(10f);
+        RankingConfig.Profile profile = new RankingConfig.Profile();
+        profile.setName(DEFAULT_PROFILE);
+        profile.getBoosts().add(ad);
+        RankingConfig config = new RankingConfig();
+        config.getProfiles().add(profile);
+        return compile(config);
+    }
+
+    /**
+     * 校验并编译配置，配置有误时抛出IllegalArgumentException
+     */
+    public static RankingProfiles compile(RankingConfig config) {
+        if (config.getProfiles() == null || config.getProfiles().isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个排序方案");
+        }
+        Map<String, RankingProfile> profiles = new HashMap<>();
+        for (RankingConfig.Profile profile : config.getProfiles()) {
+            if (StrUtil.isBlank(profile.getName())) {
+                throw new IllegalArgumentException("排序方案缺少name");
+            }
+            if (profiles.put(profile.getName(), compile(profile)) != null) {
+                throw new IllegalArgumentException("排序方案重复: " + profile.getName());
+            }
+        }
+        String defaultName = StrUtil.blankToDefault(config.getDefaultProfile(), config.getProfiles().get(0).getName());
+        RankingProfile defaultProfile = require(profiles, defaultName);
+
+        Map<String, Integer> split = config.getSplit() == null ? Collections.emptyMap() : config.getSplit();
+        List<RankingProfile> splitProfiles = new ArrayList<>(split.size());
+        int[] bounds = new int[split.size()];
+        int total = 0;
+        for (Map.Entry<String, Integer> e : split.entrySet()) {
+            if (e.getValue() == null || e.getValue() < 0) {
+                throw new IllegalArgumentException("流量权重不合法: " + e.getKey());
+            }
+            if (e.getValue() == 0) {
+                continue;
+            }
+            total += e.getValue();
+            bounds[splitProfiles.size()] = total;
+            splitProfiles.add(require(profiles, e.getKey()));
+        }
+        int[] splitBounds = new int[splitProfiles.size()];
+        System.arraycopy(bounds, 0, splitBounds, 0, splitBounds.length);
+        return new RankingProfiles(profiles, defaultProfile,
+                splitProfiles.toArray(new RankingProfile[0]), splitBounds);
+    }
+
+    /**
+     * 选择排序方案：请求指定了存在的方案时使用指定的方案，否则按流量权重分配
+     *
+     * @param requested 请求指定的方案，可为空
+     * @param subject   分流标识，登录用户为用户id，未登录为客户端id，同一标识总是落在同一方案；为空时随机分配
+     */
+    public RankingProfile select(String requested, String subject) {
+        if (StrUtil.isNotBlank(requested)) {
+            RankingProfile profile = profiles.get(requested);
+            if (profile != null) {
+                return profile;
+            }
+        }
+        if (splitProfiles.length == 0) {
+            return defaultProfile;
+        }
+        int total = splitBounds[splitBounds.length - 1];
+        int bucket = StrUtil.isEmpty(subject)
+                ? ThreadLocalRandom.current().nextInt(total)
+                : Math.floorMod(MurmurHash.hash32(subject), total);
+        for (int i = 0; i < splitBounds.length; i++) {
+            if (bucket < splitBounds[i]) {
+                return splitProfiles[i];
+            }
+        }
+        return defaultProfile;
+    }
+
+    /**
+     * 按名称获取方案，不存在时（例如配置刚刚变更）使用默认方案
+     */
+    public RankingProfile get(String name) {
+        RankingProfile profile = name == null ? null : profiles.get(name);
+        return profile == null ? defaultProfile : profile;
+    }
+
+    private static RankingProfile compile(RankingConfig.Profile profile) {
+        List<FunctionScoreQueryBuilder.FilterFunctionBuilder> functions = new ArrayList<>();
+        if (profile.getBoosts() != null) {
+            for (RankingConfig.Boost boost : profile.getBoosts()) {
+                if (StrUtil.isBlank(boost.getField()) || boost.getValue() == null || boost.getWeight() == null) {
+                    throw new IllegalArgumentException("加权条件缺少field、value或weight: " + profile.getName());
+                }
+                functions.add(new FunctionScoreQueryBuilder.FilterFunctionBuilder(
+                        QueryBuilders.termQuery(boost.getField(), boost.getValue()),
+                        ScoreFunctionBuilders.weightFactorFunction(boost.getWeight())));
+            }
+        }
+        if (profile.getSoldDecay() != null) {
+            functions.add(new FunctionScoreQueryBuilder.FilterFunctionBuilder(decay(SOLD_FIELD, profile.getSoldDecay())));
+        }
+        if (profile.getRecencyDecay() != null) {
+            functions.add(new FunctionScoreQueryBuilder.FilterFunctionBuilder(decay(RECENCY_FIELD, profile.getRecencyDecay())));
+        }
+        try {
+            return new RankingProfile(profile.getName(),
+                    functions.toArray(new FunctionScoreQueryBuilder.FilterFunctionBuilder[0]),
+                    FunctionScoreQuery.ScoreMode.fromString(profile.getScoreMode()),
+                    CombineFunction.fromString(profile.getBoostMode()),
+                    profile.getMaxBoost());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("排序方案" + profile.getName() + "的scoreMode或boostMode不合法", e);
+        }
+    }
+
+    private static DecayFunctionBuilder<?> decay(String field, RankingConfig.Decay decay) {
+        if (decay.getScale() == null || decay.getDecay() == null || decay.getDecay() <= 0 || decay.getDecay() >= 1) {
+            throw new IllegalArgumentException(field + "的衰减函数需要scale，decay在(0,1)之间");
+        }
+        if (SOLD_FIELD.equals(field) && decay.getOrigin() == null) {
+            // 只有日期字段的origin可以省略，默认为now
+            throw new IllegalArgumentException(field + "的衰减函数需要origin");
+        }
+        DecayFunctionBuilder<?> function;
+        switch (StrUtil.blankToDefault(decay.getFunction(), "gauss")) {
+            case "gauss":
+                function = ScoreFunctionBuilders.gaussDecayFunction(field, decay.getOrigin(), decay.getScale(),
+                        decay.getOffset(), decay.getDecay());
+                break;
+            case "exp":
+                function = ScoreFunctionBuilders.exponentialDecayFunction(field, decay.getOrigin(), decay.getScale(),
+                        decay.getOffset(), decay.getDecay());
+                break;
+            case "linear":
+                function = ScoreFunctionBuilders.linearDecayFunction(field, decay.getOrigin(), decay.getScale(),
+                        decay.getOffset(), decay.getDecay());
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的衰减函数: " + decay.getFunction());
+        }
+        if (decay.getWeight() != null) {
+            function.setWeight(decay.getWeight());
+        }
+        return function;
+    }
+
+    private static RankingProfile require(Map<String, RankingProfile> profiles, String name) {
+        RankingProfile profile = profiles.get(name);
+        if (profile == null) {
+            throw new IllegalArgumentException("排序方案不存在: " + name);
+        }
+        return profile;
+    }
+}
@@ -3,9 +3,13 @@ package com.hmall.search.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmall.common.domain.PageDTO;
 import com.hmall.search.domain.po.Item;
-import com.hmall.search.domain.po.ItemDoc;
 import com.hmall.search.domain.query.ItemPageQuery;
 import com.hmall.search.domain.vo.CategoryAndBrandVo;
+import com.hmall.search.domain.vo.CursorPageVO;
+import com.hmall.search.domain.vo.ItemListVO;
+import com.hmall.search.domain.vo.ItemSearchVO;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <p>
@@ -17,7 +21,17 @@ import com.hmall.search.domain.vo.CategoryAndBrandVo;
  */
 public interface ISearchService extends IService<Item> {
 
-    PageDTO<ItemDoc> EsSearch(ItemPageQuery query);
+    PageDTO<ItemListVO> EsSearch(ItemPageQuery query);
 
     CategoryAndBrandVo getFilters(ItemPageQuery query);
+
+    /**
+     * 异步搜索商品，超时或ES不可用时返回降级结果
+     */
+    CompletableFuture<CursorPageVO<ItemListVO>> esSearchAsync(ItemPageQuery query);
+
+    /**
+     * 一次请求同时返回商品分页和分类、品牌聚合，异步执行，超时或ES不可用时返回降级结果
+     */
+    CompletableFuture<ItemSearchVO> searchAsync(ItemPageQuery query);
 }
@@ -0,0 +1,14 @@
+package com.hmall.search.service;
+
+import java.util.List;
+
+/**
+ * 搜索框自动补全
+ */
+public interface ISuggestService {
+
+    /**
+     * 按前缀查询补全建议，按销量从高到低
+     */
+    List<String> suggest(String prefix);
+}
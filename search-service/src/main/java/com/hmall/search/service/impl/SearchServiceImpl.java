@@ -1,188 +1,642 @@
 package com.hmall.search.service.impl;
 
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmall.common.domain.PageDTO;
+import com.hmall.common.exception.BadRequestException;
 import com.hmall.common.utils.CollUtils;
+import com.hmall.common.utils.UserContext;
+import com.hmall.search.cache.FacetSnapshot;
+import com.hmall.search.cache.SearchResultCache;
+import com.hmall.search.config.SearchProperties;
+import com.hmall.search.constants.SearchConstants;
+import com.hmall.search.domain.dto.SearchCursor;
 import com.hmall.search.domain.po.Item;
-import com.hmall.search.domain.po.ItemDoc;
 import com.hmall.search.domain.query.ItemPageQuery;
 import com.hmall.search.domain.vo.CategoryAndBrandVo;
+import com.hmall.search.domain.vo.CursorPageVO;
+import com.hmall.search.domain.vo.ItemListVO;
+import com.hmall.search.domain.vo.ItemSearchVO;
 import com.hmall.search.mapper.SearchMapper;
+import com.hmall.search.ranking.RankingProfile;
+import com.hmall.search.ranking.RankingProfileLoader;
 import com.hmall.search.service.ISearchService;
+import com.hmall.search.utils.ItemHitParser;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.http.util.EntityUtils;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.Request;
 import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestHighLevelClient;
-import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.functionscore.FunctionScoreQueryBuilder;
-import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.filter.Filter;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
-import org.elasticsearch.search.fetch.subphase.highlight.HighlightField;
 import org.elasticsearch.search.sort.SortOrder;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.util.WebUtils;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
 public class SearchServiceImpl extends ServiceImpl<SearchMapper, Item> implements ISearchService {
     
+    private static final String CATEGORY_AGG = "category_agg";
+    private static final String BRAND_AGG = "brand_agg";
+    private static final String CATEGORY_FILTER = "category_filter";
+    private static final String BRAND_FILTER = "brand_filter";
+    private static final int FACET_SIZE = 10;
+    private static final String CACHE_TYPE_LIST = "list";
+    private static final String CACHE_TYPE_SEARCH = "search";
+    private static final String CACHE_TYPE_LIST_ASYNC = "list-async";
+
     @Resource
     private RestHighLevelClient restHighLevelClient;
+    @Resource
+    private ObjectMapper objectMapper;
+    @Resource
+    private SearchProperties searchProperties;
     
+    @Resource
+    private SearchResultCache searchResultCache;
+    @Resource
+    private FacetSnapshot facetSnapshot;
+    @Resource
+    private RankingProfileLoader rankingProfileLoader;
+    @Resource
+    private ExecutorService searchCallbackExecutor;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Semaphore asyncPermits;
+    private ItemHitParser itemHitParser;
+
+    private JavaType pageType;
+    private JavaType cursorPageType;
+    private JavaType searchType;
+
+    @PostConstruct
+    public void init() {
+        pageType = objectMapper.getTypeFactory().constructParametricType(PageDTO.class, ItemListVO.class);
+        cursorPageType = objectMapper.getTypeFactory().constructParametricType(CursorPageVO.class, ItemListVO.class);
+        searchType = objectMapper.getTypeFactory().constructType(ItemSearchVO.class);
+        asyncPermits = new Semaphore(searchProperties.getAsyncMaxInFlight());
+        itemHitParser = new ItemHitParser(objectMapper);
+    }
+
     @Override
-    public PageDTO<ItemDoc> EsSearch(ItemPageQuery query) {
-        PageDTO<ItemDoc> result = new PageDTO<>();
+    public PageDTO<ItemListVO> EsSearch(ItemPageQuery query) {
+        selectRanking(query);
+        try {
+            if (query.isCursorMode()) {
+                return searchResultCache.getResult(CACHE_TYPE_LIST, query, cursorPageType,
+                        () -> cursorSearch(query, new CursorPageVO<>(), false));
+            }
+            return searchResultCache.getResult(CACHE_TYPE_LIST, query, pageType,
+                    () -> pageSearch(query, new PageDTO<>(), false));
+        } catch (IOException e) {
+            log.error("查询ES失败,出现异常", e);
+            return query.isCursorMode() ? new CursorPageVO<>() : new PageDTO<>();
+        }
+    }
+
+    @Override
+    public CompletableFuture<CursorPageVO<ItemListVO>> esSearchAsync(ItemPageQuery query) {
+        selectRanking(query);
+        return degradeOnFailure(searchResultCache.getResultAsync(CACHE_TYPE_LIST_ASYNC, query, cursorPageType,
+                () -> searchAsync(query, new CursorPageVO<>(), false)), CursorPageVO::new);
+    }
+
+    @Override
+    public CompletableFuture<ItemSearchVO> searchAsync(ItemPageQuery query) {
+        selectRanking(query);
+        return degradeOnFailure(searchResultCache.getResultAsync(CACHE_TYPE_SEARCH, query, searchType,
+                () -> searchAsync(query, new ItemSearchVO(), true)), ItemSearchVO::new);
+    }
+
+    private <V extends PageDTO<ItemListVO>> V pageSearch(ItemPageQuery query, V result, boolean withFacets) throws IOException {
+        //发起请求
+        SearchResponse search = restHighLevelClient.search(pageRequest(query, withFacets), RequestOptions.DEFAULT);
+        //解析结果
+        return parsePage(query, search, result, withFacets);
+    }
+
+    private SearchRequest pageRequest(ItemPageQuery query, boolean withFacets) {
         //1.构造请求
-        SearchRequest searchRequest = new SearchRequest("items");
+        SearchRequest searchRequest = new SearchRequest(SearchConstants.ITEM_INDEX_NAME);
         //2.构造查询条件
-        BoolQueryBuilder boolQueryBuilder = QueryBuilders.boolQuery();
-        //精准总数
-        searchRequest.source().trackTotalHits(true);
-        if (query.getKey()!=null && !"".equals(query.getKey())) {
-            boolQueryBuilder.must(QueryBuilders.matchQuery("name", query.getKey()));
+        searchRequest.source().query(buildQuery(query, !withFacets));
+        if (withFacets) {
+            facets(searchRequest.source(), query, true);
         }
-        //高亮
-        searchRequest.source().highlighter(
-                SearchSourceBuilder.highlight()
-                        .field("name")
-                        .preTags("<em>")
-                        .postTags("</em>")
-        );
+        //总数
+        trackTotalHits(searchRequest.source(), query);
+        //返回字段、高亮
+        listFields(searchRequest.source());
         //分页
         searchRequest.source().from(query.from()).size(query.getPageSize());//获取页数
         //排序
-        if (!"".equals(query.getSortBy())){
-            searchRequest.source().sort(query.getSortBy(), query.getIsAsc()? SortOrder.ASC : SortOrder.DESC);
-        }else {
-            searchRequest.source().sort("updateTime",query.getIsAsc()? SortOrder.ASC : SortOrder.DESC);
+        sort(searchRequest.source(), query);
+        return searchRequest;
+    }
+
+    private <V extends PageDTO<ItemListVO>> V parsePage(ItemPageQuery query, SearchResponse search, V result, boolean withFacets) {
+        fillTotal(result, search.getHits(), query);
+        result.setList(parseHits(search.getHits().getHits()));
+        if (withFacets) {
+            fillFacets((ItemSearchVO) result, search.getAggregations());
         }
-        //分类
-        if (query.getCategory()!=null && !"".equals(query.getCategory())){
-            boolQueryBuilder.filter(QueryBuilders.termQuery("category.keyword", query.getCategory()));
+        return result;
+    }
+
+    /**
+     * 游标分页：用上一页最后一条的排序值search_after代替from，翻页深度不再影响ES的开销，也不受max_result_window限制
+     * 只有第一页统计总数和聚合，开启pit时整个翻页过程看到的是同一份数据
+     */
+    private <V extends CursorPageVO<ItemListVO>> V cursorSearch(ItemPageQuery query, V result, boolean withFacets) throws IOException {
+        SearchCursor cursor = decodeCursor(query.getSearchAfter());
+        String pitId = cursor == null ? null : cursor.getPit();
+        if (cursor == null && Boolean.TRUE.equals(query.getPit())) {
+            pitId = openPointInTime();
         }
-        //品牌
-        if (query.getBrand()!=null && !"".equals(query.getBrand())){
-            boolQueryBuilder.filter(QueryBuilders.termQuery("brand.keyword", query.getBrand()));
+        try {
+            SearchResponse response = restHighLevelClient.search(
+                    cursorRequest(query, cursor, pitId, withFacets), RequestOptions.DEFAULT);
+            return parseCursorPage(query, cursor, pitId, response, result, withFacets);
+        } catch (ElasticsearchStatusException e) {
+            throw translatePitException(e, pitId);
+        }
+    }
+
+    private SearchRequest cursorRequest(ItemPageQuery query, SearchCursor cursor, String pitId, boolean withFacets) {
+        //1.使用pit时不能指定索引
+        SearchRequest request = pitId == null ? new SearchRequest(SearchConstants.ITEM_INDEX_NAME) : new SearchRequest();
+        SearchSourceBuilder source = request.source();
+        source.query(buildQuery(query, !withFacets)).size(query.getPageSize());
+        if (withFacets) {
+            // 后续页不再需要聚合
+            facets(source, query, cursor == null);
+        }
+        listFields(source);
+        //2.排序值相同时再按唯一的字段排序，保证游标唯一；pit中的文档不变，可以直接用_shard_doc
+        sort(source, query);
+        source.sort(pitId == null ? SearchConstants.ITEM_TIEBREAKER_FIELD : SearchConstants.ITEM_PIT_TIEBREAKER_FIELD,
+                SortOrder.ASC);
+        if (cursor == null) {
+            trackTotalHits(source, query);
+        } else {
+            source.trackTotalHits(false).searchAfter(cursor.getSort().toArray());
+        }
+        if (pitId != null) {
+            source.pointInTimeBuilder(new PointInTimeBuilder(pitId)
+                    .setKeepAlive(TimeValue.timeValueMillis(searchProperties.getPitKeepAlive().toMillis())));
+            // 高级客户端默认带上ccs_minimize_roundtrips=true，ES不允许与pit同时使用
+            request.setCcsMinimizeRoundtrips(false);
+        }
+        return request;
+    }
+
+    private <V extends CursorPageVO<ItemListVO>> V parseCursorPage(ItemPageQuery query, SearchCursor cursor, String pitId,
+                                                                SearchResponse response, V result, boolean withFacets) {
+        if (response.pointInTimeId() != null) {
+            pitId = response.pointInTimeId();
+        }
+        SearchHit[] hits = response.getHits().getHits();
+        if (cursor == null) {
+            fillTotal(result, response.getHits(), query);
+            result.setTotalAccurate(response.getHits().getTotalHits().relation == TotalHits.Relation.EQUAL_TO);
+            if (withFacets) {
+                fillFacets((ItemSearchVO) result, response.getAggregations());
+            }
+        }
+        result.setList(parseHits(hits));
+        if (hits.length == query.getPageSize()) {
+            Object[] sortValues = hits[hits.length - 1].getSortValues();
+            result.setSearchAfter(encodeCursor(new SearchCursor(Arrays.asList(sortValues), pitId, query.getRankingProfile())));
+        } else if (pitId != null) {
+            // 最后一页，提前释放pit
+            closePointInTime(pitId);
+        }
+        return result;
+    }
+
+    private RuntimeException translatePitException(ElasticsearchStatusException e, String pitId) {
+        if (e.status() == RestStatus.NOT_FOUND && pitId != null) {
+            return new BadRequestException("游标已过期，请重新查询");
+        }
+        return e;
+    }
+
+    /**
+     * 异步查询：请求线程只负责构造请求，ES响应在搜索回调线程池中解析，少量线程即可支撑大量进行中的查询
+     */
+    private <V extends CursorPageVO<ItemListVO>> CompletableFuture<V> searchAsync(ItemPageQuery query, V result, boolean withFacets) {
+        if (!query.isCursorMode()) {
+            return searchAsync(pageRequest(query, withFacets))
+                    .thenApplyAsync(response -> parsePage(query, response, result, withFacets), searchCallbackExecutor);
+        }
+        SearchCursor cursor = decodeCursor(query.getSearchAfter());
+        CompletableFuture<String> pit = cursor == null && Boolean.TRUE.equals(query.getPit())
+                ? openPointInTimeAsync()
+                : CompletableFuture.completedFuture(cursor == null ? null : cursor.getPit());
+        return pit.thenCompose(pitId -> searchAsync(cursorRequest(query, cursor, pitId, withFacets))
+                .handleAsync((response, e) -> {
+                    if (e == null) {
+                        return parseCursorPage(query, cursor, pitId, response, result, withFacets);
+                    }
+                    Throwable cause = unwrap(e);
+                    if (cause instanceof ElasticsearchStatusException) {
+                        throw translatePitException((ElasticsearchStatusException) cause, pitId);
+                    }
+                    throw new CompletionException(cause);
+                }, searchCallbackExecutor));
+    }
+
+    private CompletableFuture<SearchResponse> searchAsync(SearchRequest request) {
+        CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        if (!asyncPermits.tryAcquire()) {
+            future.completeExceptionally(new RejectedExecutionException("进行中的ES查询数已达上限"));
+            return future;
+        }
+        Cancellable cancellable = restHighLevelClient.searchAsync(request, RequestOptions.DEFAULT, new ActionListener<SearchResponse>() {
+            @Override
+            public void onResponse(SearchResponse response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        future.orTimeout(searchProperties.getAsyncTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((response, e) -> {
+                    asyncPermits.release();
+                    if (e instanceof TimeoutException) {
+                        // 超时后取消请求，不再占用ES连接
+                        cancellable.cancel();
+                    }
+                });
+        return future;
+    }
+
+    /**
+     * 超时、ES异常、超过并发上限时返回空结果并标记降级，前端可提示稍后重试；参数错误仍然抛出
+     */
+    private <V extends CursorPageVO<ItemListVO>> CompletableFuture<V> degradeOnFailure(CompletableFuture<V> future, Supplier<V> empty) {
+        return future.exceptionally(e -> {
+            Throwable cause = unwrap(e);
+            if (cause instanceof BadRequestException) {
+                throw (BadRequestException) cause;
+            }
+            String reason = cause instanceof TimeoutException ? "timeout"
+                    : cause instanceof RejectedExecutionException ? "rejected" : "error";
+            meterRegistry.counter("search.async.degraded", "reason", reason).increment();
+            log.warn("异步搜索失败，返回降级结果，原因:{}", reason, cause);
+            V degraded = empty.get();
+            degraded.setTotal(0L);
+            degraded.setPages(0L);
+            degraded.setList(CollUtils.emptyList());
+            degraded.setDegraded(true);
+            return degraded;
+        });
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * 在查询缓存之前确定排序方案并写回查询条件，排序方案是缓存key的一部分
+     * 游标翻页沿用第一页的方案
+     */
+    private void selectRanking(ItemPageQuery query) {
+        String requested = query.getRankingProfile();
+        if (StrUtil.isBlank(requested) && StrUtil.isNotEmpty(query.getSearchAfter())) {
+            requested = decodeCursor(query.getSearchAfter()).getRanking();
+        }
+        RankingProfile profile = rankingProfileLoader.current().select(requested, rankingSubject());
+        query.setRankingProfile(profile.getName());
+        meterRegistry.counter("search.ranking.requests", "profile", profile.getName()).increment();
+    }
+
+    /**
+     * 排序方案的分流标识：登录用户按用户id，未登录按客户端id
+     * 网关不校验/search/**的登录，大部分搜索请求没有用户信息，只按用户id分流时几乎全部随机分配
+     */
+    private String rankingSubject() {
+        Long userId = UserContext.getUser();
+        if (userId != null) {
+            return "u:" + userId;
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        String clientId = request.getHeader(SearchConstants.RANKING_CLIENT_HEADER);
+        if (StrUtil.isBlank(clientId)) {
+            Cookie cookie = WebUtils.getCookie(request, SearchConstants.RANKING_CLIENT_COOKIE);
+            clientId = cookie == null ? null : cookie.getValue();
+        }
+        if (StrUtil.isBlank(clientId)) {
+            HttpServletResponse response = ((ServletRequestAttributes) attributes).getResponse();
+            if (response == null) {
+                return null;
+            }
+            clientId = UUID.fastUUID().toString(true);
+            Cookie cookie = new Cookie(SearchConstants.RANKING_CLIENT_COOKIE, clientId);
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) TimeUnit.DAYS.toSeconds(365));
+            response.addCookie(cookie);
+        }
+        return "c:" + clientId;
+    }
+
+    /**
+     * @param withTermFilters 是否在查询中过滤分类、品牌，为false时由post_filter过滤
+     */
+    private FunctionScoreQueryBuilder buildQuery(ItemPageQuery query, boolean withTermFilters) {
+        BoolQueryBuilder boolQueryBuilder = withTermFilters
+                ? termFilters(query.getCategory(), query.getBrand())
+                : QueryBuilders.boolQuery();
+        if (query.getKey()!=null && !"".equals(query.getKey())) {
+            boolQueryBuilder.must(QueryBuilders.matchQuery("name", query.getKey()));
         }
         //价格
         if (query.getMinPrice()!=null && query.getMaxPrice()!=null) {
             boolQueryBuilder.filter(QueryBuilders.rangeQuery("price").gte(query.getMinPrice()).lte(query.getMaxPrice()));
         }
 
-        //排名 广告优先
-        FunctionScoreQueryBuilder functionScoreQuery = QueryBuilders.functionScoreQuery(boolQueryBuilder,
-                new FunctionScoreQueryBuilder.FilterFunctionBuilder[]{
-                        new FunctionScoreQueryBuilder.FilterFunctionBuilder(
-                                QueryBuilders.termQuery("isAD", true),
-                                ScoreFunctionBuilders.weightFactorFunction(10)
-                        )
-                }).boostMode(CombineFunction.SUM);
-        
-        searchRequest.source().query(functionScoreQuery).sort("_score", SortOrder.DESC);
+        //排名 按排序方案加权
+        return rankingProfileLoader.current().get(query.getRankingProfile()).apply(boolQueryBuilder);
+    }
 
-        try {
-            //发起请求
-            SearchResponse search = restHighLevelClient.search(searchRequest, RequestOptions.DEFAULT);
-            //解析结果
-            result.setTotal(search.getHits().getTotalHits().value);
-            result.setPages(search.getHits().getTotalHits().value%query.getPageSize()==0?search.getHits().getTotalHits().value/query.getPageSize():search.getHits().getTotalHits().value/query.getPageSize()+1);
-            final SearchHit[] hits = search.getHits().getHits();
-            List<ItemDoc> list=new ArrayList<>();
-            for (SearchHit hit : hits) {
-                ItemDoc itemDoc = JSONUtil.toBean(hit.getSourceAsString(), ItemDoc.class);
-                Map<String, HighlightField> hfs = hit.getHighlightFields();
-                if (CollUtils.isNotEmpty(hfs)) {
-                    // 5.1.有高亮结果，获取name的高亮结果
-                    HighlightField hf = hfs.get("name");
-                    if (hf != null) {
-                        // 5.2.获取第一个高亮结果片段，就是商品名称的高亮值
-                        String hfName = hf.getFragments()[0].string();
-                        itemDoc.setName(hfName);
-                    }
+    private BoolQueryBuilder termFilters(String category, String brand) {
+        BoolQueryBuilder boolQueryBuilder = QueryBuilders.boolQuery();
+        //分类
+        if (category!=null && !"".equals(category)){
+            boolQueryBuilder.filter(QueryBuilders.termQuery("category.keyword", category));
+        }
+        //品牌
+        if (brand!=null && !"".equals(brand)){
+            boolQueryBuilder.filter(QueryBuilders.termQuery("brand.keyword", brand));
+        }
+        return boolQueryBuilder;
+    }
+
+    /**
+     * 分类、品牌放在post_filter中，只过滤命中的商品，不影响聚合
+     * 每个维度的聚合只应用另一个维度的过滤，选中某个分类后仍能看到该关键字下的其它分类
+     */
+    private void facets(SearchSourceBuilder source, ItemPageQuery query, boolean aggregate) {
+        source.postFilter(termFilters(query.getCategory(), query.getBrand()));
+        if (!aggregate) {
+            return;
+        }
+        source.aggregation(AggregationBuilders.filter(CATEGORY_FILTER, termFilters(null, query.getBrand()))
+                .subAggregation(AggregationBuilders.terms(CATEGORY_AGG).field("category.keyword").size(FACET_SIZE)));
+        source.aggregation(AggregationBuilders.filter(BRAND_FILTER, termFilters(query.getCategory(), null))
+                .subAggregation(AggregationBuilders.terms(BRAND_AGG).field("brand.keyword").size(FACET_SIZE)));
+    }
+
+    private void fillFacets(ItemSearchVO result, Aggregations aggregations) {
+        if (aggregations == null) {
+            return;
+        }
+        Filter categoryFilter = aggregations.get(CATEGORY_FILTER);
+        result.setCategory(bucketKeys(categoryFilter.getAggregations().get(CATEGORY_AGG)));
+        Filter brandFilter = aggregations.get(BRAND_FILTER);
+        result.setBrand(bucketKeys(brandFilter.getAggregations().get(BRAND_AGG)));
+    }
+
+    private List<String> bucketKeys(Terms terms) {
+        List<String> keys = new ArrayList<>(terms.getBuckets().size());
+        for (Terms.Bucket bucket : terms.getBuckets()) {
+            keys.add(bucket.getKeyAsString());
+        }
+        return keys;
+    }
+
+    private Map<String, Long> bucketCounts(Terms terms) {
+        Map<String, Long> counts = new LinkedHashMap<>(terms.getBuckets().size() * 4 / 3 + 1);
+        for (Terms.Bucket bucket : terms.getBuckets()) {
+            counts.put(bucket.getKeyAsString(), bucket.getDocCount());
+        }
+        return counts;
+    }
+
+    private void sort(SearchSourceBuilder source, ItemPageQuery query) {
+        SortOrder order = Boolean.FALSE.equals(query.getIsAsc()) ? SortOrder.DESC : SortOrder.ASC;
+        if (StrUtil.isNotBlank(query.getSortBy())){
+            source.sort(query.getSortBy(), order);
+            source.sort("_score", SortOrder.DESC);
+        }else {
+            // 没有指定排序字段时以排序方案的打分为准，更新时间只在打分相同时起作用
+            source.sort("_score", SortOrder.DESC);
+            source.sort("updateTime", order);
+        }
+    }
+
+    /**
+     * 只返回列表页需要的字段，并高亮商品名称
+     */
+    private void listFields(SearchSourceBuilder source) {
+        source.fetchSource(ItemHitParser.LIST_FIELDS, null);
+        source.highlighter(
+                SearchSourceBuilder.highlight()
+                        .field("name")
+                        .preTags("<em>")
+                        .postTags("</em>")
+        );
+    }
+
+    /**
+     * 精准总数需要统计全部命中，热门列表可以只统计到一个上限
+     */
+    private void trackTotalHits(SearchSourceBuilder source, ItemPageQuery query) {
+        if (Boolean.TRUE.equals(query.getApproximateTotal())) {
+            source.trackTotalHitsUpTo(searchProperties.getApproximateTotalUpTo());
+        } else {
+            source.trackTotalHits(true);
+        }
+    }
+
+    private void fillTotal(PageDTO<ItemListVO> result, SearchHits searchHits, ItemPageQuery query) {
+        long total = searchHits.getTotalHits().value;
+        result.setTotal(total);
+        result.setPages(total % query.getPageSize() == 0 ? total / query.getPageSize() : total / query.getPageSize() + 1);
+    }
+
+    private List<ItemListVO> parseHits(SearchHit[] hits) {
+        return itemHitParser.parse(hits);
+    }
+
+    private String openPointInTime() throws IOException {
+        return pitId(restHighLevelClient.getLowLevelClient().performRequest(openPointInTimeRequest()));
+    }
+
+    private CompletableFuture<String> openPointInTimeAsync() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        restHighLevelClient.getLowLevelClient().performRequestAsync(openPointInTimeRequest(), new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                try {
+                    future.complete(pitId(response));
+                } catch (IOException e) {
+                    future.completeExceptionally(e);
                 }
-                list.add(itemDoc);
             }
-            result.setList(list);
-        } catch (IOException e) {
-            log.error("查询ES失败,出现异常", e);
+
+            @Override
+            public void onFailure(Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private Request openPointInTimeRequest() {
+        Request request = new Request("POST", "/" + SearchConstants.ITEM_INDEX_NAME + "/_pit");
+        request.addParameter("keep_alive", searchProperties.getPitKeepAlive().toMillis() + "ms");
+        return request;
+    }
+
+    private String pitId(Response response) throws IOException {
+        return JSONUtil.parseObj(EntityUtils.toString(response.getEntity())).getStr("id");
+    }
+
+    private void closePointInTime(String pitId) {
+        Request request = new Request("DELETE", "/_pit");
+        request.setJsonEntity(JSONUtil.createObj().set("id", pitId).toString());
+        restHighLevelClient.getLowLevelClient().performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                // 关闭失败也会在保活时间后自动释放
+                log.warn("释放point in time失败", e);
+            }
+        });
+    }
+
+    private String encodeCursor(SearchCursor cursor) {
+        try {
+            return Base64.encodeUrlSafe(objectMapper.writeValueAsBytes(cursor));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private SearchCursor decodeCursor(String token) {
+        if (StrUtil.isEmpty(token)) {
+            return null;
+        }
+        try {
+            SearchCursor cursor = objectMapper.readValue(Base64.decode(token), SearchCursor.class);
+            if (CollUtils.isEmpty(cursor.getSort())) {
+                throw new BadRequestException("无效的分页游标");
+            }
+            return cursor;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new BadRequestException("无效的分页游标", e);
         }
-        //返回
-        return result;
     }
 
     //获得分类和品牌的聚合值
     @Override
     public CategoryAndBrandVo getFilters(ItemPageQuery query) {
+        // 默认列表页和只选了分类时不查ES
+        CategoryAndBrandVo snapshot = facetSnapshot.lookup(query);
+        if (snapshot != null) {
+            return snapshot;
+        }
         try {
-            Thread.sleep(100);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            return searchResultCache.getFacets(query, CategoryAndBrandVo.class, () -> loadFilters(query));
+        } catch (IOException e) {
+            log.error("发送请求异常", e);
+            CategoryAndBrandVo categoryAndBrandVo = new CategoryAndBrandVo();
+            categoryAndBrandVo.setCategory(new ArrayList<>());
+            categoryAndBrandVo.setBrand(new ArrayList<>());
+            return categoryAndBrandVo;
         }
-        
+    }
+
+    private CategoryAndBrandVo loadFilters(ItemPageQuery query) throws IOException {
         CategoryAndBrandVo categoryAndBrandVo = new CategoryAndBrandVo();
         // 1.创建Request
-        SearchRequest request = new SearchRequest("items");
-        BoolQueryBuilder boolQueryBuilder = QueryBuilders.boolQuery();
+        SearchRequest request = new SearchRequest(SearchConstants.ITEM_INDEX_NAME);
+        BoolQueryBuilder boolQueryBuilder = termFilters(query.getCategory(), query.getBrand());
         if (query.getKey()!=null && !"".equals(query.getKey())) {
             boolQueryBuilder.must(QueryBuilders.matchQuery("name", query.getKey()));
         }
-        if (query.getCategory()!=null && !"".equals(query.getCategory())){
-            boolQueryBuilder.filter(QueryBuilders.termQuery("category.keyword", query.getCategory()));
-        }
-        if (query.getBrand()!=null && !"".equals(query.getBrand())){
-            boolQueryBuilder.filter(QueryBuilders.termQuery("brand.keyword", query.getBrand()));
-        }
         if (query.getMinPrice()!=null && query.getMaxPrice()!=null){
             boolQueryBuilder.filter(QueryBuilders.rangeQuery("price").gte(query.getMinPrice()).lte(query.getMaxPrice()));
         }
         request.source().query(boolQueryBuilder).size(0);
 
         request.source().aggregation(
-                AggregationBuilders.terms("category_agg").field("category.keyword").size(10)
+                AggregationBuilders.terms(CATEGORY_AGG).field("category.keyword").size(FACET_SIZE)
         );
 
         request.source().aggregation(
-                AggregationBuilders.terms("brand_agg").field("brand.keyword").size(10));
-        List<String> categoryList = new ArrayList<>();
-        List<String> brandList = new ArrayList<>();
+                AggregationBuilders.terms(BRAND_AGG).field("brand.keyword").size(FACET_SIZE));
         // 4.发送请求
-        try {
-            SearchResponse response = restHighLevelClient.search(request, RequestOptions.DEFAULT);
-            Aggregations aggregations = response.getAggregations();
-            Terms categoryTerms = aggregations.get("category_agg");
-            // 5.2.获取聚合中的桶
-            List<? extends Terms.Bucket> buckets = categoryTerms.getBuckets();
-            for (Terms.Bucket bucket : buckets) {
-                // 5.4.获取桶内key
-                String category = bucket.getKeyAsString();
-                categoryList.add(category);
-            }
-            Terms brandTerms = aggregations.get("brand_agg");
-            // 5.2.获取聚合中的桶
-            List<? extends Terms.Bucket> buckets1 = brandTerms.getBuckets();
-            for (Terms.Bucket bucket : buckets1) {
-                // 5.4.获取桶内key
-                String brand = bucket.getKeyAsString();
-                brandList.add(brand);
-            }
-        } catch (IOException e) {
-            log.error("发送请求异常", e);
-        }
-        categoryAndBrandVo.setCategory(categoryList);
-        categoryAndBrandVo.setBrand(brandList);
+        SearchResponse response = restHighLevelClient.search(request, RequestOptions.DEFAULT);
+        Aggregations aggregations = response.getAggregations();
+        // 5.获取聚合中的桶
+        categoryAndBrandVo.setCategory(bucketKeys(aggregations.get(CATEGORY_AGG)));
+        categoryAndBrandVo.setBrand(bucketKeys(aggregations.get(BRAND_AGG)));
+        categoryAndBrandVo.setCategoryCount(bucketCounts(aggregations.get(CATEGORY_AGG)));
+        categoryAndBrandVo.setBrandCount(bucketCounts(aggregations.get(BRAND_AGG)));
         return categoryAndBrandVo;
     }
 }
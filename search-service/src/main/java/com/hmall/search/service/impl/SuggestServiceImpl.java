@@ -0,0 +1,122 @@
+package com.hmall.search.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmall.common.utils.CollUtils;
+import com.hmall.search.config.SearchProperties;
+import com.hmall.search.constants.SearchConstants;
+import com.hmall.search.service.ISuggestService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.suggest.Suggest;
+import org.elasticsearch.search.suggest.SuggestBuilder;
+import org.elasticsearch.search.suggest.SuggestBuilders;
+import org.elasticsearch.search.suggest.completion.CompletionSuggestion;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 基于completion suggester的自动补全
+ * completion字段常驻内存，单次查询很快；前面再放一层本地缓存，用户连续输入时大部分前缀直接命中
+ */
+@Slf4j
+@Service
+public class SuggestServiceImpl implements ISuggestService {
+
+    private static final String SUGGESTION_NAME = "item_suggest";
+
+    @Resource
+    private RestHighLevelClient client;
+    @Resource
+    private SearchProperties searchProperties;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, List<String>> prefixCache;
+    private Timer suggestTimer;
+
+    @PostConstruct
+    public void init() {
+        prefixCache = Caffeine.newBuilder()
+                .maximumSize(searchProperties.getSuggestCacheSize())
+                .expireAfterWrite(searchProperties.getSuggestCacheTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, prefixCache, "search.suggest");
+        suggestTimer = Timer.builder("search.suggest.latency")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public List<String> suggest(String prefix) {
+        String key = normalize(prefix);
+        if (key.isEmpty()) {
+            return CollUtils.emptyList();
+        }
+        return suggestTimer.record(() -> {
+            try {
+                return prefixCache.get(key, this::load);
+            } catch (UncheckedIOException e) {
+                // 失败的结果不缓存，补全不可用时不影响搜索
+                log.warn("查询自动补全失败，前缀:{}", key, e.getCause());
+                return CollUtils.<String>emptyList();
+            }
+        });
+    }
+
+    private List<String> load(String prefix) {
+        SearchRequest request = new SearchRequest(SearchConstants.ITEM_INDEX_NAME);
+        request.source(new SearchSourceBuilder()
+                .size(0)
+                .fetchSource(false)
+                .suggest(new SuggestBuilder().addSuggestion(SUGGESTION_NAME,
+                        SuggestBuilders.completionSuggestion(SearchConstants.ITEM_SUGGEST_FIELD)
+                                .prefix(prefix)
+                                .skipDuplicates(true)
+                                .size(searchProperties.getSuggestSize()))));
+        SearchResponse response;
+        try {
+            response = client.search(request, RequestOptions.DEFAULT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Suggest suggest = response.getSuggest();
+        if (suggest == null) {
+            return CollUtils.emptyList();
+        }
+        CompletionSuggestion suggestion = suggest.getSuggestion(SUGGESTION_NAME);
+        List<String> result = new ArrayList<>(searchProperties.getSuggestSize());
+        for (CompletionSuggestion.Entry.Option option : suggestion.getOptions()) {
+            result.add(option.getText().string());
+        }
+        return result;
+    }
+
+    /**
+     * 去掉首尾空白、转小写并截断，与completion字段的simple分词器保持一致，减少缓存的key
+     */
+    private String normalize(String prefix) {
+        if (StrUtil.isBlank(prefix)) {
+            return "";
+        }
+        String key = prefix.trim().toLowerCase(Locale.ROOT);
+        int max = searchProperties.getSuggestMaxPrefixLength();
+        return key.length() > max ? key.substring(0, max) : key;
+    }
+}
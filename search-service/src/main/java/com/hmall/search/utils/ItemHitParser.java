@@ -0,0 +1,57 @@
+package com.hmall.search.utils;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.hmall.common.utils.CollUtils;
+import com.hmall.search.domain.vo.ItemListVO;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightField;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把搜索命中解析为商品列表项
+ * 直接从_source的字节流反序列化，不先转成字符串，也不经过Hutool的反射；ObjectReader线程安全，创建一次复用
+ */
+public class ItemHitParser {
+
+    /**
+     * 列表页需要的字段，搜索请求只返回这些字段的_source
+     */
+    public static final String[] LIST_FIELDS = {"id", "name", "price", "image", "sold", "commentCount", "isAD"};
+
+    private final ObjectReader reader;
+
+    public ItemHitParser(ObjectMapper objectMapper) {
+        this.reader = objectMapper.readerFor(ItemListVO.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    public List<ItemListVO> parse(SearchHit[] hits) {
+        List<ItemListVO> list = new ArrayList<>(hits.length);
+        for (SearchHit hit : hits) {
+            ItemListVO item;
+            try (InputStream in = hit.getSourceRef().streamInput()) {
+                item = reader.readValue(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Map<String, HighlightField> hfs = hit.getHighlightFields();
+            if (CollUtils.isNotEmpty(hfs)) {
+                // 有高亮结果，取name的第一个高亮片段
+                HighlightField hf = hfs.get("name");
+                if (hf != null) {
+                    item.setName(hf.getFragments()[0].string());
+                }
+            }
+            list.add(item);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,155 @@
+package com.hmall.search;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 500个并发搜索下，对比同步查询与异步查询的吞吐量和线程数：
+ * 1. 同步：每个搜索占用一个线程阻塞等待ES响应，与Tomcat请求线程直接调用restHighLevelClient.search相同
+ * 2. 异步：与SearchServiceImpl的异步路径相同，searchAsync发起请求，响应在4个线程的回调线程池中解析
+ * <p>
+ * 需要一个有商品数据的ES，运行方式：
+ * mvn test -pl search-service -am -Dtest=SearchAsyncBenchmarkTest -Dsurefire.failIfNoSpecifiedTests=false -Dbench.es=http://192.168.198.128:9200
+ */
+@EnabledIfSystemProperty(named = "bench.es", matches = ".+")
+public class SearchAsyncBenchmarkTest {
+
+    private static final int CONCURRENCY = 500;
+    private static final long RUN_MILLIS = 10_000;
+    private static final int CALLBACK_THREADS = 4;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private RestHighLevelClient client;
+
+    @Test
+    void testSyncVsAsync() throws Exception {
+        int syncPeak = runSync();
+        int asyncPeak = runAsync();
+        assertTrue(asyncPeak < syncPeak, "异步查询的线程数应少于同步查询");
+    }
+
+    private int runSync() throws InterruptedException {
+        threads.resetPeakThreadCount();
+        ExecutorService pool = Executors.newFixedThreadPool(CONCURRENCY);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(CONCURRENCY);
+        long begin = System.nanoTime();
+        for (int i = 0; i < CONCURRENCY; i++) {
+            pool.execute(() -> {
+                try {
+                    while (running.get()) {
+                        try {
+                            client.search(request(), RequestOptions.DEFAULT);
+                            completed.incrementAndGet();
+                        } catch (IOException e) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        TimeUnit.MILLISECONDS.sleep(RUN_MILLIS);
+        running.set(false);
+        done.await();
+        pool.shutdown();
+        return report("sync", completed.get(), failed.get(), System.nanoTime() - begin);
+    }
+
+    private int runAsync() throws InterruptedException {
+        threads.resetPeakThreadCount();
+        ExecutorService callbacks = Executors.newFixedThreadPool(CALLBACK_THREADS);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(CONCURRENCY);
+        long begin = System.nanoTime();
+        // 始终保持500个进行中的查询，一个完成后立即发起下一个
+        for (int i = 0; i < CONCURRENCY; i++) {
+            searchAsync(callbacks, running, completed, failed, done);
+        }
+        TimeUnit.MILLISECONDS.sleep(RUN_MILLIS);
+        running.set(false);
+        done.await();
+        callbacks.shutdown();
+        return report("async", completed.get(), failed.get(), System.nanoTime() - begin);
+    }
+
+    private void searchAsync(ExecutorService callbacks, AtomicBoolean running,
+                             AtomicInteger completed, AtomicInteger failed, CountDownLatch done) {
+        if (!running.get()) {
+            done.countDown();
+            return;
+        }
+        client.searchAsync(request(), RequestOptions.DEFAULT, new ActionListener<SearchResponse>() {
+            @Override
+            public void onResponse(SearchResponse response) {
+                callbacks.execute(() -> {
+                    response.getHits().getHits();
+                    completed.incrementAndGet();
+                    searchAsync(callbacks, running, completed, failed, done);
+                });
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                failed.incrementAndGet();
+                callbacks.execute(() -> searchAsync(callbacks, running, completed, failed, done));
+            }
+        });
+    }
+
+    private int report(String mode, int completed, int failed, long nanos) {
+        int peak = threads.getPeakThreadCount();
+        System.out.printf("%-6s concurrency=%d searches=%-8d failed=%-6d searches/sec=%.0f peakThreads=%d%n",
+                mode, CONCURRENCY, completed, failed, completed * 1e9 / nanos, peak);
+        return peak;
+    }
+
+    private SearchRequest request() {
+        SearchRequest request = new SearchRequest("items");
+        request.source().query(QueryBuilders.matchQuery("name", System.getProperty("bench.keyword", "手机")))
+                .trackTotalHits(true)
+                .size(20);
+        return request;
+    }
+
+    @BeforeEach
+    void setUp() {
+        // 与ElasticSearchConfig相同的连接池大小
+        client = new RestHighLevelClient(RestClient.builder(HttpHost.create(System.getProperty("bench.es")))
+                .setHttpClientConfigCallback(builder -> builder.setMaxConnTotal(200).setMaxConnPerRoute(200)));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+    }
+}
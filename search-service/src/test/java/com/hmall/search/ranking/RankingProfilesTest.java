@@ -0,0 +1,80 @@
+package com.hmall.search.ranking;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.functionscore.FunctionScoreQueryBuilder;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RankingProfilesTest {
+
+    private static final String CONFIG = "{"
+            + "\"defaultProfile\": \"default\","
+            + "\"split\": {\"default\": 90, \"sold_recency\": 10},"
+            + "\"profiles\": ["
+            + "  {\"name\": \"default\", \"boosts\": [{\"field\": \"isAD\", \"value\": true, \"weight\": 10}]},"
+            + "  {\"name\": \"sold_recency\", \"boostMode\": \"multiply\","
+            + "   \"soldDecay\": {\"function\": \"exp\", \"origin\": 100000, \"scale\": 20000, \"decay\": 0.5, \"weight\": 3},"
+            + "   \"recencyDecay\": {\"origin\": \"now\", \"scale\": \"7d\", \"offset\": \"1d\"}}"
+            + "]}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testBuiltinMatchesLegacyQuery() {
+        FunctionScoreQueryBuilder legacy = QueryBuilders.functionScoreQuery(QueryBuilders.matchAllQuery(),
+                new FunctionScoreQueryBuilder.FilterFunctionBuilder[]{
+                        new FunctionScoreQueryBuilder.FilterFunctionBuilder(
+                                QueryBuilders.termQuery("isAD", true),
+                                ScoreFunctionBuilders.weightFactorFunction(10))
+                }).boostMode(CombineFunction.SUM);
+        RankingProfile profile = RankingProfiles.builtin().select(null, "u:1");
+        assertEquals(RankingProfiles.DEFAULT_PROFILE, profile.getName());
+        assertEquals(legacy.toString(), profile.apply(QueryBuilders.matchAllQuery()).toString());
+    }
+
+    @Test
+    void testCompilesDecayFunctions() throws Exception {
+        RankingProfiles profiles = RankingProfiles.compile(objectMapper.readValue(CONFIG, RankingConfig.class));
+        String query = profiles.get("sold_recency").apply(QueryBuilders.matchAllQuery()).toString();
+        assertTrue(query.contains("\"exp\""));
+        assertTrue(query.contains("\"gauss\""));
+        assertTrue(query.contains("\"boost_mode\" : \"multiply\""));
+        // 不存在的方案回落到默认方案
+        assertEquals("default", profiles.get("missing").getName());
+    }
+
+    @Test
+    void testSplitIsStablePerUserAndFollowsWeights() throws Exception {
+        RankingProfiles profiles = RankingProfiles.compile(objectMapper.readValue(CONFIG, RankingConfig.class));
+        Map<String, Integer> counts = new HashMap<>();
+        for (long userId = 0; userId < 100_000; userId++) {
+            String subject = "u:" + userId;
+            String name = profiles.select(null, subject).getName();
+            assertEquals(name, profiles.select(null, subject).getName());
+            counts.merge(name, 1, Integer::sum);
+        }
+        int sample = counts.get("sold_recency");
+        assertTrue(sample > 9_000 && sample < 11_000, "sold_recency: " + sample);
+        // 指定方案时不参与流量分配
+        assertEquals("sold_recency", profiles.select("sold_recency", "u:1").getName());
+    }
+
+    @Test
+    void testRejectsInvalidConfig() throws Exception {
+        RankingConfig unknownSplit = objectMapper.readValue(CONFIG.replace("\"sold_recency\": 10", "\"nope\": 10"),
+                RankingConfig.class);
+        assertThrows(IllegalArgumentException.class, () -> RankingProfiles.compile(unknownSplit));
+        RankingConfig badDecay = objectMapper.readValue(CONFIG.replace("\"decay\": 0.5", "\"decay\": 1.5"),
+                RankingConfig.class);
+        assertThrows(IllegalArgumentException.class, () -> RankingProfiles.compile(badDecay));
+    }
+}
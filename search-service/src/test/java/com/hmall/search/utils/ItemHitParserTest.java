@@ -0,0 +1,123 @@
+package com.hmall.search.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmall.search.domain.po.ItemDoc;
+import com.hmall.search.domain.vo.ItemListVO;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightField;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ItemHitParserTest {
+
+    private static final int PAGE_SIZE = 20;
+
+    private final ItemHitParser parser = new ItemHitParser(new ObjectMapper());
+
+    @Test
+    void testParsesListFieldsAndHighlight() {
+        List<ItemListVO> items = parser.parse(page(false));
+        assertEquals(PAGE_SIZE, items.size());
+        ItemListVO item = items.get(3);
+        assertEquals("100003", item.getId());
+        assertEquals("<em>手机</em> 3", item.getName());
+        assertEquals(Integer.valueOf(3999), item.getPrice());
+        assertEquals(Integer.valueOf(3), item.getSold());
+        assertEquals(Integer.valueOf(30), item.getCommentCount());
+        assertEquals(Boolean.FALSE, item.getIsAD());
+    }
+
+    /**
+     * 解析一页20个命中，对比原来的方式（完整_source转字符串后用Hutool反序列化为ItemDoc）
+     * 与source filtering后用ItemHitParser解析的耗时和内存分配
+     * 运行方式：mvn test -pl search-service -am -Dtest=ItemHitParserTest -Dsurefire.failIfNoSpecifiedTests=false -Dbench.parse=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "bench.parse", matches = "true")
+    void benchmarkParseTwentyHits() {
+        SearchHit[] fullPage = page(true);
+        SearchHit[] listPage = page(false);
+        int warmup = 20_000;
+        int pages = 100_000;
+        measure("hutool", warmup, fullPage, this::parseWithHutool);
+        measure("parser", warmup, listPage, parser::parse);
+        long hutool = measure("hutool", pages, fullPage, this::parseWithHutool);
+        long lean = measure("parser", pages, listPage, parser::parse);
+        assertTrue(lean < hutool, "ItemHitParser应快于原来的解析方式");
+    }
+
+    private long measure(String mode, int pages, SearchHit[] hits, PageParser pageParser) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long bytes = threads.getThreadAllocatedBytes(tid);
+        long begin = System.nanoTime();
+        int blackhole = 0;
+        for (int i = 0; i < pages; i++) {
+            blackhole += pageParser.parse(hits).size();
+        }
+        long nanos = System.nanoTime() - begin;
+        bytes = threads.getThreadAllocatedBytes(tid) - bytes;
+        System.out.printf("%-7s pages=%-7d ns/page=%-8d bytes/page=%-8d (%d)%n",
+                mode, pages, nanos / pages, bytes / pages, blackhole);
+        return nanos;
+    }
+
+    /**
+     * SearchServiceImpl原来的解析方式
+     */
+    private List<ItemDoc> parseWithHutool(SearchHit[] hits) {
+        List<ItemDoc> list = new ArrayList<>(hits.length);
+        for (SearchHit hit : hits) {
+            ItemDoc itemDoc = JSONUtil.toBean(hit.getSourceAsString(), ItemDoc.class);
+            HighlightField hf = hit.getHighlightFields().get("name");
+            if (hf != null) {
+                itemDoc.setName(hf.getFragments()[0].string());
+            }
+            list.add(itemDoc);
+        }
+        return list;
+    }
+
+    /**
+     * @param full 是否返回完整_source，否则只有列表字段
+     */
+    private SearchHit[] page(boolean full) {
+        SearchHit[] hits = new SearchHit[PAGE_SIZE];
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            String id = String.valueOf(100000 + i);
+            StringBuilder source = new StringBuilder("{\"id\":\"").append(id).append('"')
+                    .append(",\"name\":\"手机 ").append(i).append('"')
+                    .append(",\"price\":").append(3996 + i)
+                    .append(",\"image\":\"https://m.360buyimg.com/mobilecms/s720x720_jfs/t1/").append(id).append(".jpg\"")
+                    .append(",\"sold\":").append(i)
+                    .append(",\"commentCount\":").append(i * 10)
+                    .append(",\"isAD\":").append(i == 0);
+            if (full) {
+                source.append(",\"category\":\"手机\",\"brand\":\"华为\",\"updateTime\":\"2023-05-05T12:00:00\"");
+            }
+            source.append('}');
+            SearchHit hit = new SearchHit(i, id, null, Collections.emptyMap(), Collections.emptyMap());
+            hit.sourceRef(new BytesArray(source.toString()));
+            hit.highlightFields(Collections.singletonMap("name",
+                    new HighlightField("name", new Text[]{new Text("<em>手机</em> " + i)})));
+            hits[i] = hit;
+        }
+        return hits;
+    }
+
+    @FunctionalInterface
+    private interface PageParser {
+        List<?> parse(SearchHit[] hits);
+    }
+}
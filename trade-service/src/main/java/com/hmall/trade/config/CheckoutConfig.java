@@ -0,0 +1,27 @@
+package com.hmall.trade.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下单流程中并发执行远程调用的线程池
+ */
+@Configuration
+public class CheckoutConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService checkoutExecutor(CheckoutProperties properties) {
+        int threads = properties.getThreads();
+        // 队列满时退化为在下单线程中串行执行，不拒绝下单
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()), new ThreadPoolExecutor.CallerRunsPolicy());
+        // 预先创建线程，避免启动后的第一批订单等待建线程
+        executor.prestartAllCoreThreads();
+        return executor;
+    }
+}
@@ -0,0 +1,22 @@
+package com.hmall.trade.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 下单流程配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hm.trade.checkout")
+public class CheckoutProperties {
+    /**
+     * 并发执行远程调用的线程数，每个下单请求同一时刻最多占用一个线程，不小于下单并发数为宜，修改后需重启
+     */
+    private Integer threads = 64;
+    /**
+     * 等待执行的远程调用数上限，超过后在下单线程中直接执行
+     */
+    private Integer queueCapacity = 1000;
+}
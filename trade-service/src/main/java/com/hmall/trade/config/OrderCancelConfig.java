@@ -0,0 +1,31 @@
+package com.hmall.trade.config;
+
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 批量取消超时订单时使用的消息监听容器
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "hm.trade.cancel", name = "bulk-enabled", havingValue = "true")
+public class OrderCancelConfig {
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            OrderCancelProperties properties) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(properties.getBatchSize());
+        factory.setReceiveTimeout(properties.getReceiveTimeoutMillis());
+        // 预取数不小于批大小，否则一批永远凑不满
+        factory.setPrefetchCount(properties.getBatchSize());
+        return factory;
+    }
+}
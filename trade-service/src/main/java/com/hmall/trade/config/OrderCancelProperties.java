@@ -0,0 +1,26 @@
+package com.hmall.trade.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 超时订单取消配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hm.trade.cancel")
+public class OrderCancelProperties {
+    /**
+     * 是否批量消费订单延迟消息，一批超时订单一次性取消并恢复库存，修改后需重启
+     */
+    private Boolean bulkEnabled = false;
+    /**
+     * 每批最多消费的消息数
+     */
+    private Integer batchSize = 100;
+    /**
+     * 凑批时等待下一条消息的最长时间（毫秒）
+     */
+    private Long receiveTimeoutMillis = 1000L;
+}
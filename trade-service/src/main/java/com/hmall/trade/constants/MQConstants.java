@@ -4,4 +4,9 @@ public class MQConstants {
     public static final String DELAY_EXCHANGE_NAME = "trade.delay.direct";
     public static final String DELAY_ORDER_QUEUE_NAME = "trade.delay.order.queue";
     public static final String DELAY_ORDER_KEY = "delay.order.query";
+    /**
+     * 订单创建事件，购物车服务据此清理已下单的商品
+     */
+    public static final String TRADE_EXCHANGE_NAME = "trade.topic";
+    public static final String ORDER_CREATE_KEY = "order.create";
 }
@@ -0,0 +1,62 @@
+package com.hmall.trade.listener;
+
+import com.hmall.api.client.PayClient;
+import com.hmall.api.dto.PayOrderDTO;
+import com.hmall.common.utils.CollUtils;
+import com.hmall.trade.constants.MQConstants;
+import com.hmall.trade.domain.po.Order;
+import com.hmall.trade.service.IOrderService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量消费订单延迟消息，开启hm.trade.cancel.bulk-enabled后替代OrderDelayMessageListener
+ * 大促后集中超时的订单一次性取消，只查询一次订单明细、调用一次恢复库存
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "hm.trade.cancel", name = "bulk-enabled", havingValue = "true")
+public class OrderDelayBatchMessageListener {
+
+    private final IOrderService orderService;
+    private final PayClient payClient;
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(name = MQConstants.DELAY_ORDER_QUEUE_NAME),
+            exchange = @Exchange(name = MQConstants.DELAY_EXCHANGE_NAME, delayed = "true"),
+            key = MQConstants.DELAY_ORDER_KEY
+    ), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listenOrderDelayMessages(List<Long> orderIds) {
+        // 1.批量查询订单，只处理未支付的
+        List<Order> orders = orderService.listByIds(orderIds);
+        List<Long> unpaidIds = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            if (order.getStatus() != 1) {
+                continue;
+            }
+            // 2.查询支付流水状态
+            PayOrderDTO payOrder = payClient.queryPayOrderByBizOrderNo(order.getId());
+            if (payOrder != null && payOrder.getStatus() == 3) {
+                // 2.1.已支付，标记订单状态为已支付
+                orderService.markOrderPaySuccess(order.getId());
+            } else {
+                unpaidIds.add(order.getId());
+            }
+        }
+        // 3.未支付，批量取消订单，恢复库存
+        if (CollUtils.isNotEmpty(unpaidIds)) {
+            orderService.cancelOrders(unpaidIds);
+        }
+        log.debug("批量处理订单延迟消息{}条，取消订单{}个", orderIds.size(), unpaidIds.size());
+    }
+}
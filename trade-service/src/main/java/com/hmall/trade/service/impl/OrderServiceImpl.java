@@ -2,30 +2,46 @@ package com.hmall.trade.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmall.api.client.CartClient;
 import com.hmall.api.client.ItemClient;
 import com.hmall.api.client.PayClient;
+import com.hmall.api.client.UserClient;
+import com.hmall.api.dto.AddressDTO;
 import com.hmall.api.dto.ItemDTO;
+import com.hmall.api.dto.OrderCreatedDTO;
 import com.hmall.api.dto.OrderDetailDTO;
 import com.hmall.common.exception.BadRequestException;
+import com.hmall.common.utils.CollUtils;
 import com.hmall.common.utils.UserContext;
 import com.hmall.trade.constants.MQConstants;
 import com.hmall.trade.domain.dto.OrderFormDTO;
 import com.hmall.trade.domain.po.Order;
 import com.hmall.trade.domain.po.OrderDetail;
+import com.hmall.trade.domain.po.OrderLogistics;
 import com.hmall.trade.mapper.OrderMapper;
 import com.hmall.trade.service.IOrderDetailService;
+import com.hmall.trade.service.IOrderLogisticsService;
 import com.hmall.trade.service.IOrderService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.seata.core.context.RootContext;
 import io.seata.spring.annotation.GlobalTransactional;
+import io.seata.tm.api.transaction.TransactionHookAdapter;
+import io.seata.tm.api.transaction.TransactionHookManager;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -36,69 +52,103 @@ import java.util.stream.Collectors;
  * @author 虎哥
  * @since 2023-05-05
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements IOrderService {
 
     private final ItemClient itemClient;
     private final IOrderDetailService detailService;
-    private final CartClient cartClient;
     private final RabbitTemplate rabbitTemplate;
     private final PayClient payClient;
+    private final UserClient userClient;
+    private final IOrderLogisticsService logisticsService;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService checkoutExecutor;
+    private final MeterRegistry meterRegistry;
 
+    /**
+     * 下单流程：
+     * 1. 并发查询商品、校验收货地址
+     * 2. 扣减库存与本地写库并发执行，订单、明细、物流在一个本地事务中写入
+     * 3. 全局事务提交后发送订单创建事件清理购物车，发送延迟消息检测支付状态
+     * 每个阶段的耗时记录在trade.checkout.stage中
+     */
     @Override
     @GlobalTransactional
     public Long createOrder(OrderFormDTO orderFormDTO) {
+        long begin = System.nanoTime();
         // 1.订单数据
-        Order order = new Order();
-        // 1.1.查询商品
         List<OrderDetailDTO> detailDTOS = orderFormDTO.getDetails();
-        // 1.2.获取商品id和数量的Map
+        // 1.1.获取商品id和数量的Map
         Map<Long, Integer> itemNumMap = detailDTOS.stream()
                 .collect(Collectors.toMap(OrderDetailDTO::getItemId, OrderDetailDTO::getNum));
         Set<Long> itemIds = itemNumMap.keySet();
-        // 1.3.查询商品
-        List<ItemDTO> items = itemClient.queryItemByIds(itemIds);
+        // 1.2.并发查询商品和收货地址，商品在下单线程中查询，每个订单同一时刻只占用一个异步线程
+        CompletableFuture<AddressDTO> addressFuture = supplyAsync("address",
+                () -> userClient.findAddressById(orderFormDTO.getAddressId()));
+        List<ItemDTO> items = timed("items", () -> itemClient.queryItemByIds(itemIds));
         if (items == null || items.size() < itemIds.size()) {
             throw new BadRequestException("商品不存在");
         }
-        // 1.4.基于商品价格、购买数量计算商品总价：totalFee
+        AddressDTO address = join(addressFuture);
+        if (address == null) {
+            throw new BadRequestException("收货地址不存在");
+        }
+        // 1.3.基于商品价格、购买数量计算商品总价：totalFee
         int total = 0;
         for (ItemDTO item : items) {
             total += item.getPrice() * itemNumMap.get(item.getId());
         }
+        Order order = new Order();
         order.setTotalFee(total);
-        // 1.5.其它属性
+        // 1.4.其它属性
         order.setPaymentType(orderFormDTO.getPaymentType());
         order.setUserId(UserContext.getUser());
         order.setStatus(1);
-        // 1.6.将Order写入数据库order表中
-        save(order);
-
-        // 2.保存订单详情
-        List<OrderDetail> details = buildDetails(order.getId(), items, itemNumMap);
-        detailService.saveBatch(details);
 
-        // 3.清理购物车商品
-        cartClient.deleteCartItemByIds(itemIds);
-
-        // 4.扣减库存
-        try {
+        // 2.扣减库存与写库并发执行，都在全局事务中，任一失败整体回滚
+        CompletableFuture<Void> deductFuture = supplyAsync("deduct", () -> {
             itemClient.deductStock(detailDTOS);
+            return null;
+        });
+        try {
+            // 2.1.订单、订单详情、物流信息在一个本地事务中写入，只注册一个分支事务
+            timed("persist", () -> transactionTemplate.execute(status -> {
+                save(order);
+                detailService.saveBatch(buildDetails(order.getId(), items, itemNumMap));
+                logisticsService.save(buildLogistics(order.getId(), address));
+                return null;
+            }));
+        } catch (RuntimeException e) {
+            // 等扣减结束再回滚，避免扣减的分支事务在回滚之后才注册
+            deductFuture.exceptionally(ex -> null).join();
+            throw e;
+        }
+        // 2.2.等待扣减库存
+        try {
+            join(deductFuture);
         } catch (Exception e) {
             throw new RuntimeException("库存不足！");
         }
 
-        // 5.发送延迟消息，检测订单支付状态
-        rabbitTemplate.convertAndSend(
-                MQConstants.DELAY_EXCHANGE_NAME,
-                MQConstants.DELAY_ORDER_KEY,
-                order.getId(),
-                message -> {
-                    message.getMessageProperties().setDelay(10000); // 测试改为10秒
-                    return message;
-                });
+        // 3.清理购物车商品：全局事务提交后发送订单创建事件，由购物车服务批量删除
+        publishOrderCreated(order.getId(), order.getUserId(), itemIds);
+
+        // 4.发送延迟消息，检测订单支付状态
+        timed("publish", () -> {
+            rabbitTemplate.convertAndSend(
+                    MQConstants.DELAY_EXCHANGE_NAME,
+                    MQConstants.DELAY_ORDER_KEY,
+                    order.getId(),
+                    message -> {
+                        message.getMessageProperties().setDelay(10000); // 测试改为10秒
+                        return message;
+                    });
+            return null;
+        });
 
+        meterRegistry.timer("trade.checkout").record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
         return order.getId();
     }
 
@@ -112,19 +162,131 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
     }
 
     @Override
+    @GlobalTransactional
     public void cancelOrder(Long orderId) {
-        // TODO 标记订单为已关闭
-        lambdaUpdate()
-                .set(Order::getStatus, 5)
-                .eq(Order::getId, orderId)
-                .update();
-        payClient.updatePayOrderStatusByBizOrderNo(orderId, 5);
-        // TODO 恢复库存
-        List<OrderDetail> list = detailService.lambdaQuery().eq(OrderDetail::getOrderId, orderId).list();
+        cancelOrders(CollUtils.singletonList(orderId));
+    }
+
+    /**
+     * 关闭订单与恢复库存在一个全局事务中，恢复库存失败时订单回到未支付，消息重新投递后整体重试
+     */
+    @Override
+    @GlobalTransactional
+    public void cancelOrders(List<Long> orderIds) {
+        // 1.只关闭仍未支付的订单，锁定后再修改，并发的支付回调、重复投递的消息不会重复关闭
+        List<Long> closedIds = transactionTemplate.execute(status -> {
+            List<Long> unpaidIds = lambdaQuery()
+                    .select(Order::getId)
+                    .in(Order::getId, orderIds)
+                    .eq(Order::getStatus, 1)
+                    .last("FOR UPDATE")
+                    .list()
+                    .stream().map(Order::getId).collect(Collectors.toList());
+            if (unpaidIds.isEmpty()) {
+                return unpaidIds;
+            }
+            lambdaUpdate()
+                    .set(Order::getStatus, 5)
+                    .in(Order::getId, unpaidIds)
+                    .eq(Order::getStatus, 1)
+                    .update();
+            return unpaidIds;
+        });
+        if (CollUtils.isEmpty(closedIds)) {
+            return;
+        }
+        for (Long orderId : closedIds) {
+            payClient.updatePayOrderStatusByBizOrderNo(orderId, 5);
+        }
+        // 2.只恢复本次关闭的订单的库存，所有订单的明细一次提交，由商品服务按商品合并
+        List<OrderDetail> list = detailService.lambdaQuery().in(OrderDetail::getOrderId, closedIds).list();
+        if (CollUtils.isEmpty(list)) {
+            return;
+        }
         List<OrderDetailDTO> orderDetailDTOS = BeanUtil.copyToList(list, OrderDetailDTO.class);
         itemClient.restoreStock(orderDetailDTOS);
     }
 
+    /**
+     * 全局事务提交后才发送，回滚的订单不会清理购物车；发送失败只影响购物车清理，不影响订单
+     */
+    private void publishOrderCreated(Long orderId, Long userId, Set<Long> itemIds) {
+        OrderCreatedDTO event = new OrderCreatedDTO()
+                .setOrderId(orderId)
+                .setUserId(userId)
+                .setItemIds(new ArrayList<>(itemIds));
+        TransactionHookManager.registerHook(new TransactionHookAdapter() {
+            @Override
+            public void afterCommit() {
+                try {
+                    rabbitTemplate.convertAndSend(MQConstants.TRADE_EXCHANGE_NAME, MQConstants.ORDER_CREATE_KEY, event);
+                } catch (Exception e) {
+                    log.error("订单创建事件发送失败，订单:{}，购物车未清理", orderId, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 在checkoutExecutor中执行远程调用，传递登录用户和全局事务id，使Feign请求携带用户信息并加入全局事务
+     */
+    private <T> CompletableFuture<T> supplyAsync(String stage, Supplier<T> supplier) {
+        Thread caller = Thread.currentThread();
+        Long userId = UserContext.getUser();
+        String xid = RootContext.getXID();
+        return CompletableFuture.supplyAsync(() -> {
+            // 线程池满时在下单线程中执行，上下文已存在，不能在结束时清除
+            if (Thread.currentThread() == caller) {
+                return timed(stage, supplier);
+            }
+            UserContext.setUser(userId);
+            if (xid != null) {
+                RootContext.bind(xid);
+            }
+            try {
+                return timed(stage, supplier);
+            } finally {
+                UserContext.removeUser();
+                RootContext.unbind();
+            }
+        }, checkoutExecutor);
+    }
+
+    private <T> T timed(String stage, Supplier<T> supplier) {
+        long begin = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            meterRegistry.timer("trade.checkout.stage", "stage", stage)
+                    .record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 等待异步调用结束，抛出调用本身的异常
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private OrderLogistics buildLogistics(Long orderId, AddressDTO address) {
+        return new OrderLogistics()
+                .setOrderId(orderId)
+                .setContact(address.getContact())
+                .setMobile(address.getMobile())
+                .setProvince(address.getProvince())
+                .setCity(address.getCity())
+                .setTown(address.getTown())
+                .setStreet(address.getStreet());
+    }
+
     private List<OrderDetail> buildDetails(Long orderId, List<ItemDTO> items, Map<Long, Integer> numMap) {
         List<OrderDetail> details = new ArrayList<>(items.size());
         for (ItemDTO item : items) {
@@ -0,0 +1,366 @@
+package com.hmall.trade;
+
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmall.api.client.CartClient;
+import com.hmall.api.client.ItemClient;
+import com.hmall.api.client.UserClient;
+import com.hmall.api.dto.AddressDTO;
+import com.hmall.api.dto.ItemDTO;
+import com.hmall.api.dto.OrderDetailDTO;
+import com.hmall.common.exception.BadRequestException;
+import com.hmall.common.utils.UserContext;
+import com.hmall.trade.constants.MQConstants;
+import com.hmall.trade.domain.dto.OrderFormDTO;
+import com.hmall.trade.domain.po.Order;
+import com.hmall.trade.domain.po.OrderDetail;
+import com.hmall.trade.mapper.OrderMapper;
+import com.hmall.trade.service.IOrderDetailService;
+import com.hmall.trade.service.IOrderLogisticsService;
+import com.hmall.trade.service.impl.OrderServiceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.seata.tm.api.transaction.TransactionHookManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 下单端到端延迟，对比三种流程的p50/p99：
+ * 1. legacy：原createOrder的代码（LegacyOrderService），查询商品、写订单、写明细、同步清理购物车、扣减库存依次执行
+ * 2. event：同一份原代码，只把同步清理购物车换成订单创建事件，与legacy的差值是购物车改为事件清理节省的时间
+ * 3. pipeline：OrderServiceImpl.createOrder，商品与地址并发查询，扣减库存与本地事务并发执行，与event的差值是并发执行节省的时间
+ * 三种流程使用同一组替身，远程服务和数据库每次调用固定耗时；原流程不查询地址、不写物流，pipeline多出的这两步也计入耗时；
+ * 地址替身校验登录用户，确认UserContext已传递到异步线程
+ * <p>
+ * 运行方式：
+ * mvn test -pl trade-service -am -Dtest=CheckoutBenchmarkTest -Dsurefire.failIfNoSpecifiedTests=false -Dbench.checkout=true
+ */
+@EnabledIfSystemProperty(named = "bench.checkout", matches = "true")
+public class CheckoutBenchmarkTest {
+
+    private static final long ITEM_QUERY_MILLIS = 20;
+    private static final long ADDRESS_MILLIS = 15;
+    private static final long DEDUCT_MILLIS = 30;
+    private static final long CART_MILLIS = 20;
+    private static final long SQL_MILLIS = 3;
+    private static final int BUYERS = 50;
+    private static final int WARMUP = 500;
+    private static final int ORDERS = 2000;
+    private static final List<Long> ITEM_IDS = Arrays.asList(1L, 2L, 3L);
+
+    private final AtomicLong ids = new AtomicLong();
+
+    @Test
+    void testCheckoutLatency() throws Exception {
+        ItemClient itemClient = new StandInItemClient();
+        UserClient userClient = new StandInUserClient();
+        MeterRegistry registry = new SimpleMeterRegistry();
+        ThreadPoolExecutor checkoutExecutor = new ThreadPoolExecutor(64, 64, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1000), new ThreadPoolExecutor.CallerRunsPolicy());
+        checkoutExecutor.prestartAllCoreThreads();
+        IOrderDetailService detailService = newDetailService();
+        OrderMapper orderMapper = newOrderMapper();
+        OrderServiceImpl orderService = newOrderService(itemClient, userClient, detailService, orderMapper,
+                checkoutExecutor, registry);
+        Checkout legacyCheckout = newLegacyService(itemClient, detailService, orderMapper, new StandInCartClient())::createOrder;
+        Checkout eventCheckout = newLegacyService(itemClient, detailService, orderMapper, null)::createOrder;
+        Checkout pipelineCheckout = form -> {
+            orderService.createOrder(form);
+            TransactionHookManager.clear();
+        };
+        try {
+            // 预热，不计入结果
+            run(null, WARMUP, legacyCheckout);
+            run(null, WARMUP, eventCheckout);
+            run(null, WARMUP, pipelineCheckout);
+            registry.clear();
+            long[] legacy = run("legacy", ORDERS, legacyCheckout);
+            long[] event = run("event", ORDERS, eventCheckout);
+            long[] pipeline = run("pipeline", ORDERS, pipelineCheckout);
+            System.out.printf("cart event saving   p50=%.1fms%n",
+                    (percentile(legacy, 0.5) - percentile(event, 0.5)) / 1e6);
+            System.out.printf("concurrency saving  p50=%.1fms%n",
+                    (percentile(event, 0.5) - percentile(pipeline, 0.5)) / 1e6);
+            for (String stage : Arrays.asList("items", "address", "persist", "deduct", "publish")) {
+                Timer timer = registry.find("trade.checkout.stage").tag("stage", stage).timer();
+                System.out.printf("stage %-8s count=%-6d mean=%.1fms%n",
+                        stage, timer.count(), timer.mean(TimeUnit.MILLISECONDS));
+            }
+            assertEquals(ORDERS, registry.find("trade.checkout").timer().count());
+            assertTrue(percentile(event, 0.5) < percentile(legacy, 0.5));
+            assertTrue(percentile(pipeline, 0.5) < percentile(event, 0.5));
+        } finally {
+            checkoutExecutor.shutdown();
+        }
+    }
+
+    private long[] run(String mode, int orders, Checkout checkout) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(BUYERS);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        long[] latencies = new long[orders];
+        CountDownLatch done = new CountDownLatch(BUYERS);
+        for (int i = 0; i < BUYERS; i++) {
+            long userId = i + 1;
+            pool.execute(() -> {
+                UserContext.setUser(userId);
+                try {
+                    for (int n; (n = next.getAndIncrement()) < orders; ) {
+                        long begin = System.nanoTime();
+                        try {
+                            checkout.place(newForm());
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                        }
+                        latencies[n] = System.nanoTime() - begin;
+                    }
+                } finally {
+                    UserContext.removeUser();
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        pool.shutdown();
+        Arrays.sort(latencies);
+        assertEquals(0, failures.get());
+        if (mode != null) {
+            System.out.printf("%-10s orders=%-6d p50=%.1fms p99=%.1fms%n", mode, orders,
+                    percentile(latencies, 0.5) / 1e6, percentile(latencies, 0.99) / 1e6);
+        }
+        return latencies;
+    }
+
+    private static IOrderDetailService newDetailService() {
+        IOrderDetailService detailService = mock(IOrderDetailService.class);
+        when(detailService.saveBatch(anyCollection())).thenAnswer(inv -> {
+            sleep(SQL_MILLIS);
+            return true;
+        });
+        return detailService;
+    }
+
+    private OrderMapper newOrderMapper() {
+        OrderMapper orderMapper = mock(OrderMapper.class);
+        when(orderMapper.insert(any())).thenAnswer(inv -> {
+            sleep(SQL_MILLIS);
+            inv.<Order>getArgument(0).setId(ids.incrementAndGet());
+            return 1;
+        });
+        return orderMapper;
+    }
+
+    private static LegacyOrderService newLegacyService(ItemClient itemClient, IOrderDetailService detailService,
+                                                       OrderMapper orderMapper, CartClient cartClient) {
+        LegacyOrderService legacyService = new LegacyOrderService(itemClient, detailService, cartClient,
+                mock(RabbitTemplate.class));
+        ReflectionTestUtils.setField(legacyService, "baseMapper", orderMapper);
+        return legacyService;
+    }
+
+    private static OrderServiceImpl newOrderService(ItemClient itemClient, UserClient userClient,
+                                                    IOrderDetailService detailService, OrderMapper orderMapper,
+                                                    ExecutorService checkoutExecutor, MeterRegistry registry) {
+        IOrderLogisticsService logisticsService = mock(IOrderLogisticsService.class);
+        when(logisticsService.save(any())).thenAnswer(inv -> {
+            sleep(SQL_MILLIS);
+            return true;
+        });
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        OrderServiceImpl orderService = new OrderServiceImpl(itemClient, detailService, mock(RabbitTemplate.class),
+                null, userClient, logisticsService, transactionTemplate, checkoutExecutor, registry);
+        ReflectionTestUtils.setField(orderService, "baseMapper", orderMapper);
+        return orderService;
+    }
+
+    private static OrderFormDTO newForm() {
+        List<OrderDetailDTO> details = new ArrayList<>(ITEM_IDS.size());
+        for (Long itemId : ITEM_IDS) {
+            details.add(new OrderDetailDTO().setItemId(itemId).setNum(1));
+        }
+        OrderFormDTO form = new OrderFormDTO();
+        form.setAddressId(1L);
+        form.setPaymentType(3);
+        form.setDetails(details);
+        return form;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * p) - 1)];
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class StandInItemClient implements ItemClient {
+        @Override
+        public List<ItemDTO> queryItemByIds(Collection<Long> ids) {
+            sleep(ITEM_QUERY_MILLIS);
+            List<ItemDTO> items = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                ItemDTO item = new ItemDTO();
+                item.setId(id);
+                item.setName("item-" + id);
+                item.setPrice(100);
+                items.add(item);
+            }
+            return items;
+        }
+
+        @Override
+        public void deductStock(List<OrderDetailDTO> items) {
+            sleep(DEDUCT_MILLIS);
+        }
+
+        @Override
+        public void restoreStock(List<OrderDetailDTO> items) {
+        }
+    }
+
+    private static class StandInCartClient implements CartClient {
+        @Override
+        public void deleteCartItemByIds(Collection<Long> ids) {
+            sleep(CART_MILLIS);
+        }
+    }
+
+    private static class StandInUserClient implements UserClient {
+        @Override
+        public void deductMoney(String pw, Integer amount) {
+        }
+
+        @Override
+        public AddressDTO findAddressById(Long id) {
+            sleep(ADDRESS_MILLIS);
+            if (UserContext.getUser() == null) {
+                throw new IllegalStateException("未传递登录用户");
+            }
+            AddressDTO address = new AddressDTO();
+            address.setId(id);
+            address.setContact("bench");
+            return address;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Checkout {
+        void place(OrderFormDTO form) throws Exception;
+    }
+
+    /**
+     * 改造前的createOrder，代码与原OrderServiceImpl一致
+     * cartClient为空时把第3步换成发送订单创建事件，只体现购物车改为事件清理的效果
+     */
+    private static class LegacyOrderService extends ServiceImpl<OrderMapper, Order> {
+        private final ItemClient itemClient;
+        private final IOrderDetailService detailService;
+        private final CartClient cartClient;
+        private final RabbitTemplate rabbitTemplate;
+
+        LegacyOrderService(ItemClient itemClient, IOrderDetailService detailService, CartClient cartClient,
+                           RabbitTemplate rabbitTemplate) {
+            this.itemClient = itemClient;
+            this.detailService = detailService;
+            this.cartClient = cartClient;
+            this.rabbitTemplate = rabbitTemplate;
+        }
+
+        Long createOrder(OrderFormDTO orderFormDTO) {
+            // 1.订单数据
+            Order order = new Order();
+            // 1.1.查询商品
+            List<OrderDetailDTO> detailDTOS = orderFormDTO.getDetails();
+            // 1.2.获取商品id和数量的Map
+            Map<Long, Integer> itemNumMap = detailDTOS.stream()
+                    .collect(Collectors.toMap(OrderDetailDTO::getItemId, OrderDetailDTO::getNum));
+            Set<Long> itemIds = itemNumMap.keySet();
+            // 1.3.查询商品
+            List<ItemDTO> items = itemClient.queryItemByIds(itemIds);
+            if (items == null || items.size() < itemIds.size()) {
+                throw new BadRequestException("商品不存在");
+            }
+            // 1.4.基于商品价格、购买数量计算商品总价：totalFee
+            int total = 0;
+            for (ItemDTO item : items) {
+                total += item.getPrice() * itemNumMap.get(item.getId());
+            }
+            order.setTotalFee(total);
+            // 1.5.其它属性
+            order.setPaymentType(orderFormDTO.getPaymentType());
+            order.setUserId(UserContext.getUser());
+            order.setStatus(1);
+            // 1.6.将Order写入数据库order表中
+            save(order);
+
+            // 2.保存订单详情
+            List<OrderDetail> details = new ArrayList<>(items.size());
+            for (ItemDTO item : items) {
+                OrderDetail detail = new OrderDetail();
+                detail.setName(item.getName());
+                detail.setPrice(item.getPrice());
+                detail.setNum(itemNumMap.get(item.getId()));
+                detail.setItemId(item.getId());
+                detail.setOrderId(order.getId());
+                details.add(detail);
+            }
+            detailService.saveBatch(details);
+
+            // 3.清理购物车商品
+            if (cartClient != null) {
+                cartClient.deleteCartItemByIds(itemIds);
+            } else {
+                rabbitTemplate.convertAndSend(MQConstants.TRADE_EXCHANGE_NAME, MQConstants.ORDER_CREATE_KEY, order.getId());
+            }
+
+            // 4.扣减库存
+            try {
+                itemClient.deductStock(detailDTOS);
+            } catch (Exception e) {
+                throw new RuntimeException("库存不足！");
+            }
+
+            // 5.发送延迟消息，检测订单支付状态
+            rabbitTemplate.convertAndSend(
+                    MQConstants.DELAY_EXCHANGE_NAME,
+                    MQConstants.DELAY_ORDER_KEY,
+                    order.getId(),
+                    message -> {
+                        message.getMessageProperties().setDelay(10000);
+                        return message;
+                    });
+            return order.getId();
+        }
+    }
+}
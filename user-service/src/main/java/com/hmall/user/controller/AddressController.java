@@ -39,6 +39,9 @@ public class AddressController {
     public AddressDTO findAddressById(@ApiParam("地址id") @PathVariable("addressId") Long id) {
         // 1.根据id查询
         Address address = addressService.getById(id);
+        if (address == null) {
+            throw new BadRequestException("地址不存在");
+        }
         // 2.判断当前用户
         Long userId = UserContext.getUser();
         if(!address.getUserId().equals(userId)){